@@ -16,6 +16,8 @@
 package io.github.spleefx.v1_14_R1;
 
 import com.google.common.collect.Lists;
+import io.github.spleefx.compatibility.ArenaSnapshot.SectionAccess;
+import io.github.spleefx.compatibility.PacketSidebar;
 import io.github.spleefx.compatibility.ProtocolNMS;
 import io.github.spleefx.compatibility.chat.ComponentJSON;
 import io.github.spleefx.util.game.Chat;
@@ -215,4 +217,13 @@ public class ProtocolNMSImpl implements ProtocolNMS {
 
     }
 
+    @Override
+    public PacketSidebar newPacketSidebar(Player player) {
+        return new PacketSidebarImpl(player);
+    }
+
+    @Override
+    public SectionAccess newSectionAccess(org.bukkit.World world) {
+        return new SectionAccessImpl(world);
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.v1_14_R1;
+
+import io.github.spleefx.compatibility.ArenaSnapshot.SectionAccess;
+import net.minecraft.server.v1_14_R1.*;
+import org.bukkit.Bukkit;
+import org.bukkit.craftbukkit.v1_14_R1.CraftWorld;
+import org.bukkit.craftbukkit.v1_14_R1.block.data.CraftBlockData;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accesses chunk sections directly, bypassing physics, lighting and per-block updates. The height maps of changed
+ * chunks are recomputed once they are flushed.
+ */
+public class SectionAccessImpl implements SectionAccess {
+
+    /**
+     * The height maps of loaded chunks
+     */
+    private static final Set<HeightMap.Type> HEIGHT_MAPS = EnumSet.of(HeightMap.Type.MOTION_BLOCKING, HeightMap.Type.MOTION_BLOCKING_NO_LEAVES,
+            HeightMap.Type.OCEAN_FLOOR, HeightMap.Type.WORLD_SURFACE);
+
+    private final WorldServer world;
+
+    /**
+     * All chunks changed since the last flush, mapped by their packed coordinates
+     */
+    private final Map<Long, Chunk> changed = new HashMap<>();
+
+    private Chunk chunk;
+    private ChunkSection section;
+    private int chunkX, sectionY, chunkZ;
+
+    public SectionAccessImpl(org.bukkit.World world) {
+        this.world = ((CraftWorld) world).getHandle();
+    }
+
+    @Override
+    public void open(int chunkX, int sectionY, int chunkZ) {
+        if (chunk == null || chunkX != this.chunkX || chunkZ != this.chunkZ) // sections of the same column share the chunk
+            chunk = world.getChunkAt(chunkX, chunkZ);
+        this.chunkX = chunkX;
+        this.sectionY = sectionY;
+        this.chunkZ = chunkZ;
+        section = chunk.getSections()[sectionY];
+    }
+
+    @Override
+    public Object get(int x, int y, int z) {
+        return section == null ? Blocks.AIR.getBlockData() : section.getType(x, y, z);
+    }
+
+    @Override
+    public void set(int x, int y, int z, Object state) {
+        IBlockData data = (IBlockData) state;
+        if (section == null) {
+            if (data == Blocks.AIR.getBlockData()) return;
+            // let the world create the section
+            world.setTypeAndData(new BlockPosition(chunkX << 4 | x, sectionY << 4 | y, chunkZ << 4 | z), data, 2);
+            section = chunk.getSections()[sectionY];
+            return;
+        }
+        section.setType(x, y, z, data);
+        changed.put((long) chunkX << 32 | (chunkZ & 0xFFFFFFFFL), chunk);
+    }
+
+    @Override
+    public Object parse(String state) {
+        return ((CraftBlockData) Bukkit.createBlockData(state)).getState();
+    }
+
+    @Override
+    public void flush() {
+        for (Map.Entry<Long, Chunk> entry : changed.entrySet()) {
+            HeightMap.a(entry.getValue(), HEIGHT_MAPS);
+            entry.getValue().markDirty();
+            world.getWorld().refreshChunk((int) (entry.getKey() >> 32), entry.getKey().intValue());
+        }
+        changed.clear();
+        chunk = null; // may be unloaded before the next step
+    }
+}
@@ -17,6 +17,8 @@ package io.github.spleefx.v1_15_R1;
 
 import com.google.common.collect.Lists;
 import com.mojang.datafixers.util.Pair;
+import io.github.spleefx.compatibility.ArenaSnapshot.SectionAccess;
+import io.github.spleefx.compatibility.PacketSidebar;
 import io.github.spleefx.compatibility.ProtocolNMS;
 import io.github.spleefx.compatibility.chat.ComponentJSON;
 import io.github.spleefx.util.game.Chat;
@@ -218,4 +220,14 @@ public class ProtocolNMSImpl implements ProtocolNMS {
 
         explodedBlocks.add(Pair.of(itemstack, blockposition));
     }
+
+    @Override
+    public PacketSidebar newPacketSidebar(Player player) {
+        return new PacketSidebarImpl(player);
+    }
+
+    @Override
+    public SectionAccess newSectionAccess(org.bukkit.World world) {
+        return new SectionAccessImpl(world);
+    }
 }
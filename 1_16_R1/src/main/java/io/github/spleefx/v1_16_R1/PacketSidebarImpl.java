@@ -0,0 +1,94 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.v1_16_R1;
+
+import io.github.spleefx.compatibility.PacketSidebar;
+import net.minecraft.server.v1_16_R1.*;
+import net.minecraft.server.v1_16_R1.IScoreboardCriteria.EnumScoreboardHealthDisplay;
+import net.minecraft.server.v1_16_R1.ScoreboardServer.Action;
+import org.bukkit.craftbukkit.v1_16_R1.entity.CraftPlayer;
+import org.bukkit.entity.Player;
+
+/**
+ * Sends the sidebar as packets, using objects of a detached scoreboard to build them
+ */
+public class PacketSidebarImpl implements PacketSidebar {
+
+    /**
+     * A scoreboard which is only used to build packets. Nothing is registered in it.
+     */
+    private static final Scoreboard TEMPLATE = new Scoreboard();
+
+    private final CraftPlayer player;
+    private final ScoreboardObjective objective = new ScoreboardObjective(TEMPLATE, OBJECTIVE, IScoreboardCriteria.DUMMY,
+            new ChatComponentText(""), EnumScoreboardHealthDisplay.INTEGER);
+
+    public PacketSidebarImpl(Player player) {
+        this.player = (CraftPlayer) player;
+    }
+
+    @Override
+    public void create(String title) {
+        objective.setDisplayName(new ChatComponentText(title));
+        send(new PacketPlayOutScoreboardObjective(objective, 0));
+        send(new PacketPlayOutScoreboardDisplayObjective(1, objective));
+    }
+
+    @Override
+    public void setTitle(String title) {
+        objective.setDisplayName(new ChatComponentText(title));
+        send(new PacketPlayOutScoreboardObjective(objective, 2));
+    }
+
+    @Override
+    public void createLine(String identifier, String prefix, String suffix) {
+        ScoreboardTeam team = team(identifier, prefix, suffix);
+        team.getPlayerNameSet().add(identifier);
+        send(new PacketPlayOutScoreboardTeam(team, 0));
+    }
+
+    @Override
+    public void updateLine(String identifier, String prefix, String suffix) {
+        send(new PacketPlayOutScoreboardTeam(team(identifier, prefix, suffix), 2));
+    }
+
+    @Override
+    public void setScore(String identifier, int score) {
+        send(new PacketPlayOutScoreboardScore(Action.CHANGE, OBJECTIVE, identifier, score));
+    }
+
+    @Override
+    public void removeLine(String identifier) {
+        send(new PacketPlayOutScoreboardScore(Action.REMOVE, OBJECTIVE, identifier, 0));
+        send(new PacketPlayOutScoreboardTeam(new ScoreboardTeam(TEMPLATE, identifier), 1));
+    }
+
+    @Override
+    public void destroy() {
+        send(new PacketPlayOutScoreboardObjective(objective, 1));
+    }
+
+    private void send(Packet<?> packet) {
+        player.getHandle().playerConnection.sendPacket(packet);
+    }
+
+    private static ScoreboardTeam team(String identifier, String prefix, String suffix) {
+        ScoreboardTeam team = new ScoreboardTeam(TEMPLATE, identifier);
+        team.setPrefix(new ChatComponentText(prefix));
+        team.setSuffix(new ChatComponentText(suffix));
+        return team;
+    }
+}
@@ -20,8 +20,12 @@ import io.github.spleefx.data.DataProvider;
 import io.github.spleefx.data.DataProvider.StorageType;
 import io.github.spleefx.data.GameStats;
 import io.github.spleefx.data.StatisticsConfig;
+import io.github.spleefx.data.leaderboard.NameCache;
+import io.github.spleefx.data.leaderboard.NameResolver;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards;
 import io.github.spleefx.data.papi.OldExpansionRemover;
 import io.github.spleefx.data.papi.SpleefXPAPI;
+import io.github.spleefx.economy.CoinLedger;
 import io.github.spleefx.economy.booster.ActiveBoosterLoader;
 import io.github.spleefx.economy.booster.BoosterConsumer;
 import io.github.spleefx.economy.booster.BoosterFactory;
@@ -84,6 +88,8 @@ import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static io.github.spleefx.extension.ExtensionsManager.EXTENSIONS_FOLDER;
@@ -148,6 +154,10 @@ public final class SpleefX extends JavaPlugin implements Listener {
     private MessageManager messageManager;
 
     private DataProvider dataProvider;
+    private CoinLedger coinLedger;
+    private RollingLeaderboards rollingLeaderboards;
+    private NameCache nameCache;
+    private StorageTypeConverter storageConverter;
 
     public void loadMissing() {
         downloadIfMissing("ProtocolLib", "https://github.com/dmulloy2/ProtocolLib/releases/download/4.5.1/ProtocolLib.jar");
@@ -208,6 +218,8 @@ public final class SpleefX extends JavaPlugin implements Listener {
 
             compatibilityHandler = new CompatibilityHandler();
             arenaManager = new ArenaManager(this);
+            arenaManager.getTickScheduler().start(this);
+            SchematicManager.getRegenerationPipeline().start(this);
 
             PluginSettings.load();
             fileManager.createDirectory(PluginSettings.STATISTICS_DIRECTORY.get());
@@ -274,6 +286,12 @@ public final class SpleefX extends JavaPlugin implements Listener {
             GameArena.ARENAS.get().values().removeIf(Objects::isNull); // Filter out arenas which couldn't be loaded
             int modified = GameArena.ARENAS.get().size();
             logger().info("Successfully loaded " + modified + " arena" + (modified == 1 ? "" : "s") + " out of " + original);
+            if ((boolean) PluginSettings.ARENA_PRELOAD_SCHEMATICS.get()) {
+                List<String> keys = new ArrayList<>(GameArena.ARENAS.get().keySet());
+                Bukkit.getScheduler().runTaskAsynchronously(this, () -> SchematicManager.warm(worldEdit, keys, arenasFolder));
+            }
+            if ((boolean) PluginSettings.ARENA_SNAPSHOTS.get())
+                arenaManager.convertSchematics();
 
             PluginManager p = Bukkit.getPluginManager();
 
@@ -283,6 +301,7 @@ public final class SpleefX extends JavaPlugin implements Listener {
             p.registerEvents(new ConnectionListener(), this);
             p.registerEvents(new RenameListener(), this);
             p.registerEvents(new ArenaListener(), this);
+            p.registerEvents(arenaManager.getDeathPlanes(), this);
             p.registerEvents(new CopyStore(), this);
             p.registerEvents(new BowSpleefListener(this), this);
             p.registerEvents(new SpleefListener(), this);
@@ -308,15 +327,33 @@ public final class SpleefX extends JavaPlugin implements Listener {
 
             StorageType storageType = PluginSettings.STATISTICS_STORAGE_TYPE.get();
 
-            if (storageType == StorageType.SQLITE && Bukkit.getPluginManager().getPlugin("SpleefXSQL") == null)
-                SpleefX.logger().warning("The storage type is SQLite, but SpleefXSQL extension is not found. Defaulting to flat file storage");
-
             dataProvider = storageType.create();
             dataProvider.createRequiredFiles(fileManager);
+            coinLedger = new CoinLedger(dataProvider);
+            if (PluginSettings.LEADERBOARDS.get()) {
+                rollingLeaderboards = new RollingLeaderboards(new File(getDataFolder(), "rolling-leaderboards.dat"));
+                try {
+                    rollingLeaderboards.load();
+                } catch (IOException e) {
+                    logger().log(Level.WARNING, "Failed to load the daily, weekly and monthly leaderboards", e);
+                }
+                nameCache = new NameCache(new File(getDataFolder(), "names.dat"),
+                        TimeUnit.DAYS.toMillis(((Number) PluginSettings.LEADERBOARDS_NAME_CACHE_EXPIRE_AFTER.get()).longValue()),
+                        Bukkit.getOnlineMode() ? NameResolver.MOJANG : NameResolver.BUKKIT);
+                try {
+                    nameCache.load();
+                } catch (IOException e) {
+                    logger().log(Level.WARNING, "Failed to load the cached player names", e);
+                }
+                getServer().getPluginManager().registerEvents(nameCache, this);
+                Bukkit.getScheduler().runTaskAsynchronously(this, () -> nameCache.populate(Bukkit.getOfflinePlayers()));
+            }
 
             if (storageType == StorageType.UNITED_FILE) {
-                new StorageTypeConverter(dataProvider).run();
-                SpleefX.logger().warning("I noticed you're using UNITED_FILE as a storage type. This is no longer supported as it cannot work with all the new data it has to store. Player data has been converted to use FLAT_FILE instead.");
+                storageConverter = new StorageTypeConverter(dataProvider);
+                getServer().getPluginManager().registerEvents(storageConverter, this); // players cannot join until it finishes
+                Bukkit.getScheduler().runTaskAsynchronously(this, storageConverter);
+                SpleefX.logger().warning("I noticed you're using UNITED_FILE as a storage type. This is no longer supported as it cannot work with all the new data it has to store. Player data is being converted to use FLAT_FILE instead.");
             }
 
             if (GameStats.VAULT_EXISTS.get())
@@ -327,9 +364,12 @@ public final class SpleefX extends JavaPlugin implements Listener {
             Bukkit.getScheduler().runTaskTimer(this, () -> {
                 saveArenas();
                 messageManager.save();
-                dataProvider.saveEntries(this);
                 //PluginSettings.save();
             }, 24000, 24000); // 20 minutes
+            long saveInterval = ((Number) PluginSettings.STATISTICS_SAVE_INTERVAL.get()).longValue() * 20;
+            Bukkit.getScheduler().runTaskTimer(this, () -> dataProvider.saveEntries(this), saveInterval, saveInterval);
+            if (rollingLeaderboards != null)
+                Bukkit.getScheduler().runTaskTimerAsynchronously(this, this::saveLeaderboards, saveInterval, saveInterval);
             getServer().getPluginManager().registerEvents(new DoubleJumpHandler(abilityDelays), this);
             getServer().getPluginManager().registerEvents(new ScoreboardListener(), this);
             getServer().getPluginManager().registerEvents(new GameMenu.MenuListener(), this);
@@ -396,10 +436,18 @@ public final class SpleefX extends JavaPlugin implements Listener {
             logger().warning("Failed to regenerate arenas.");
             e.printStackTrace();
         }
+        arenaManager.getRegenerationQueue().dispatchAll();
+        SchematicManager.getRegenerationPipeline().finishAll();
         boosterConsumer.cancel();
         saveArenas();
         messageManager.save();
-        dataProvider.saveEntries(this);
+        if (storageConverter != null)
+            storageConverter.stop(((Number) PluginSettings.STATISTICS_SHUTDOWN_TIMEOUT.get()).longValue());
+        dataProvider.close(this);
+        if (rollingLeaderboards != null) {
+            saveLeaderboards();
+            nameCache.close();
+        }
         statsFile.save();
         boostersFile.save();
         try {
@@ -428,6 +476,19 @@ public final class SpleefX extends JavaPlugin implements Listener {
         c.save(Throwable::printStackTrace);
     }
 
+    private void saveLeaderboards() {
+        try {
+            rollingLeaderboards.save();
+        } catch (IOException e) {
+            logger().log(Level.WARNING, "Failed to save the daily, weekly and monthly leaderboards", e);
+        }
+        try {
+            nameCache.save();
+        } catch (IOException e) {
+            logger().log(Level.WARNING, "Failed to save the cached player names", e);
+        }
+    }
+
     /**
      * Invoked when the server stops, to restore everything and end games forcibly
      */
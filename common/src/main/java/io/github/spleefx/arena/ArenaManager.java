@@ -17,19 +17,36 @@ package io.github.spleefx.arena;
 
 import com.google.common.base.Preconditions;
 import com.sk89q.worldedit.EmptyClipboardException;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.session.ClipboardHolder;
 import io.github.spleefx.SpleefX;
 import io.github.spleefx.arena.api.ArenaEngine;
+import io.github.spleefx.arena.api.BlockJournal;
 import io.github.spleefx.arena.api.GameArena;
+import io.github.spleefx.compatibility.ArenaSnapshot;
+import io.github.spleefx.compatibility.SnapshotFile;
+import io.github.spleefx.compatibility.SnapshotFile.TileEntityException;
 import io.github.spleefx.compatibility.worldedit.NoSchematicException;
 import io.github.spleefx.compatibility.worldedit.SchematicManager;
 import io.github.spleefx.util.PlaceholderUtil.CommandEntry;
 import io.github.spleefx.util.game.Chat;
 import io.github.spleefx.util.message.message.Message;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 /**
  * A class for managing arenas
@@ -41,6 +58,37 @@ public class ArenaManager {
      */
     private SpleefX plugin;
 
+    /**
+     * The death planes of all running arenas
+     */
+    private final DeathPlaneIndex deathPlanes = new DeathPlaneIndex();
+
+    /**
+     * The scheduler which ticks all arenas
+     */
+    private final ArenaTickScheduler tickScheduler = new ArenaTickScheduler();
+
+    /**
+     * The queue which limits how many arenas regenerate at the same time
+     */
+    private final RegenerationQueue regenerationQueue = new RegenerationQueue(this);
+
+    /**
+     * The snapshots of arenas which have been fully pasted since the server started, in access order. Bounded by
+     * the clipboard cache size, evicting the least recently used snapshots.
+     */
+    private final Map<String, ArenaSnapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The estimated size (in bytes) of all snapshots
+     */
+    private long snapshotsSize;
+
+    /**
+     * The opened snapshot files of all arenas which have been regenerated from them
+     */
+    private final Map<String, SnapshotFile> snapshotFiles = new HashMap<>();
+
     public ArenaManager(SpleefX plugin) {
         this.plugin = plugin;
     }
@@ -52,6 +100,7 @@ public class ArenaManager {
             processor.write(clipboard);
             if (arena.getRegenerationPoint() == null) throw new EmptyClipboardException();
             GameArena.ARENAS.get().put(arena.getKey(), arena);
+            writeSnapshotFile(arena, clipboard.getClipboard());
             Message.ARENA_CREATED.reply(player, arena, arena.getExtension(), new CommandEntry(command));
             return arena;
         } catch (EmptyClipboardException e) {
@@ -71,20 +120,244 @@ public class ArenaManager {
         GameArena arena = GameArena.ARENAS.get().remove(key);
         if (arena == null) return null;
         Preconditions.checkState(arena.getEngine().getArenaStage() != ArenaStage.ACTIVE, "The arena has running games! Wait until games are done.");
+        tickScheduler.remove(key);
         File schem = new File(plugin.getArenasFolder(), key + ".schem");
         schem.delete();
+        SchematicManager.getClipboardCache().invalidate(key);
+        removeSnapshot(key);
+        deleteSnapshotFile(key);
         return arena;
     }
 
+    /**
+     * Returns the death planes index, which eliminates players as they fall below the death level
+     *
+     * @return The death planes index
+     */
+    public DeathPlaneIndex getDeathPlanes() {
+        return deathPlanes;
+    }
+
+    /**
+     * Returns the scheduler which drives the countdown, timer and melting of all arenas
+     *
+     * @return The tick scheduler
+     */
+    public ArenaTickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+
+    /**
+     * Returns the queue which limits and prioritizes arena regenerations
+     *
+     * @return The regeneration queue
+     */
+    public RegenerationQueue getRegenerationQueue() {
+        return regenerationQueue;
+    }
+
     /**
      * Regenerates the specified arena.
      * <p>
-     * Note: It is not recommended to use this method directly. Use {@link ArenaEngine#regenerate(ArenaStage)}.
+     * If the arena's {@link BlockJournal} can be trusted, only the blocks changed since the last regeneration
+     * are restored, and the returned future is already complete. Otherwise, the arena is restored from its
+     * {@link ArenaSnapshot}, which is captured after the first full paste of the schematic, or from its
+     * {@link SnapshotFile}. The schematic is only pasted when neither exists.
+     * <p>
+     * Note: It is not recommended to use this method directly. Use {@link ArenaEngine#regenerate(ArenaStage)},
+     * which goes through the {@link RegenerationQueue}.
      *
      * @param key Arena key to regenerate
      */
     public CompletableFuture<Void> regenerateArena(String key) throws NoSchematicException {
+        GameArena arena = GameArena.getByKey(key);
+        BlockJournal journal = arena.getBlockJournal();
+        if (journal.canRestore()) {
+            journal.restore(arena.getRegenerationPoint().getWorld());
+            return CompletableFuture.completedFuture(null);
+        }
+        ArenaSnapshot snapshot = snapshots.get(key);
+        if (snapshot != null) {
+            journal.onFullPaste();
+            return SchematicManager.getRegenerationPipeline().submit(key, snapshot.restore(arena.getRegenerationPoint().getWorld()));
+        }
+        SnapshotFile snapshotFile = openSnapshotFile(key);
+        if (snapshotFile != null) {
+            journal.onFullPaste();
+            return SchematicManager.getRegenerationPipeline().submit(key, snapshotFile.restore(arena.getRegenerationPoint().getWorld()));
+        }
         SchematicManager processor = SpleefX.newSchematicManager(key);
-        return processor.paste(GameArena.getByKey(key).getRegenerationPoint());
+        CompletableFuture<Void> future = processor.paste(arena.getRegenerationPoint());
+        journal.onFullPaste();
+        if (PluginSettings.ARENA_SNAPSHOTS.get())
+            future.thenRun(() -> {
+                if (Bukkit.isPrimaryThread()) captureSnapshot(processor, arena);
+                else Bukkit.getScheduler().runTask(plugin, () -> captureSnapshot(processor, arena));
+            });
+        return future;
+    }
+
+    /**
+     * Discards the snapshot and the snapshot file of the specified arena, forcing the next full regeneration
+     * to paste its schematic. Used when the arena building changes.
+     *
+     * @param key Key of the arena
+     */
+    public void invalidateSnapshot(String key) {
+        removeSnapshot(key);
+        deleteSnapshotFile(key);
+    }
+
+    /**
+     * Returns the snapshot file of the specified arena
+     *
+     * @param key Key of the arena
+     * @return The snapshot file. May not exist.
+     */
+    public File getSnapshotFile(String key) {
+        return new File(plugin.getArenasFolder(), key + ".snapshot");
+    }
+
+    /**
+     * Returns the file which marks the snapshot file of the specified arena as outdated. It is created when
+     * the snapshot file cannot be deleted (for example because it is still mapped on Windows), and removed
+     * once a new snapshot file is written.
+     *
+     * @param key Key of the arena
+     * @return The marker file. May not exist.
+     */
+    private File getInvalidMarker(String key) {
+        return new File(plugin.getArenasFolder(), key + ".snapshot.invalid");
+    }
+
+    /**
+     * Deletes the snapshot file of the specified arena. If it cannot be deleted, it is marked as outdated,
+     * so that it is never restored from.
+     *
+     * @param key Key of the arena
+     */
+    private void deleteSnapshotFile(String key) {
+        snapshotFiles.remove(key); // drop the mapping, so it can be released
+        File file = getSnapshotFile(key);
+        if (!file.exists() || file.delete()) return;
+        SpleefX.logger().severe("Failed to delete snapshot file " + file.getName() + ". It will not be used until it is written again.");
+        markInvalid(key);
+    }
+
+    private void markInvalid(String key) {
+        File marker = getInvalidMarker(key);
+        try {
+            if (!marker.createNewFile() && !marker.exists())
+                throw new IOException("Cannot create " + marker.getName());
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.SEVERE, "Failed to mark the snapshot file of arena " + key + " as outdated", e);
+        }
+    }
+
+    /**
+     * Converts the specified clipboard into the snapshot file of the arena, asynchronously
+     *
+     * @param arena     Arena to write for
+     * @param clipboard The arena building
+     */
+    public void writeSnapshotFile(GameArena arena, Clipboard clipboard) {
+        if (!(boolean) PluginSettings.ARENA_SNAPSHOTS.get()) return;
+        SchematicManager processor = SpleefX.newSchematicManager(arena.getKey());
+        snapshotFiles.remove(arena.getKey()); // drop the mapping, so the file can be replaced
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                processor.writeSnapshot(clipboard, arena.getRegenerationPoint(), getSnapshotFile(arena.getKey()));
+                Files.deleteIfExists(getInvalidMarker(arena.getKey()).toPath());
+                Bukkit.getScheduler().runTask(plugin, () -> snapshotFiles.remove(arena.getKey()));
+            } catch (TileEntityException e) {
+                SpleefX.logger().info("Arena " + arena.getKey() + " contains tile entities, so it will be regenerated by pasting its schematic.");
+                if (getSnapshotFile(arena.getKey()).exists()) markInvalid(arena.getKey()); // holds the previous building
+            } catch (IOException e) {
+                SpleefX.logger().log(Level.WARNING, "Failed to write snapshot file of arena " + arena.getKey(), e);
+                if (getSnapshotFile(arena.getKey()).exists()) markInvalid(arena.getKey()); // holds the previous building
+            }
+        });
+    }
+
+    /**
+     * Converts the schematics of all arenas which have no snapshot file in the background. Invoked on the
+     * main thread on startup, which is where the arenas are read, so the background task never touches them.
+     */
+    public void convertSchematics() {
+        List<Conversion> conversions = new ArrayList<>();
+        for (GameArena arena : GameArena.ARENAS.get().values()) {
+            if (arena.getRegenerationPoint() == null) continue;
+            conversions.add(new Conversion(arena.getKey(), SpleefX.newSchematicManager(arena.getKey()), arena.getRegenerationPoint().clone()));
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            for (Conversion conversion : conversions) {
+                File file = getSnapshotFile(conversion.key);
+                if (file.exists() && !getInvalidMarker(conversion.key).exists()) continue;
+                try {
+                    conversion.schematic.writeSnapshot(conversion.location, file);
+                    Files.deleteIfExists(getInvalidMarker(conversion.key).toPath());
+                } catch (NoSchematicException | TileEntityException ignored) { // nothing to convert, or pasted instead
+                } catch (IOException e) {
+                    SpleefX.logger().log(Level.WARNING, "Failed to convert schematic of arena " + conversion.key, e);
+                }
+            }
+        });
+    }
+
+    private SnapshotFile openSnapshotFile(String key) {
+        if (!(boolean) PluginSettings.ARENA_SNAPSHOTS.get()) return null;
+        SnapshotFile snapshotFile = snapshotFiles.get(key);
+        if (snapshotFile != null) return snapshotFile;
+        File file = getSnapshotFile(key);
+        if (!file.exists() || getInvalidMarker(key).exists()) return null;
+        try {
+            snapshotFiles.put(key, snapshotFile = SnapshotFile.open(file));
+            return snapshotFile;
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.WARNING, "Failed to read snapshot file of arena " + key + ". Its schematic will be pasted instead.", e);
+            return null;
+        }
+    }
+
+    private void captureSnapshot(SchematicManager processor, GameArena arena) {
+        if (GameArena.getByKey(arena.getKey()) != arena) return; // removed meanwhile
+        removeSnapshot(arena.getKey());
+        ArenaSnapshot snapshot;
+        try {
+            snapshot = processor.snapshot(arena.getRegenerationPoint());
+        } catch (NoSchematicException e) {
+            return;
+        }
+        if (snapshot == null) return; // contains tile entities, so it is pasted every time
+        long cap = ((Number) PluginSettings.ARENA_SNAPSHOT_CACHE_SIZE.get()).longValue() * 1024 * 1024;
+        long weight = snapshot.estimateSize();
+        if (weight > cap) return; // would not fit anyway
+        snapshots.put(arena.getKey(), snapshot);
+        snapshotsSize += weight;
+        for (Iterator<ArenaSnapshot> iterator = snapshots.values().iterator(); snapshotsSize > cap && iterator.hasNext(); ) {
+            snapshotsSize -= iterator.next().estimateSize();
+            iterator.remove();
+        }
+    }
+
+    private void removeSnapshot(String key) {
+        ArenaSnapshot snapshot = snapshots.remove(key);
+        if (snapshot != null) snapshotsSize -= snapshot.estimateSize();
+    }
+
+    /**
+     * The schematic of an arena to convert, along with the location it is pasted in
+     */
+    private static final class Conversion {
+
+        private final String key;
+        private final SchematicManager schematic;
+        private final Location location;
+
+        Conversion(String key, SchematicManager schematic, Location location) {
+            this.key = key;
+            this.schematic = schematic;
+            this.location = location;
+        }
     }
 }
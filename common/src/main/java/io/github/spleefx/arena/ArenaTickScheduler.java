@@ -0,0 +1,338 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.arena;
+
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * A single timer which drives the periodic phases of every arena.
+ * <p>
+ * Each arena is assigned a slot, and every phase of that slot occupies a fixed index in flat arrays,
+ * so a tick is a linear scan without any per-arena scheduler entries. Work is bounded by a per-tick
+ * time budget: arenas that do not fit in the current tick keep their due phases and are the first to run
+ * in the next one. The first run of a phase is also shifted towards the least loaded tick of the second,
+ * so arenas which start together do not keep landing on the same tick.
+ * <p>
+ * This class is only accessed from the main thread.
+ */
+public class ArenaTickScheduler implements Runnable {
+
+    /**
+     * Represents a periodic arena phase
+     */
+    public enum TickPhase {
+
+        /**
+         * The countdown before the game starts
+         */
+        COUNTDOWN(4),
+
+        /**
+         * The game timer
+         */
+        TIMER(4),
+
+        /**
+         * Spleef melting
+         */
+        MELTING(BUCKETS);
+
+        /**
+         * The maximum amount of ticks the first run of this phase may be shifted by in order
+         * to spread the load
+         */
+        private final int spread;
+
+        TickPhase(int spread) {
+            this.spread = spread;
+        }
+    }
+
+    /**
+     * The amount of tick buckets used to track load, one for each tick of a second
+     */
+    private static final int BUCKETS = 20;
+
+    private static final TickPhase[] PHASES = TickPhase.values();
+
+    /**
+     * The slot of each arena, mapped by the arena key
+     */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * The arena key of each slot
+     */
+    private String[] keys = new String[16];
+
+    /**
+     * The tasks of each phase, indexed by {@code slot * PHASES.length + phase}
+     */
+    private Runnable[] tasks = new Runnable[keys.length * PHASES.length];
+
+    /**
+     * The period of each phase
+     */
+    private int[] periods = new int[tasks.length];
+
+    /**
+     * The tick in which each phase should run next
+     */
+    private long[] nextRun = new long[tasks.length];
+
+    /**
+     * The exponential moving average of the tick cost of each slot, in nanoseconds
+     */
+    private long[] averageNanos = new long[keys.length];
+
+    /**
+     * The highest tick cost of each slot, in nanoseconds
+     */
+    private long[] maxNanos = new long[keys.length];
+
+    /**
+     * The amount of phases scheduled in each tick of a second
+     */
+    private final int[] bucketLoad = new int[BUCKETS];
+
+    /**
+     * The amount of used slots
+     */
+    private int size;
+
+    /**
+     * The slot to start from in the next tick
+     */
+    private int cursor;
+
+    /**
+     * The current tick
+     */
+    private long tick;
+
+    /**
+     * The backing task
+     */
+    private BukkitTask task;
+
+    /**
+     * Starts the scheduler
+     *
+     * @param plugin Plugin to run under
+     */
+    public void start(Plugin plugin) {
+        if (task != null) task.cancel();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1, 1);
+    }
+
+    /**
+     * Schedules a phase for the specified arena, replacing any task already scheduled for it
+     *
+     * @param arena  Key of the arena
+     * @param phase  Phase to schedule
+     * @param action Task to run
+     * @param delay  Delay (in ticks) before the first run
+     * @param period Period (in ticks) between runs
+     */
+    public void schedule(String arena, TickPhase phase, Runnable action, int delay, int period) {
+        int i = slotOf(arena) * PHASES.length + phase.ordinal();
+        if (tasks[i] != null) bucketLoad[bucket(nextRun[i])]--;
+        long first = tick + Math.max(1, delay);
+        long best = first;
+        for (int shift = 1, max = Math.min(phase.spread, Math.max(1, period)); shift < max; shift++) {
+            if (bucketLoad[bucket(first + shift)] < bucketLoad[bucket(best)])
+                best = first + shift;
+        }
+        tasks[i] = action;
+        periods[i] = Math.max(1, period);
+        nextRun[i] = best;
+        bucketLoad[bucket(best)]++;
+    }
+
+    /**
+     * Cancels a phase of the specified arena. Does nothing if the phase is not scheduled.
+     *
+     * @param arena Key of the arena
+     * @param phase Phase to cancel
+     */
+    public void cancel(String arena, TickPhase phase) {
+        Integer slot = slots.get(arena);
+        if (slot == null) return;
+        cancel(slot * PHASES.length + phase.ordinal());
+    }
+
+    /**
+     * Cancels all the phases of the specified arena
+     *
+     * @param arena Key of the arena
+     */
+    public void cancelAll(String arena) {
+        Integer slot = slots.get(arena);
+        if (slot == null) return;
+        for (int p = 0; p < PHASES.length; p++)
+            cancel(slot * PHASES.length + p);
+    }
+
+    /**
+     * Returns whether the specified phase of the arena is scheduled
+     *
+     * @param arena Key of the arena
+     * @param phase Phase to check
+     * @return True if it is scheduled, false if otherwise.
+     */
+    public boolean isScheduled(String arena, TickPhase phase) {
+        Integer slot = slots.get(arena);
+        return slot != null && tasks[slot * PHASES.length + phase.ordinal()] != null;
+    }
+
+    /**
+     * Cancels all phases of the arena and releases its slot. Used when the arena is deleted.
+     *
+     * @param arena Key of the arena
+     */
+    public void remove(String arena) {
+        cancelAll(arena);
+        Integer slot = slots.remove(arena);
+        if (slot == null) return;
+        int last = --size;
+        if (slot != last) { // move the last slot into the released one to keep the arrays dense
+            String key = keys[last];
+            keys[slot] = key;
+            slots.put(key, slot);
+            System.arraycopy(tasks, last * PHASES.length, tasks, slot * PHASES.length, PHASES.length);
+            System.arraycopy(periods, last * PHASES.length, periods, slot * PHASES.length, PHASES.length);
+            System.arraycopy(nextRun, last * PHASES.length, nextRun, slot * PHASES.length, PHASES.length);
+            averageNanos[slot] = averageNanos[last];
+            maxNanos[slot] = maxNanos[last];
+        }
+        keys[last] = null;
+        Arrays.fill(tasks, last * PHASES.length, (last + 1) * PHASES.length, null);
+        averageNanos[last] = maxNanos[last] = 0;
+        if (cursor >= size) cursor = 0;
+    }
+
+    /**
+     * Returns the average tick cost of the specified arena, in nanoseconds
+     *
+     * @param arena Key of the arena
+     * @return The average cost, or 0 if the arena has never ticked
+     */
+    public long getAverageCost(String arena) {
+        Integer slot = slots.get(arena);
+        return slot == null ? 0 : averageNanos[slot];
+    }
+
+    /**
+     * Returns the highest tick cost of the specified arena, in nanoseconds
+     *
+     * @param arena Key of the arena
+     * @return The highest cost, or 0 if the arena has never ticked
+     */
+    public long getMaxCost(String arena) {
+        Integer slot = slots.get(arena);
+        return slot == null ? 0 : maxNanos[slot];
+    }
+
+    /**
+     * Returns the average tick cost of all arenas, in nanoseconds, ordered from the slowest
+     *
+     * @return The costs map
+     */
+    public Map<String, Long> getCosts() {
+        List<Integer> order = new ArrayList<>(slots.values());
+        order.sort((a, b) -> Long.compare(averageNanos[b], averageNanos[a]));
+        Map<String, Long> costs = new LinkedHashMap<>();
+        for (int slot : order)
+            costs.put(keys[slot], averageNanos[slot]);
+        return costs;
+    }
+
+    @Override
+    public void run() {
+        tick++;
+        if (size == 0) return;
+        long budget = (long) (((Number) PluginSettings.ARENA_TICK_BUDGET.get()).doubleValue() * TimeUnit.MILLISECONDS.toNanos(1));
+        long start = System.nanoTime();
+        int count = size;
+        for (int k = 0; k < count && k < size; k++) {
+            int slot = (cursor + k) % size;
+            if (k > 0 && System.nanoTime() - start >= budget) {
+                cursor = slot; // whatever is left stays due, and goes first on the next tick
+                return;
+            }
+            long slotStart = System.nanoTime();
+            boolean ran = false;
+            for (int p = 0; p < PHASES.length; p++) {
+                int i = slot * PHASES.length + p;
+                Runnable action = tasks[i];
+                if (action == null || nextRun[i] > tick) continue;
+                bucketLoad[bucket(nextRun[i])]--;
+                nextRun[i] = tick + periods[i];
+                bucketLoad[bucket(nextRun[i])]++;
+                ran = true;
+                try {
+                    action.run();
+                } catch (Throwable t) {
+                    SpleefX.logger().log(Level.SEVERE, "Failed to tick phase " + PHASES[p] + " of arena " + keys[slot], t);
+                    cancel(i);
+                }
+            }
+            if (ran) {
+                long cost = System.nanoTime() - slotStart;
+                averageNanos[slot] = averageNanos[slot] == 0 ? cost : (averageNanos[slot] * 7 + cost) / 8;
+                maxNanos[slot] = Math.max(maxNanos[slot], cost);
+            }
+        }
+        cursor = size == 0 ? 0 : (cursor + 1) % size;
+    }
+
+    private void cancel(int i) {
+        if (tasks[i] == null) return;
+        tasks[i] = null;
+        bucketLoad[bucket(nextRun[i])]--;
+    }
+
+    private int slotOf(String arena) {
+        Integer slot = slots.get(arena);
+        if (slot != null) return slot;
+        if (size == keys.length) grow();
+        slots.put(arena, size);
+        keys[size] = arena;
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        tasks = Arrays.copyOf(tasks, capacity * PHASES.length);
+        periods = Arrays.copyOf(periods, capacity * PHASES.length);
+        nextRun = Arrays.copyOf(nextRun, capacity * PHASES.length);
+        averageNanos = Arrays.copyOf(averageNanos, capacity);
+        maxNanos = Arrays.copyOf(maxNanos, capacity);
+    }
+
+    private static int bucket(long tick) {
+        return (int) (tick % BUCKETS);
+    }
+}
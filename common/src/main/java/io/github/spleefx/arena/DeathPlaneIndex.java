@@ -0,0 +1,121 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.arena;
+
+import io.github.spleefx.arena.ArenaPlayer.ArenaPlayerState;
+import io.github.spleefx.arena.api.GameArena;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An index of the death planes of all running arenas, grouped by world.
+ * <p>
+ * Arenas register their plane when the game starts and unregister it when it ends, so
+ * worlds without running games are rejected with a single map lookup, and players are only
+ * checked when they move across a block layer (or sink within one).
+ * <p>
+ * This class is only accessed from the main thread.
+ */
+public class DeathPlaneIndex implements Listener {
+
+    /**
+     * All active planes, mapped by the world UUID
+     */
+    private final Map<UUID, WorldPlanes> worlds = new HashMap<>();
+
+    /**
+     * Registers the death plane of the specified arena
+     *
+     * @param arena Arena to register
+     */
+    public void register(GameArena arena) {
+        World world = arena.getRegenerationPoint().getWorld();
+        if (world == null) return;
+        worlds.computeIfAbsent(world.getUID(), k -> new WorldPlanes()).put(arena.getKey(), arena.getDeathLevel());
+    }
+
+    /**
+     * Unregisters the death plane of the specified arena. Does nothing if the arena has none.
+     *
+     * @param arena Arena to unregister
+     */
+    public void unregister(GameArena arena) {
+        World world = arena.getRegenerationPoint().getWorld();
+        if (world == null) return;
+        WorldPlanes planes = worlds.get(world.getUID());
+        if (planes == null) return;
+        planes.remove(arena.getKey());
+        if (planes.isEmpty()) worlds.remove(world.getUID());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to == null) return;
+        if (from.getBlockY() == to.getBlockY() && to.getY() >= from.getY()) return; // no vertical progress
+        if (worlds.isEmpty()) return;
+        WorldPlanes planes = worlds.get(to.getWorld().getUID());
+        if (planes == null || to.getY() > planes.highest) return;
+        ArenaPlayer player = ArenaPlayer.adapt(event.getPlayer());
+        if (player.getState() != ArenaPlayerState.IN_GAME) return;
+        GameArena arena = player.getCurrentArena();
+        if (arena == null) return;
+        Integer plane = planes.levels.get(arena.getKey());
+        if (plane == null || to.getY() > plane) return;
+        arena.getEngine().eliminate(player);
+    }
+
+    /**
+     * Represents the planes inside a single world
+     */
+    private static class WorldPlanes {
+
+        /**
+         * The death level of each arena, mapped by the arena key
+         */
+        private final Map<String, Integer> levels = new HashMap<>();
+
+        /**
+         * The highest death level in this world. Anything above it can be skipped.
+         */
+        private int highest = Integer.MIN_VALUE;
+
+        void put(String arena, int level) {
+            levels.put(arena, level);
+            highest = Math.max(highest, level);
+        }
+
+        void remove(String arena) {
+            if (levels.remove(arena) == null) return;
+            highest = Integer.MIN_VALUE;
+            for (int level : levels.values())
+                highest = Math.max(highest, level);
+        }
+
+        boolean isEmpty() {
+            return levels.isEmpty();
+        }
+    }
+}
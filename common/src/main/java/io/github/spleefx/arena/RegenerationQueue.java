@@ -0,0 +1,255 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.arena;
+
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.arena.api.GameArena;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * Limits the amount of arenas which regenerate at the same time, so that a burst of regenerations (such as
+ * when the server starts, or when many games end together) does not run all pastes concurrently.
+ * <p>
+ * Regenerations beyond the limit wait in the queue. Whenever a slot frees up, the waiting arena with the
+ * highest priority goes next: arenas which have players waiting in them come first, followed by arenas which
+ * players have tried to join (for example by clicking their signs), and then the ones which were queued first.
+ * Requests for an arena which is already queued are merged with the existing one. Requests for an arena which
+ * is regenerating are queued again, and only start once the running regeneration is done, so that blocks changed
+ * since it started are restored as well.
+ * Regenerations which do not finish within the configured timeout are failed and cancelled, so that they free
+ * their slot and stop changing the arena.
+ * <p>
+ * This class is only accessed from the main thread.
+ */
+public class RegenerationQueue {
+
+    /**
+     * The arena manager, which does the actual regeneration
+     */
+    private final ArenaManager arenaManager;
+
+    /**
+     * All waiting regenerations, mapped by the arena key, in submission order
+     */
+    private final Map<String, Request> waiting = new LinkedHashMap<>();
+
+    /**
+     * All running regenerations, mapped by the arena key
+     */
+    private final Map<String, Request> running = new HashMap<>();
+
+    /**
+     * Whether the concurrency limit is lifted, which is the case when the server stops
+     */
+    private boolean draining;
+
+    /**
+     * The amount of regenerations which have been dispatched
+     */
+    private long dispatched;
+
+    /**
+     * The total time (in nanoseconds) dispatched regenerations have waited in the queue
+     */
+    private long totalWait;
+
+    /**
+     * The highest time (in nanoseconds) a regeneration has waited in the queue
+     */
+    private long maxWait;
+
+    public RegenerationQueue(ArenaManager arenaManager) {
+        this.arenaManager = arenaManager;
+    }
+
+    /**
+     * Queues the regeneration of the specified arena. If the arena is already queued, the existing request
+     * is returned instead. If it is regenerating, a new request is queued which starts once the running one
+     * is done.
+     *
+     * @param key Key of the arena
+     * @return A future which completes when the arena has been regenerated
+     */
+    public CompletableFuture<Void> submit(String key) {
+        Request request = waiting.get(key);
+        if (request != null) return request.future;
+        waiting.put(key, request = new Request());
+        dispatch();
+        return request.future;
+    }
+
+    /**
+     * Records that a player tried to join the specified arena while it was waiting to regenerate, which
+     * moves it ahead of the arenas nobody is waiting for. Does nothing if the arena is not queued.
+     *
+     * @param key Key of the arena
+     */
+    public void demand(String key) {
+        Request request = waiting.get(key);
+        if (request != null) request.demand++;
+    }
+
+    /**
+     * Starts all waiting regenerations, regardless of the concurrency limit. Used when the server stops.
+     * Regenerations of arenas which are still regenerating start as soon as the running one is done.
+     */
+    public void dispatchAll() {
+        draining = true;
+        dispatch();
+    }
+
+    /**
+     * Returns the amount of regenerations waiting for a free slot
+     *
+     * @return The queue depth
+     */
+    public int getDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * Returns the amount of regenerations which are currently running
+     *
+     * @return The running regenerations
+     */
+    public int getRunning() {
+        return running.size();
+    }
+
+    /**
+     * Returns the amount of regenerations which have been started since the server started
+     *
+     * @return The dispatched regenerations
+     */
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * Returns the average time (in milliseconds) regenerations have waited in the queue before starting
+     *
+     * @return The average wait
+     */
+    public double getAverageWait() {
+        return dispatched == 0 ? 0 : (double) totalWait / dispatched / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the highest time (in milliseconds) a regeneration has waited in the queue before starting
+     *
+     * @return The highest wait
+     */
+    public double getMaxWait() {
+        return (double) maxWait / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the time (in milliseconds) each waiting regeneration has been queued for
+     *
+     * @return The wait of each regeneration, mapped by the arena key
+     */
+    public Map<String, Double> getWaiting() {
+        Map<String, Double> wait = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        waiting.forEach((key, request) -> wait.put(key, (double) (now - request.queuedAt) / TimeUnit.MILLISECONDS.toNanos(1)));
+        return wait;
+    }
+
+    private void dispatch() {
+        int limit = draining ? Integer.MAX_VALUE : Math.max(1, ((Number) PluginSettings.ARENA_MAX_CONCURRENT_REGENERATIONS.get()).intValue());
+        while (running.size() < limit && !waiting.isEmpty()) {
+            String next = null;
+            int bestPlayers = -1, bestDemand = -1;
+            for (Map.Entry<String, Request> entry : waiting.entrySet()) { // in submission order, so ties go to the oldest
+                if (running.containsKey(entry.getKey())) continue; // goes once the running regeneration is done
+                int players = waitingPlayers(entry.getKey());
+                int demand = entry.getValue().demand;
+                if (players > bestPlayers || (players == bestPlayers && demand > bestDemand)) {
+                    next = entry.getKey();
+                    bestPlayers = players;
+                    bestDemand = demand;
+                }
+            }
+            if (next == null) return;
+            start(next);
+        }
+    }
+
+    private void start(String key) {
+        Request request = waiting.remove(key);
+        long wait = System.nanoTime() - request.queuedAt;
+        dispatched++;
+        totalWait += wait;
+        maxWait = Math.max(maxWait, wait);
+        running.put(key, request);
+        CompletableFuture<Void> future;
+        try {
+            future = arenaManager.regenerateArena(key);
+        } catch (Throwable t) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+        }
+        future.whenComplete((v, e) -> {
+            if (Bukkit.isPrimaryThread()) finish(key, request, e);
+            else Bukkit.getScheduler().runTask(SpleefX.getPlugin(), () -> finish(key, request, e));
+        });
+        // do not rely on the backend to always complete, otherwise a broken paste would hold its slot forever.
+        // failing the backend future also cancels the paste, so it does not keep changing the arena
+        long timeout = ((Number) PluginSettings.ARENA_REGENERATION_TIMEOUT.get()).longValue();
+        if (timeout > 0 && !future.isDone()) {
+            CompletableFuture<Void> backend = future;
+            Bukkit.getScheduler().runTaskLater(SpleefX.getPlugin(), () -> {
+                if (running.get(key) != request) return;
+                TimeoutException error = new TimeoutException("Regeneration did not finish within " + timeout + " seconds");
+                backend.completeExceptionally(error);
+                finish(key, request, error);
+            }, timeout * 20);
+        }
+    }
+
+    private void finish(String key, Request request, Throwable error) {
+        if (!running.remove(key, request)) return; // already timed out
+        if (error == null) request.future.complete(null);
+        else {
+            SpleefX.logger().log(Level.SEVERE, "Failed to regenerate arena " + key, error);
+            request.future.completeExceptionally(error);
+        }
+        dispatch();
+    }
+
+    private static int waitingPlayers(String key) {
+        GameArena arena = GameArena.getByKey(key);
+        return arena == null ? 0 : arena.getEngine().getPlayerTeams().size();
+    }
+
+    /**
+     * Represents a queued regeneration
+     */
+    private static class Request {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final long queuedAt = System.nanoTime();
+        private int demand;
+
+    }
+}
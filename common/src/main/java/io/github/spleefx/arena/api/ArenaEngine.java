@@ -78,6 +78,14 @@ public interface ArenaEngine {
      */
     void lose(ArenaPlayer player, GameTeam team, boolean disconnect);
 
+    /**
+     * Invoked when the player is eliminated from a running game, for example by falling below
+     * the death level. This handles announcing eliminated teams and ending the game if a winner is decided.
+     *
+     * @param player Player to eliminate
+     */
+    void eliminate(ArenaPlayer player);
+
     /**
      * Invoked when the player wins
      *
@@ -19,8 +19,9 @@ import io.github.spleefx.SpleefX;
 import io.github.spleefx.arena.ArenaPlayer;
 import io.github.spleefx.arena.ArenaPlayer.ArenaPlayerState;
 import io.github.spleefx.arena.ArenaStage;
+import io.github.spleefx.arena.ArenaTickScheduler;
+import io.github.spleefx.arena.ArenaTickScheduler.TickPhase;
 import io.github.spleefx.arena.api.GameTask.Phase;
-import io.github.spleefx.data.GameStats;
 import io.github.spleefx.data.PlayerStatistic;
 import io.github.spleefx.extension.GameEvent;
 import io.github.spleefx.extension.GameExtension.ScoreboardType;
@@ -30,6 +31,7 @@ import io.github.spleefx.extension.ability.DoubleJumpHandler.DoubleJumpItems;
 import io.github.spleefx.extension.ability.GameAbility;
 import io.github.spleefx.perk.GamePerk;
 import io.github.spleefx.scoreboard.ScoreboardHolder;
+import io.github.spleefx.scoreboard.sidebar.SidebarBoard;
 import io.github.spleefx.sign.SignManager;
 import io.github.spleefx.spectate.PlayerSpectateAnotherEvent;
 import io.github.spleefx.spectate.SpectatePlayerMenu;
@@ -38,12 +40,10 @@ import io.github.spleefx.team.TeamColor;
 import io.github.spleefx.util.PlaceholderUtil.BetEntry;
 import io.github.spleefx.util.PlaceholderUtil.ColoredNumberEntry;
 import io.github.spleefx.util.code.MapBuilder;
-import io.github.spleefx.util.game.BukkitTaskUtils;
 import io.github.spleefx.util.game.Metas;
 import io.github.spleefx.util.game.PlayerContext;
 import io.github.spleefx.util.message.message.Message;
 import io.github.spleefx.util.plugin.PluginSettings;
-import lombok.SneakyThrows;
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
@@ -52,7 +52,6 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.metadata.FixedMetadataValue;
-import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
@@ -131,19 +130,19 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
     public int countdown = PluginSettings.COUNTDOWN_ON_ENOUGH_PLAYERS.get();
 
     /**
-     * The task that controls the cooldown
+     * The regeneration requested before the countdown, which the game waits for before it starts
      */
-    private BukkitTask countdownTask;
+    private CompletableFuture<Void> countdownRegeneration;
 
     /**
-     * The task that controls the game
+     * The countdown phase, ticked every second by the {@link ArenaTickScheduler}
      */
-    private BukkitTask gameTask;
+    private final Runnable countdownPhase = this::tickCountdown;
 
     /**
-     * The task that controls the game time
+     * The game timer phase, ticked every second by the {@link ArenaTickScheduler}
      */
-    private BukkitTask timerTask;
+    private final Runnable timerPhase = this::tickTimer;
 
     /**
      * The time left till the game ends
@@ -234,13 +233,6 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
             Message.ARENA_FULL.reply(player, arena, player, arena.getExtension());
             return false;
         }
-        GameStats stats = null;
-        if (arena.shouldTakeBets()) {
-            if ((stats = SpleefX.getPlugin().getDataProvider().getStatistics(player)).getCoins(player) < arena.getBet()) {
-                Message.NOT_ENOUGH_TO_BET.reply(player, arena, player, arena.getExtension(), new BetEntry(arena.getBet(), null));
-                return false;
-            }
-        }
         switch (arena.getEngine().getArenaStage()) {
             case DISABLED:
                 Message.ARENA_DISABLED.reply(player, arena, player, arena.getExtension());
@@ -249,6 +241,7 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
                 Message.ARENA_ALREADY_ACTIVE.reply(player, arena, player, arena.getExtension());
                 return false;
             case REGENERATING:
+                getPlugin().getArenaManager().getRegenerationQueue().demand(arena.getKey());
                 Message.ARENA_REGENERATING.reply(player, arena, player, arena.getExtension());
                 return false;
             case NEEDS_SETUP:
@@ -256,6 +249,10 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
                 return false;
         }
         if (playerTeams.containsKey(p)) return false;
+        if (arena.shouldTakeBets() && !getPlugin().getCoinLedger().take(player, arena.getBet())) {
+            Message.NOT_ENOUGH_TO_BET.reply(player, arena, player, arena.getExtension(), new BetEntry(arena.getBet(), null));
+            return false;
+        }
         if (team == null)
             team = selectTeam();
         team.getMembers().add(player);
@@ -280,8 +277,6 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
                         .put(GameAbility.DOUBLE_JUMP, arena.getExtension().getDoubleJumpSettings().getDefaultAmount()).build());
         if (arena.shouldTakeBets()) {
             betsMap.put(player, arena.getBet());
-            assert stats != null;
-            stats.takeCoins(player, arena.getBet());
             Message.BET_TAKEN.reply(player, arena, player, arena.getExtension(), new BetEntry(arena.getBet(), null));
         }
         return true;
@@ -319,12 +314,12 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
         } else if (getArenaStage() == ArenaStage.COUNTDOWN || getArenaStage() == ArenaStage.WAITING) {
             broadcasted.remove(p.getPlayer().getUniqueId());
             if (arena.shouldTakeBets())
-                SpleefX.getPlugin().getDataProvider().getStatistics(player).giveCoins(player, betsMap.remove(player));
+                getPlugin().getCoinLedger().give(player, betsMap.remove(player));
         }
         load(p, false);
         if (getArenaStage() != ArenaStage.ACTIVE) {
-            if (playerTeams.size() < arena.getMinimum() && !BukkitTaskUtils.isCancelled(countdownTask)) {
-                countdownTask.cancel();
+            if (playerTeams.size() < arena.getMinimum() && getScheduler().isScheduled(arena.getKey(), TickPhase.COUNTDOWN)) {
+                getScheduler().cancel(arena.getKey(), TickPhase.COUNTDOWN);
                 countdown = PluginSettings.COUNTDOWN_ON_ENOUGH_PLAYERS.get();
                 setArenaStage(ArenaStage.WAITING);
                 currentScoreboard = ScoreboardType.WAITING_IN_LOBBY;
@@ -380,6 +375,52 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
         playerTeams.remove(player);
     }
 
+    /**
+     * Invoked when the player is eliminated from a running game
+     *
+     * @param player Player to eliminate
+     */
+    @Override
+    public synchronized void eliminate(ArenaPlayer player) {
+        if (getArenaStage() != ArenaStage.ACTIVE || !alive.contains(player.getPlayer())) return;
+        GameTeam team = playerTeams.get(player);
+        if (team == null) return;
+        lose(player, team, false);
+        if (arena.getArenaType() == ArenaType.TEAMS && team.isEliminated() && !deadTeams.contains(team)) {
+            toBroadcast().forEach(p -> Message.TEAM_ELIMINATED.reply(p.getPlayer(), arena, team.getColor(), -1, arena.getExtension()));
+            deadTeams.add(team);
+        }
+        checkWinners();
+    }
+
+    /**
+     * Ends the game if a single player (or team) is left, or as a draw if nobody is left
+     */
+    private void checkWinners() {
+        if (arena.getArenaType() == ArenaType.FREE_FOR_ALL) {
+            if (alive.size() == 1) {
+                ArenaPlayer p = ArenaPlayer.adapt(alive.get(0));
+                win(p, playerTeams.get(p));
+                end(true);
+            } else if (alive.isEmpty())
+                draw();
+            return;
+        }
+        GameTeam remaining = null;
+        int teamsLeft = 0;
+        for (GameTeam team : arena.getGameTeams()) {
+            if (team.isEliminated()) continue;
+            remaining = team;
+            teamsLeft++;
+        }
+        if (teamsLeft == 1) {
+            for (Player p : remaining.getAlive())
+                win(ArenaPlayer.adapt(p), remaining);
+            end(true);
+        } else if (teamsLeft == 0)
+            draw();
+    }
+
     /**
      * Invoked when the player wins
      *
@@ -412,8 +453,7 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
      */
     @Override
     public void draw() {
-        gameTask.cancel();
-        timerTask.cancel();
+        stopGame();
         timeLeft = arena.getGameTime() * 60;
         toBroadcast().forEach(p -> {
             load(ArenaPlayer.adapt(p), true);
@@ -500,42 +540,51 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
     /**
      * Runs the countdown
      */
-    @SneakyThrows @Override
+    @Override
     public void countdown() {
-        if (countdownTask != null && !BukkitTaskUtils.isCancelled(countdownTask)) return;
+        if (getScheduler().isScheduled(arena.getKey(), TickPhase.COUNTDOWN)) return;
         currentScoreboard = isFull() ? ScoreboardType.COUNTDOWN_AND_FULL : ScoreboardType.COUNTDOWN_AND_WAITING;
         setArenaStage(ArenaStage.COUNTDOWN);
         if (ARENA_REGENERATE_BEFORE_COUNTDOWN.get())
-            getPlugin().getArenaManager().regenerateArena(arena.getKey());
+            countdownRegeneration = getPlugin().getArenaManager().getRegenerationQueue().submit(arena.getKey());
 
         Map<String, String> numbersToDisplay = TITLE_ON_COUNTDOWN_NUMBERS.get();
         playerTeams.forEach((p, team) -> Message.GAME_STARTING.reply(p.getPlayer(), arena, team.getColor(), p.getPlayer(), countdown, new ColoredNumberEntry(numbersToDisplay.getOrDefault(countdown + "", "&e" + countdown)), arena.getExtension()));
         arena.getExtension().getRunCommandsWhenGameFills().forEach(c -> SenderType.CONSOLE.run(null, c, arena));
-        countdownTask = Bukkit.getScheduler().runTaskTimer(getPlugin(), () -> {
-            countdown--;
-            currentScoreboard = isFull() ? ScoreboardType.COUNTDOWN_AND_FULL : ScoreboardType.COUNTDOWN_AND_WAITING;
-            playerTeams.forEach((p, value) -> {
-                if (DISPLAY_COUNTDOWN_ON_EXP_BAR.get()) {
-                    p.getPlayer().setLevel(countdown);
-                    p.getPlayer().setExp((float) countdown / ((Number) COUNTDOWN_ON_ENOUGH_PLAYERS.get()).intValue());
-                }
-                String title = numbersToDisplay.get(Integer.toString(countdown));
-                if (title != null)
-                    if (TITLE_ON_COUNTDOWN_ENABLED.get()) {
-                        getProtocol().displayTitle(p.getPlayer(), title, TITLE_ON_COUNTDOWN_SUBTITLE.get(), TITLE_ON_COUNTDOWN_FADE_IN.get(), TITLE_ON_COUNTDOWN_DISPLAY.get(), TITLE_ON_COUNTDOWN_FADE_OUT.get());
-                        Message.GAME_COUNTDOWN.reply(p.getPlayer(), arena, value.getColor(), p.getPlayer(), new ColoredNumberEntry(title), countdown, arena.getExtension());
-                    }
-                List<Integer> when = PLAY_SOUND_ON_EACH_BROADCAST_WHEN.get();
-                if (when.contains(countdown))
-                    p.getPlayer().playSound(p.getPlayer().getLocation(), (Sound) PLAY_SOUND_ON_EACH_BROADCAST_SOUND.get(), 1, 1);
-            });
+        getScheduler().schedule(arena.getKey(), TickPhase.COUNTDOWN, countdownPhase, 20, 20);
+    }
 
-            if (countdown == 0) {
-                countdownTask.cancel();
-                countdown = PluginSettings.COUNTDOWN_ON_ENOUGH_PLAYERS.get();
-                start();
+    /**
+     * Runs a single second of the countdown
+     */
+    private void tickCountdown() {
+        // hold the last second until the arena is regenerated, otherwise the restore would revert the blocks players break
+        if (countdown == 1 && countdownRegeneration != null && !countdownRegeneration.isDone()) return;
+        countdown--;
+        currentScoreboard = isFull() ? ScoreboardType.COUNTDOWN_AND_FULL : ScoreboardType.COUNTDOWN_AND_WAITING;
+        Map<String, String> numbersToDisplay = TITLE_ON_COUNTDOWN_NUMBERS.get();
+        playerTeams.forEach((p, value) -> {
+            if (DISPLAY_COUNTDOWN_ON_EXP_BAR.get()) {
+                p.getPlayer().setLevel(countdown);
+                p.getPlayer().setExp((float) countdown / ((Number) COUNTDOWN_ON_ENOUGH_PLAYERS.get()).intValue());
             }
-        }, 20, 20);
+            String title = numbersToDisplay.get(Integer.toString(countdown));
+            if (title != null)
+                if (TITLE_ON_COUNTDOWN_ENABLED.get()) {
+                    getProtocol().displayTitle(p.getPlayer(), title, TITLE_ON_COUNTDOWN_SUBTITLE.get(), TITLE_ON_COUNTDOWN_FADE_IN.get(), TITLE_ON_COUNTDOWN_DISPLAY.get(), TITLE_ON_COUNTDOWN_FADE_OUT.get());
+                    Message.GAME_COUNTDOWN.reply(p.getPlayer(), arena, value.getColor(), p.getPlayer(), new ColoredNumberEntry(title), countdown, arena.getExtension());
+                }
+            List<Integer> when = PLAY_SOUND_ON_EACH_BROADCAST_WHEN.get();
+            if (when.contains(countdown))
+                p.getPlayer().playSound(p.getPlayer().getLocation(), (Sound) PLAY_SOUND_ON_EACH_BROADCAST_SOUND.get(), 1, 1);
+        });
+
+        if (countdown == 0) {
+            getScheduler().cancel(arena.getKey(), TickPhase.COUNTDOWN);
+            countdown = PluginSettings.COUNTDOWN_ON_ENOUGH_PLAYERS.get();
+            countdownRegeneration = null;
+            start();
+        }
     }
 
     /**
@@ -571,63 +620,45 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
     @Override
     public void loop() {
         if (getArenaStage() != ArenaStage.ACTIVE) return;
-        Map<String, String> numbers = TIME_OUT_WARN.get();
-        try {
-            timerTask = Bukkit.getScheduler().runTaskTimer(getPlugin(), () -> {
-                timeLeft--;
-                String m = numbers.get(Integer.toString(timeLeft));
-                playerTeams.forEach((p, team) -> {
-                    if (DISPLAY_COUNTDOWN_ON_EXP_BAR.get()) {
-                        p.getPlayer().setLevel(timeLeft);
-                        p.getPlayer().setExp((float) timeLeft / origTimeLeft);
-                    }
-                    if (m != null)
-                        Message.GAME_TIMEOUT.reply(p.getPlayer(), arena, team.getColor(), p.getPlayer(), new ColoredNumberEntry(m), timeLeft, arena.getExtension());
-                });
-            }, 20, 20);
-
-            gameTask = Bukkit.getScheduler().runTaskTimer(getPlugin(), () -> {
-                if (timeLeft == 0)
-                    draw();
-                if (arena.getArenaType() == ArenaType.FREE_FOR_ALL) {
-                    GameTeam ffa = arena.getGameTeams().get(0);
-                    alive.stream().filter(player -> player.getLocation().getY() <= arena.getDeathLevel()).forEach(player -> lose(ArenaPlayer.adapt(player), ffa, false));
-                    if (alive.size() == 1) {
-                        ArenaPlayer p = ArenaPlayer.adapt(alive.get(0));
-                        win(p, playerTeams.get(p));
-                        end(true);
-                        return;
-                    }
-                } else {
-                    arena.getGameTeams().forEach(team -> team.getAlive().forEach((player) -> {
-                        if (player.getLocation().getY() <= arena.getDeathLevel())
-                            lose(ArenaPlayer.adapt(player), team, false);
-                        if (team.getAlive().size() == 0) {
-                            toBroadcast().forEach(p -> Message.TEAM_ELIMINATED.reply(p.getPlayer(), arena, team.getColor(), -1, arena.getExtension()));
-                            deadTeams.add(team);
-                        }
-                    }));
-                    List<GameTeam> teamsLeft =
-                            arena.getGameTeams().stream().filter(team -> !team.isEliminated())
-                                    .collect(Collectors.toList());
-                    if (teamsLeft.size() == 1) {
-                        GameTeam team = teamsLeft.get(0);
-                        team.getAlive().forEach(p -> {
-                            ArenaPlayer player = ArenaPlayer.adapt(p);
-                            win(player, team);
-                        });
-                        end(true);
-                        return;
-                    }
-                    if (teamsLeft.isEmpty()) {
-                        draw();
-                        return;
-                    }
-                }
-                if (alive.size() == 0) draw();
-            }, ((Integer) ARENA_UPDATE_INTERVAL.get()).longValue(), ((Integer) ARENA_UPDATE_INTERVAL.get()).longValue());
-        } catch (ConcurrentModificationException | NullPointerException ignored) {
+        getScheduler().schedule(arena.getKey(), TickPhase.TIMER, timerPhase, 20, 20);
+        getPlugin().getArenaManager().getDeathPlanes().register(arena);
+    }
+
+    /**
+     * Runs a single second of the game timer
+     */
+    private void tickTimer() {
+        timeLeft--;
+        if (timeLeft <= 0) {
+            draw();
+            return;
         }
+        String m = ((Map<String, String>) TIME_OUT_WARN.get()).get(Integer.toString(timeLeft));
+        playerTeams.forEach((p, team) -> {
+            if (DISPLAY_COUNTDOWN_ON_EXP_BAR.get()) {
+                p.getPlayer().setLevel(timeLeft);
+                p.getPlayer().setExp((float) timeLeft / origTimeLeft);
+            }
+            if (m != null)
+                Message.GAME_TIMEOUT.reply(p.getPlayer(), arena, team.getColor(), p.getPlayer(), new ColoredNumberEntry(m), timeLeft, arena.getExtension());
+        });
+    }
+
+    /**
+     * Cancels all the periodic phases of the game and stops tracking the death plane
+     */
+    private void stopGame() {
+        getScheduler().cancelAll(arena.getKey());
+        getPlugin().getArenaManager().getDeathPlanes().unregister(arena);
+    }
+
+    /**
+     * Returns the scheduler which drives the periodic phases of all arenas
+     *
+     * @return The tick scheduler
+     */
+    protected ArenaTickScheduler getScheduler() {
+        return getPlugin().getArenaManager().getTickScheduler();
     }
 
     /**
@@ -635,6 +666,7 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
      */
     @Override
     public void end(boolean giveRewards) {
+        stopGame();
         endTasks.stream().filter(task -> task.getPhase() == Phase.BEFORE).forEach(GameTask::run);
         if (giveRewards) {
             Collections.reverse(dead);
@@ -649,7 +681,7 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
                             int sum = betsMap.values().stream().mapToInt(integer -> integer).sum();
                             commandsToRun.forEach((sender, commands) -> commands.forEach(c -> sender.run(winner.getPlayer(), c.replace("{portion}", FORMAT.format(sum)), arena)));
                             if (arena.shouldTakeBets()) {
-                                getPlugin().getDataProvider().getStatistics(winner.getPlayer()).giveCoins(winner.getPlayer(), sum);
+                                getPlugin().getCoinLedger().give(winner.getPlayer(), sum);
                                 Message.WON_GAME_BET.reply(winner.getPlayer(), arena, winner.getPlayer(), arena.getExtension(), new BetEntry(arena.getBet(), FORMAT.format(sum)));
                             }
                         }
@@ -665,7 +697,7 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
                             winningTeam.getMembers().forEach(p -> {
                                 commandsToRun.forEach((sender, commands) -> commands.forEach(c -> sender.run(p, c.replace("{portion}", FORMAT.format(portion)), arena)));
                                 if (arena.shouldTakeBets()) {
-                                    getPlugin().getDataProvider().getStatistics(p.getPlayer()).giveCoins(p.getPlayer(), portion);
+                                    getPlugin().getCoinLedger().give(p.getPlayer(), portion);
                                     Message.WON_GAME_BET.reply(p.getPlayer(), arena, p.getPlayer(), -1, arena.getExtension(), "{portion}", FORMAT.format(portion));
                                 }
                             });
@@ -703,7 +735,7 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
         playerTeams.keySet().forEach(p -> {
             load(p, false);
             if (arena.shouldTakeBets())
-                getPlugin().getDataProvider().getStatistics(p.getPlayer()).giveCoins(p.getPlayer(), betsMap.remove(p.getPlayer()));
+                getPlugin().getCoinLedger().give(p.getPlayer(), betsMap.remove(p.getPlayer()));
             Message.SERVER_STOPPED.reply(p.getPlayer(), arena, p.getPlayer(), arena.getExtension());
         });
 
@@ -715,11 +747,11 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
      * Regenerates the arena
      * @param newStage
      */
-    @SneakyThrows @Override
+    @Override
     public void regenerate(@Nullable ArenaStage newStage) {
         ArenaStage oldStage = newStage == null ? getArenaStage() : newStage;
         setArenaStage(ArenaStage.REGENERATING);
-        getPlugin().getArenaManager().regenerateArena(arena.getKey()).thenAccept((v) -> {
+        getPlugin().getArenaManager().getRegenerationQueue().submit(arena.getKey()).whenComplete((v, e) -> {
             setArenaStage(oldStage);
             getSignManager().update();
         });
@@ -761,7 +793,8 @@ public abstract class BaseArenaEngine<R extends GameArena> implements ArenaEngin
                 player.setAllowFlight(context.allowFlight);
 
             player.setFallDistance(-500);
-            getPlugin().getScoreboardTicker().getBoards().remove(player.getUniqueId());
+            SidebarBoard board = getPlugin().getScoreboardTicker().getBoards().remove(player.getUniqueId());
+            if (board != null) board.destroy();
             try {
                 player.setScoreboard(Objects.requireNonNull(Bukkit.getScoreboardManager()).getMainScoreboard());
             } catch (NullPointerException ignored) {
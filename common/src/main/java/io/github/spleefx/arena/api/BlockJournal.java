@@ -0,0 +1,272 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.arena.api;
+
+import io.github.spleefx.compatibility.CompatibilityHandler;
+import io.github.spleefx.compatibility.material.MaterialCompatibility;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A journal of all the blocks changed in an arena since it was last regenerated, along with their
+ * original state. This allows regenerating the arena by restoring only the changed blocks instead of
+ * pasting the whole schematic.
+ * <p>
+ * Positions are packed into longs, and original states are stored as indices into a palette, since most
+ * changed blocks share the same few states. Only the first change of every position is recorded.
+ * <p>
+ * The journal can only restore the arena if it has been fully pasted since the journal started recording.
+ * When it cannot (for example on the first game after a restart, after the journal overflows, or after the
+ * building is edited), the arena falls back to a full schematic paste.
+ * <p>
+ * This class is only accessed from the main thread.
+ */
+public class BlockJournal {
+
+    /**
+     * Marks an empty slot in the positions set. This packs to a position beyond the world border.
+     */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * The journal that explosions are currently recorded into
+     */
+    private static BlockJournal exploding;
+
+    /**
+     * The recorded positions, in recording order
+     */
+    private long[] positions = new long[16];
+
+    /**
+     * The palette index of the original state of each recorded position
+     */
+    private int[] states = new int[16];
+
+    /**
+     * An open-addressing set of the recorded positions, used to only record the first change
+     */
+    private long[] recorded = newTable(32);
+
+    /**
+     * All the distinct original states
+     */
+    private final List<Object> palette = new ArrayList<>();
+
+    /**
+     * The index of every state in the palette
+     */
+    private final Map<Object, Integer> paletteIndex = new HashMap<>();
+
+    /**
+     * The amount of recorded positions
+     */
+    private int size;
+
+    /**
+     * Whether has the journal gone over its capacity
+     */
+    private boolean overflowed;
+
+    /**
+     * Whether has the arena been fully pasted since the journal started recording
+     */
+    private boolean trusted;
+
+    /**
+     * The amount of times the arena has been restored from the journal since the last full paste
+     */
+    private int restores;
+
+    /**
+     * Records the original state of the specified block. This must be invoked before the block is changed.
+     *
+     * @param block Block to record
+     */
+    public void record(Block block) {
+        if (overflowed || !trusted) return;
+        long position = pack(block.getX(), block.getY(), block.getZ());
+        if (!add(position)) return; // only the first change matters
+        if (size == ((Number) PluginSettings.ARENA_JOURNAL_CAPACITY.get()).intValue()) {
+            overflowed = true;
+            release();
+            return;
+        }
+        Object state = CompatibilityHandler.getMaterialCompatibility().captureBlock(block);
+        Integer index = paletteIndex.get(state);
+        if (index == null) {
+            paletteIndex.put(state, index = palette.size());
+            palette.add(state);
+        }
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+        }
+        positions[size] = position;
+        states[size++] = index;
+    }
+
+    /**
+     * Records all the blocks destroyed by the specified explosion into this journal
+     *
+     * @param explosion Task which creates the explosion
+     */
+    public void recordExplosion(Runnable explosion) {
+        BlockJournal previous = exploding;
+        exploding = this;
+        try {
+            explosion.run();
+        } finally {
+            exploding = previous;
+        }
+    }
+
+    /**
+     * Returns whether can the arena be regenerated by restoring this journal
+     *
+     * @return True if it can be restored, false if a full paste is required.
+     */
+    public boolean canRestore() {
+        if (!trusted || overflowed) return false;
+        int interval = ((Number) PluginSettings.ARENA_FULL_PASTE_INTERVAL.get()).intValue();
+        return interval <= 0 || restores < interval;
+    }
+
+    /**
+     * Restores all the recorded blocks to their original state and clears the journal
+     *
+     * @param world World of the arena
+     */
+    public void restore(World world) {
+        MaterialCompatibility compatibility = CompatibilityHandler.getMaterialCompatibility();
+        for (int i = 0; i < size; i++) {
+            long position = positions[i];
+            compatibility.restoreBlock(world.getBlockAt(unpackX(position), unpackY(position), unpackZ(position)), palette.get(states[i]));
+        }
+        restores++;
+        release();
+    }
+
+    /**
+     * Clears the journal and starts recording on top of a freshly pasted arena
+     */
+    public void onFullPaste() {
+        trusted = true;
+        overflowed = false;
+        restores = 0;
+        release();
+    }
+
+    /**
+     * Invalidates the journal, forcing the next regeneration to be a full paste. Used when the
+     * arena building changes.
+     */
+    public void invalidate() {
+        trusted = false;
+        release();
+    }
+
+    /**
+     * Returns the amount of recorded blocks
+     *
+     * @return The amount of recorded blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the journal that explosions are currently recorded into
+     *
+     * @return The journal, or null if no explosion is being recorded.
+     */
+    public static BlockJournal getExploding() {
+        return exploding;
+    }
+
+    private void release() {
+        size = 0;
+        positions = new long[16];
+        states = new int[16];
+        recorded = newTable(32);
+        palette.clear();
+        paletteIndex.clear();
+    }
+
+    /**
+     * Adds the position to the recorded set
+     *
+     * @param position Position to add
+     * @return True if it was added, false if it was already recorded.
+     */
+    private boolean add(long position) {
+        if ((size + 1) * 2 > recorded.length) rehash();
+        int mask = recorded.length - 1;
+        for (int i = mix(position) & mask; ; i = (i + 1) & mask) {
+            if (recorded[i] == position) return false;
+            if (recorded[i] == EMPTY) {
+                recorded[i] = position;
+                return true;
+            }
+        }
+    }
+
+    private void rehash() {
+        long[] old = recorded;
+        recorded = newTable(old.length * 2);
+        int mask = recorded.length - 1;
+        for (long position : old) {
+            if (position == EMPTY) continue;
+            int i = mix(position) & mask;
+            while (recorded[i] != EMPTY) i = (i + 1) & mask;
+            recorded[i] = position;
+        }
+    }
+
+    private static long[] newTable(int capacity) {
+        long[] table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int mix(long position) {
+        long h = position * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (y & 0xFFF);
+    }
+
+    public static int unpackX(long position) {
+        return (int) (position >> 38);
+    }
+
+    public static int unpackY(long position) {
+        return (int) (position << 52 >> 52);
+    }
+
+    public static int unpackZ(long position) {
+        return (int) (position << 26 >> 38);
+    }
+}
@@ -103,6 +103,10 @@ public class GameArena extends ArenaData {
      */
     private GameExtension extension = new GameExtension();
 
+    /**
+     * The journal of blocks changed in this arena since it was last regenerated
+     */
+    private BlockJournal blockJournal;
 
     /**
      * Creates a new spleef arena
@@ -147,6 +151,15 @@ public class GameArena extends ArenaData {
         return engine;
     }
 
+    /**
+     * Returns the journal of blocks changed in this arena since it was last regenerated
+     *
+     * @return The block journal
+     */
+    public BlockJournal getBlockJournal() {
+        return blockJournal;
+    }
+
     public FFAManager getFFAManager() {
         return ffaManager;
     }
@@ -209,6 +222,7 @@ public class GameArena extends ArenaData {
         stage = ArenaStage.WAITING;
         engine = new SimpleArenaEngine<>(this);
         gameTeams = new ArrayList<>();
+        blockJournal = new BlockJournal();
         ARENAS.get().put(getKey(), this);
         linkTeams();
     }
@@ -15,8 +15,8 @@
  */
 package io.github.spleefx.arena.spleef;
 
-import io.github.spleefx.SpleefX;
 import io.github.spleefx.arena.ArenaPlayer;
+import io.github.spleefx.arena.ArenaTickScheduler.TickPhase;
 import io.github.spleefx.arena.api.BaseArenaEngine;
 import io.github.spleefx.arena.api.GameTask;
 import io.github.spleefx.compatibility.CompatibilityHandler;
@@ -24,13 +24,11 @@ import io.github.spleefx.compatibility.material.MaterialCompatibility;
 import io.github.spleefx.util.Percentage;
 import io.github.spleefx.util.game.InventoryUtils;
 import io.github.spleefx.util.plugin.PluginSettings;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.scheduler.BukkitTask;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -45,8 +43,6 @@ public class SpleefEngine extends BaseArenaEngine<SpleefArena> {
 
     private static final Random RANDOM = new Random();
 
-    private BukkitTask meltingTask;
-
     private MeltingTask task;
 
     /**
@@ -63,8 +59,8 @@ public class SpleefEngine extends BaseArenaEngine<SpleefArena> {
     @Override
     public void loop() {
         super.loop();
-        meltingTask = Bukkit.getScheduler().runTaskTimer(SpleefX.getPlugin(), task = new MeltingTask(this),
-                ((Integer) PluginSettings.ARENA_MELTING_INTERVAL.get()).longValue(), ((Integer) PluginSettings.ARENA_MELTING_INTERVAL.get()).longValue());
+        int interval = PluginSettings.ARENA_MELTING_INTERVAL.get();
+        getScheduler().schedule(arena.getKey(), TickPhase.MELTING, task = new MeltingTask(this), interval, interval);
     }
 
     /**
@@ -119,6 +115,7 @@ public class SpleefEngine extends BaseArenaEngine<SpleefArena> {
                         continue; // Player is in a different location
                     Block b = pickBlock(getLowestBlock(player.getLocation()).getLocation(), PluginSettings.ARENA_MELTING_RADIUS.get());
                     if (b == null) continue; // No meltable block found
+                    engine.arena.getBlockJournal().record(b);
                     b.setType(Material.AIR);
                     if (EXTENSION.getSnowballSettings().removeSnowballsGraduallyOnMelting()) {
                         Percentage p = EXTENSION.getSnowballSettings().getRemovalChance();
@@ -189,8 +186,7 @@ public class SpleefEngine extends BaseArenaEngine<SpleefArena> {
         public void run() {
             if (engine.task != null)
                 engine.task.locations.clear();
-            if (engine.meltingTask != null)
-                engine.meltingTask.cancel();
+            engine.getScheduler().cancel(engine.arena.getKey(), TickPhase.MELTING);
         }
     }
 }
\ No newline at end of file
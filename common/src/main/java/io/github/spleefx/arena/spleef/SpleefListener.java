@@ -49,6 +49,7 @@ public class SpleefListener implements Listener {
         Block hitBlock = CompatibilityHandler.getHitBlock(player.getCurrentArena(), event);
         if (hitBlock == null) return;
         if (SpleefArena.EXTENSION.getSnowballSettings().getThrownSnowballsRemoveHitBlocks().contains(hitBlock.getType())) {
+            player.getCurrentArena().getBlockJournal().record(hitBlock);
             hitBlock.setType(Material.AIR);
         }
     }
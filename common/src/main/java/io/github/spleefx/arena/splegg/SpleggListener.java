@@ -100,9 +100,10 @@ public class SpleggListener implements Listener {
             Location loc = hitBlock.getLocation();
             if (arena.getEngine().getArenaStage() == ArenaStage.ACTIVE) {
                 ExplosionSettings explosionSettings = EXTENSION.getExplodeTNTWhenHit();
+                arena.getBlockJournal().record(hitBlock);
                 if (hitBlock.getType() == Material.TNT && explosionSettings != null && explosionSettings.isEnabled()) {
                     hitBlock.setType(Material.AIR);
-                    getProtocol().createExplosion(loc, explosionSettings);
+                    arena.getBlockJournal().recordExplosion(() -> getProtocol().createExplosion(loc, explosionSettings));
                 } else
                     hitBlock.setType(Material.AIR);
             } else
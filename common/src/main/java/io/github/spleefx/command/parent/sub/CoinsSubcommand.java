@@ -87,7 +87,6 @@ public class CoinsSubcommand extends PluginSubcommand {
                 break;
             case 2:
                 if (args[0].equalsIgnoreCase("reset")) {
-                    SpleefX.getPlugin().getDataProvider().getStatistics(target).onCoins(v -> 0);
                     run(sender, target, v -> 0, "&e%p%&a's coins have been set to &e0&a.");
                 } else {
                     Chat.plugin(sender, "&cInvalid command usage. Try &e" + getUsage(command) + "&c.");
@@ -125,7 +124,7 @@ public class CoinsSubcommand extends PluginSubcommand {
     }
 
     private void run(CommandSender sender, OfflinePlayer player, IntFunction<Integer> task, String feedback) {
-        int i = SpleefX.getPlugin().getDataProvider().getStatistics(player).onCoins(task);
+        int i = SpleefX.getPlugin().getCoinLedger().update(player, task::apply);
         Chat.plugin(sender, feedback.replace("%p%", player.getName()).replace("%v%", Integer.toString(i)));
     }
 
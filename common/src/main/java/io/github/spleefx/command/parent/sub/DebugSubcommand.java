@@ -5,6 +5,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import io.github.spleefx.SpleefX;
+import io.github.spleefx.arena.RegenerationQueue;
 import io.github.spleefx.arena.api.ArenaData;
 import io.github.spleefx.command.sub.PluginSubcommand;
 import io.github.spleefx.compatibility.CompatibilityHandler;
@@ -12,6 +13,7 @@ import io.github.spleefx.compatibility.chat.ChatComponent;
 import io.github.spleefx.compatibility.chat.ChatEvents.ClickEvent;
 import io.github.spleefx.compatibility.chat.ChatEvents.HoverEvent;
 import io.github.spleefx.compatibility.chat.ComponentJSON;
+import io.github.spleefx.compatibility.worldedit.SchematicManager;
 import io.github.spleefx.extension.ExtensionsManager;
 import io.github.spleefx.extension.GameExtension;
 import io.github.spleefx.util.PlaceholderUtil;
@@ -34,6 +36,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -67,6 +70,13 @@ public class DebugSubcommand extends PluginSubcommand {
             return true;
         }
         Chat.plugin(sender, "&eCreating a full dump report. Please wait.");
+        Map<String, Long> tickCosts = SpleefX.getPlugin().getArenaManager().getTickScheduler().getCosts();
+        Map<String, Double> regenerating = SchematicManager.getRegenerationPipeline().getProgress();
+        RegenerationQueue queue = SpleefX.getPlugin().getArenaManager().getRegenerationQueue();
+        Map<String, Double> queued = queue.getWaiting();
+        int queueRunning = queue.getRunning();
+        long queueDispatched = queue.getDispatched();
+        double averageWait = queue.getAverageWait(), maxWait = queue.getMaxWait();
         CompletableFuture<String> pasteURL = new CompletableFuture<>();
         AtomicLong elapsedMillis = new AtomicLong();
         POOL.submit(() -> {
@@ -108,6 +118,25 @@ public class DebugSubcommand extends PluginSubcommand {
                 extensions.add(extension.getKey(), ArenaData.GSON.toJsonTree(extension));
             }
 
+            // average tick cost of each arena, slowest first
+            JsonBuilder arenaCosts = new JsonBuilder();
+            tickCosts.forEach((arena, nanos) -> arenaCosts.map(arena, PlaceholderUtil.NUMBER_FORMAT.format(nanos / 1000D) + "us"));
+
+            // progress of running schematic pastes
+            JsonBuilder regeneration = new JsonBuilder();
+            regenerating.forEach((arena, progress) -> regeneration.map(arena, PlaceholderUtil.NUMBER_FORMAT.format(progress * 100) + "%"));
+
+            // regeneration queue metrics
+            JsonBuilder waiting = new JsonBuilder();
+            queued.forEach((arena, wait) -> waiting.map(arena, PlaceholderUtil.NUMBER_FORMAT.format(wait) + "ms"));
+            JsonBuilder regenerationQueue = new JsonBuilder()
+                    .map("Depth", queued.size())
+                    .map("Running", queueRunning)
+                    .map("Dispatched", queueDispatched)
+                    .map("Average wait", PlaceholderUtil.NUMBER_FORMAT.format(averageWait) + "ms")
+                    .map("Highest wait", PlaceholderUtil.NUMBER_FORMAT.format(maxWait) + "ms")
+                    .map("Waiting", waiting.buildJsonObject());
+
             // spectator settings
             JsonElement spectator = ArenaData.GSON.toJsonTree(SpleefX.getSpectatorSettings());
 
@@ -115,6 +144,9 @@ public class DebugSubcommand extends PluginSubcommand {
                     .map("Config", config.buildJsonObject())
                     .map("Extensions", extensions)
                     .map("Spectator settings", spectator)
+                    .map("Arena tick costs", arenaCosts.buildJsonObject())
+                    .map("Regenerating arenas", regeneration.buildJsonObject())
+                    .map("Regeneration queue", regenerationQueue.buildJsonObject())
                     .map("Plugin list", plugins);
             // create paste
             try {
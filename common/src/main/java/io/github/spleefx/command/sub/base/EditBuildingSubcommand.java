@@ -16,6 +16,7 @@
 package io.github.spleefx.command.sub.base;
 
 import com.sk89q.worldedit.EmptyClipboardException;
+import com.sk89q.worldedit.session.ClipboardHolder;
 import io.github.spleefx.SpleefX;
 import io.github.spleefx.arena.api.ArenaData;
 import io.github.spleefx.arena.api.GameArena;
@@ -73,10 +74,14 @@ public class EditBuildingSubcommand extends PluginSubcommand {
     public void rewrite(Player player, GameArena arena) {
         try {
             SchematicManager processor = SpleefX.newSchematicManager(arena.getKey());
-            processor.write(SpleefX.getPlugin().getWorldEdit().getSession(player).getClipboard());
+            ClipboardHolder clipboard = SpleefX.getPlugin().getWorldEdit().getSession(player).getClipboard();
+            processor.write(clipboard);
             Location old = CopyStore.LOCATIONS.get(player);
             if (old == null) throw new EmptyClipboardException();
             arena.setRegenerationPoint(old);
+            arena.getBlockJournal().invalidate();
+            SpleefX.getPlugin().getArenaManager().invalidateSnapshot(arena.getKey());
+            SpleefX.getPlugin().getArenaManager().writeSnapshotFile(arena, clipboard.getClipboard());
             Chat.prefix(player, arena, "&aSuccessfully overrided schematic building for arena &e" + arena.getKey() + "&a.");
         } catch (EmptyClipboardException e) {
             Chat.prefix(player, arena, "&cYou must select and copy the arena to your clipboard (with WorldEdit)!");
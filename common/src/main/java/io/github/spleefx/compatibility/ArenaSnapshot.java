@@ -0,0 +1,304 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.compatibility;
+
+import io.github.spleefx.compatibility.material.MaterialCompatibility;
+import io.github.spleefx.compatibility.worldedit.PasteJob;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory snapshot of the blocks inside an arena region, stored as chunk sections.
+ * <p>
+ * Each section keeps a palette of the distinct block states in it, and an index into that palette for
+ * every block. Indices take a single byte unless the section has more than 256 distinct states.
+ * <p>
+ * Sections are read and written through a {@link SectionAccess}, which version-specific NMS handlers
+ * implement by accessing chunk sections directly. Restoring only writes blocks that differ from the snapshot,
+ * and only inside the snapshot region.
+ * <p>
+ * Snapshots only hold block states, so regions which contain tile entities (such as chests and signs) cannot be
+ * captured, and are pasted instead.
+ */
+public class ArenaSnapshot {
+
+    /**
+     * The region bounds
+     */
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * All sections, mapped by their packed position
+     */
+    private final Map<Long, Section> sections = new HashMap<>();
+
+    private ArenaSnapshot(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * Captures the blocks inside the specified region
+     *
+     * @param world World to capture from
+     * @param minX  Minimum X of the region
+     * @param minY  Minimum Y of the region
+     * @param minZ  Minimum Z of the region
+     * @param maxX  Maximum X of the region
+     * @param maxY  Maximum Y of the region
+     * @param maxZ  Maximum Z of the region
+     * @return The captured snapshot, or null if the region contains tile entities
+     */
+    public static ArenaSnapshot capture(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++)
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++)
+                for (BlockState tile : world.getChunkAt(chunkX, chunkZ).getTileEntities())
+                    if (tile.getX() >= minX && tile.getX() <= maxX && tile.getY() >= minY && tile.getY() <= maxY && tile.getZ() >= minZ && tile.getZ() <= maxZ)
+                        return null;
+        ArenaSnapshot snapshot = new ArenaSnapshot(minX, Math.max(0, minY), minZ, maxX, Math.min(world.getMaxHeight() - 1, maxY), maxZ);
+        SectionAccess access = CompatibilityHandler.getProtocol().newSectionAccess(world);
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++)
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++)
+                for (int sectionY = snapshot.minY >> 4; sectionY <= snapshot.maxY >> 4; sectionY++) {
+                    access.open(chunkX, sectionY, chunkZ);
+                    Section section = new Section();
+                    for (int y = Math.max(snapshot.minY, sectionY << 4); y <= Math.min(snapshot.maxY, sectionY << 4 | 15); y++)
+                        for (int z = Math.max(minZ, chunkZ << 4); z <= Math.min(maxZ, chunkZ << 4 | 15); z++)
+                            for (int x = Math.max(minX, chunkX << 4); x <= Math.min(maxX, chunkX << 4 | 15); x++)
+                                section.set(index(x & 15, y & 15, z & 15), access.get(x & 15, y & 15, z & 15));
+                    section.trim();
+                    snapshot.sections.put(pack(chunkX, sectionY, chunkZ), section);
+                }
+        return snapshot;
+    }
+
+    /**
+     * Creates a job which restores the world to this snapshot. The job should be run through the
+     * {@link io.github.spleefx.compatibility.worldedit.RegenerationPipeline}.
+     *
+     * @param world World to restore in
+     * @return The restore job
+     */
+    public PasteJob restore(World world) {
+        return new RestoreJob(world);
+    }
+
+    /**
+     * Returns the estimated amount of memory (in bytes) this snapshot takes
+     *
+     * @return The estimated size
+     */
+    public long estimateSize() {
+        long size = 0;
+        for (Section section : sections.values())
+            size += (section.small != null ? section.small.length : section.large.length * 2L) + section.palette.size() * 8L;
+        return size;
+    }
+
+    private static int index(int x, int y, int z) {
+        return y << 8 | z << 4 | x;
+    }
+
+    private static long pack(int chunkX, int sectionY, int chunkZ) {
+        return ((long) chunkX & 0x3FFFFFF) << 38 | ((long) chunkZ & 0x3FFFFFF) << 12 | (sectionY & 0xFFF);
+    }
+
+    /**
+     * Provides access to the blocks of chunk sections. Coordinates are relative to the opened section.
+     */
+    public interface SectionAccess {
+
+        /**
+         * Opens the specified section. All following calls refer to this section, until it is closed by a flush.
+         * Opening another section of the same chunk column reuses the already loaded chunk.
+         *
+         * @param chunkX   X of the chunk
+         * @param sectionY Y index of the section
+         * @param chunkZ   Z of the chunk
+         */
+        void open(int chunkX, int sectionY, int chunkZ);
+
+        /**
+         * Returns the block state at the specified position
+         *
+         * @param x X inside the section
+         * @param y Y inside the section
+         * @param z Z inside the section
+         * @return The block state. States must be equal if and only if they represent the same block.
+         */
+        Object get(int x, int y, int z);
+
+        /**
+         * Sets the block state at the specified position, without applying physics
+         *
+         * @param x     X inside the section
+         * @param y     Y inside the section
+         * @param z     Z inside the section
+         * @param state State previously returned by {@link #get(int, int, int)}
+         */
+        void set(int x, int y, int z, Object state);
+
+        /**
+         * Parses a block state from its string form. On 1.13+ this is the block data string (such as
+         * {@code minecraft:oak_stairs[facing=east]}), and on older versions it is {@code id:data}.
+         *
+         * @param state String to parse
+         * @return The block state
+         */
+        Object parse(String state);
+
+        /**
+         * Applies all changes made since the last flush, such as marking the chunks for saving and
+         * resending them to players. A section has to be opened again afterwards.
+         */
+        void flush();
+
+    }
+
+    /**
+     * A section access which goes through the Bukkit API. Used when there is no NMS handler for the
+     * server version.
+     */
+    public static class BukkitSectionAccess implements SectionAccess {
+
+        private final World world;
+        private final MaterialCompatibility compatibility = CompatibilityHandler.getMaterialCompatibility();
+        private int baseX, baseY, baseZ;
+
+        public BukkitSectionAccess(World world) {
+            this.world = world;
+        }
+
+        @Override
+        public void open(int chunkX, int sectionY, int chunkZ) {
+            baseX = chunkX << 4;
+            baseY = sectionY << 4;
+            baseZ = chunkZ << 4;
+        }
+
+        @Override
+        public Object get(int x, int y, int z) {
+            return compatibility.captureBlock(world.getBlockAt(baseX + x, baseY + y, baseZ + z));
+        }
+
+        @Override
+        public void set(int x, int y, int z, Object state) {
+            compatibility.restoreBlock(world.getBlockAt(baseX + x, baseY + y, baseZ + z), state);
+        }
+
+        @Override
+        public Object parse(String state) {
+            return compatibility.parseBlock(state);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+
+    /**
+     * Represents a single captured chunk section
+     */
+    private static class Section {
+
+        /**
+         * All distinct states in this section
+         */
+        private final ArrayList<Object> palette = new ArrayList<>();
+
+        /**
+         * The palette index of each state. Only used while capturing.
+         */
+        private Map<Object, Integer> paletteIndex = new HashMap<>();
+
+        /**
+         * The palette indices of the blocks, used while the palette has at most 256 states
+         */
+        private byte[] small = new byte[4096];
+
+        /**
+         * The palette indices of the blocks, used once the palette has more than 256 states
+         */
+        private char[] large;
+
+        void set(int index, Object state) {
+            Integer id = paletteIndex.get(state);
+            if (id == null) {
+                paletteIndex.put(state, id = palette.size());
+                palette.add(state);
+                if (id == 256) { // no longer fits in a byte
+                    large = new char[4096];
+                    for (int i = 0; i < small.length; i++)
+                        large[i] = (char) (small[i] & 0xFF);
+                    small = null;
+                }
+            }
+            if (small != null) small[index] = (byte) (int) id;
+            else large[index] = (char) (int) id;
+        }
+
+        Object get(int index) {
+            return palette.get(small != null ? small[index] & 0xFF : large[index]);
+        }
+
+        void trim() {
+            paletteIndex = null;
+            palette.trimToSize();
+        }
+    }
+
+    /**
+     * Restores the snapshot one chunk column at a time
+     */
+    private class RestoreJob extends PasteJob {
+
+        private final SectionAccess access;
+        private long current = Long.MIN_VALUE;
+        private Section section;
+
+        RestoreJob(World world) {
+            super(minX, minY, minZ, maxX, maxY, maxZ);
+            access = CompatibilityHandler.getProtocol().newSectionAccess(world);
+        }
+
+        @Override
+        protected void place(int x, int y, int z) {
+            long key = pack(x >> 4, y >> 4, z >> 4);
+            if (key != current) {
+                current = key;
+                section = sections.get(key);
+                access.open(x >> 4, y >> 4, z >> 4);
+            }
+            Object state = section.get(index(x & 15, y & 15, z & 15));
+            if (!state.equals(access.get(x & 15, y & 15, z & 15)))
+                access.set(x & 15, y & 15, z & 15, state);
+        }
+
+        @Override
+        protected void flush() {
+            access.flush();
+            current = Long.MIN_VALUE;
+        }
+    }
+}
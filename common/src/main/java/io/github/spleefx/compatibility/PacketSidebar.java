@@ -0,0 +1,88 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.compatibility;
+
+/**
+ * A sidebar which is sent to a single player as objective, score and team packets, without creating any
+ * scoreboard on the server.
+ * <p>
+ * Every line is displayed by a team named after the line identifier, which contains the identifier as its only
+ * entry. The line text is displayed in the team prefix and suffix, which must already be split to fit the
+ * protocol limits.
+ * <p>
+ * Instances are created by {@link ProtocolNMS#newPacketSidebar(org.bukkit.entity.Player)}, and must only be used
+ * from the main thread.
+ */
+public interface PacketSidebar {
+
+    /**
+     * The name of the sidebar objective
+     */
+    String OBJECTIVE = "SpleefX";
+
+    /**
+     * Creates the objective and displays it in the sidebar
+     *
+     * @param title Title of the sidebar
+     */
+    void create(String title);
+
+    /**
+     * Updates the title of the sidebar
+     *
+     * @param title New title
+     */
+    void setTitle(String title);
+
+    /**
+     * Creates the team of the specified line
+     *
+     * @param identifier Identifier of the line
+     * @param prefix     Prefix of the line
+     * @param suffix     Suffix of the line
+     */
+    void createLine(String identifier, String prefix, String suffix);
+
+    /**
+     * Updates the prefix and suffix of the specified line
+     *
+     * @param identifier Identifier of the line
+     * @param prefix     New prefix
+     * @param suffix     New suffix
+     */
+    void updateLine(String identifier, String prefix, String suffix);
+
+    /**
+     * Sets the score (position) of the specified line
+     *
+     * @param identifier Identifier of the line
+     * @param score      The score
+     */
+    void setScore(String identifier, int score);
+
+    /**
+     * Removes the score and the team of the specified line
+     *
+     * @param identifier Identifier of the line
+     */
+    void removeLine(String identifier);
+
+    /**
+     * Removes the objective from the player
+     */
+    void destroy();
+
+}
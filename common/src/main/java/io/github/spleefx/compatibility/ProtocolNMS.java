@@ -24,6 +24,7 @@ import io.github.spleefx.compatibility.chat.ComponentJSON;
 import io.github.spleefx.compatibility.reflect.ReflectiveProtocolNMS;
 import io.github.spleefx.util.game.ExplosionSettings;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.moltenjson.json.JsonBuilder;
@@ -106,6 +107,27 @@ public interface ProtocolNMS {
         return d0 * d0 + d1 * d1 + d2 * d2;
     }
 
+    /**
+     * Creates a new accessor for the chunk sections of the specified world, used to capture and restore
+     * {@link ArenaSnapshot}s. The default implementation goes through the Bukkit API.
+     *
+     * @param world World to access
+     * @return The section accessor
+     */
+    default ArenaSnapshot.SectionAccess newSectionAccess(World world) {
+        return new ArenaSnapshot.BukkitSectionAccess(world);
+    }
+
+    /**
+     * Creates a new sidebar which is sent to the specified player directly as packets
+     *
+     * @param player Player to display for
+     * @return The sidebar, or null if packet sidebars are not supported in this version
+     */
+    default PacketSidebar newPacketSidebar(Player player) {
+        return null;
+    }
+
     default void hidePlayer(Player toHide, Player target) {
         toHide.hidePlayer(SpleefX.getPlugin(), target);
     }
@@ -0,0 +1,334 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.compatibility;
+
+import io.github.spleefx.compatibility.ArenaSnapshot.SectionAccess;
+import io.github.spleefx.compatibility.worldedit.PasteJob;
+import org.bukkit.World;
+import org.moltenjson.json.JsonFile;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A SpleefX-native arena snapshot file, which is read through a memory mapping so restoring an arena streams
+ * its blocks straight from the file without decoding a whole schematic first.
+ * <p>
+ * The file consists of:
+ * <ul>
+ *     <li>A header: the magic number, the format version and the region bounds</li>
+ *     <li>The palette: every distinct block state, as a string understood by {@link SectionAccess#parse(String)}</li>
+ *     <li>The sections: the position of every 16x16x16 section, followed by its palette indices, run-length encoded
+ *     as pairs of varints (run length, palette index) in YZX order</li>
+ * </ul>
+ * Sections are decoded one chunk column at a time while restoring.
+ */
+public class SnapshotFile {
+
+    /**
+     * The file magic number, "SXSN"
+     */
+    private static final int MAGIC = 0x5358534E;
+
+    /**
+     * The current format version
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * The mapped file content
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The region bounds
+     */
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * The palette, as stored in the file
+     */
+    private final String[] palette;
+
+    /**
+     * The offset of every section's encoded indices, mapped by the packed section position
+     */
+    private final Map<Long, Integer> sections = new HashMap<>();
+
+    /**
+     * The palette resolved to block states. Lazily initialized on the first restore.
+     */
+    private Object[] states;
+
+    private SnapshotFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a snapshot file");
+        byte version = buffer.get();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version: " + version);
+        minX = buffer.getInt();
+        minY = buffer.getInt();
+        minZ = buffer.getInt();
+        maxX = buffer.getInt();
+        maxY = buffer.getInt();
+        maxZ = buffer.getInt();
+        palette = new String[readVarInt(buffer)];
+        for (int i = 0; i < palette.length; i++) {
+            byte[] bytes = new byte[readVarInt(buffer)];
+            buffer.get(bytes);
+            palette[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        for (int count = readVarInt(buffer); count > 0; count--) {
+            int chunkX = decodeZigZag(readVarInt(buffer));
+            int sectionY = readVarInt(buffer);
+            int chunkZ = decodeZigZag(readVarInt(buffer));
+            int length = readVarInt(buffer);
+            sections.put(pack(chunkX, sectionY, chunkZ), buffer.position());
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    /**
+     * Opens the specified snapshot file
+     *
+     * @param file File to open
+     * @return The snapshot file
+     * @throws IOException If the file cannot be read or is not a valid snapshot
+     */
+    public static SnapshotFile open(File file) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return new SnapshotFile(buffer);
+        } catch (RuntimeException e) { // malformed content
+            throw new IOException("Malformed snapshot file " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Writes a snapshot file of the specified region. The file is replaced atomically (see
+     * {@link JsonFile#writeAtomically(File, byte[], boolean)}), so it always holds either the old or the new snapshot.
+     *
+     * @param file   File to write to
+     * @param minX   Minimum X of the region
+     * @param minY   Minimum Y of the region
+     * @param minZ   Minimum Z of the region
+     * @param maxX   Maximum X of the region
+     * @param maxY   Maximum Y of the region
+     * @param maxZ   Maximum Z of the region
+     * @param source Source of the blocks
+     * @throws TileEntityException If the region contains tile entities, which snapshot files cannot restore
+     * @throws IOException         If the file cannot be written
+     */
+    public static void write(File file, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockSource source) throws IOException {
+        minY = Math.max(0, minY);
+        maxY = Math.min(255, maxY);
+        Map<String, Integer> paletteIndex = new HashMap<>();
+        ByteArrayOutputStream sectionData = new ByteArrayOutputStream();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        int sectionCount = 0;
+        int[] indices = new int[4096];
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++)
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++)
+                for (int sectionY = minY >> 4; sectionY <= maxY >> 4; sectionY++) {
+                    Arrays.fill(indices, 0);
+                    for (int y = Math.max(minY, sectionY << 4); y <= Math.min(maxY, sectionY << 4 | 15); y++)
+                        for (int z = Math.max(minZ, chunkZ << 4); z <= Math.min(maxZ, chunkZ << 4 | 15); z++)
+                            for (int x = Math.max(minX, chunkX << 4); x <= Math.min(maxX, chunkX << 4 | 15); x++) {
+                                String state = source.get(x, y, z);
+                                if (state == null) throw new TileEntityException(x, y, z);
+                                Integer id = paletteIndex.get(state);
+                                if (id == null) paletteIndex.put(state, id = paletteIndex.size());
+                                indices[(y & 15) << 8 | (z & 15) << 4 | (x & 15)] = id;
+                            }
+                    payload.reset();
+                    for (int i = 0; i < indices.length; ) {
+                        int run = 1;
+                        while (i + run < indices.length && indices[i + run] == indices[i]) run++;
+                        writeVarInt(payload, run);
+                        writeVarInt(payload, indices[i]);
+                        i += run;
+                    }
+                    writeVarInt(sectionData, encodeZigZag(chunkX));
+                    writeVarInt(sectionData, sectionY);
+                    writeVarInt(sectionData, encodeZigZag(chunkZ));
+                    writeVarInt(sectionData, payload.size());
+                    payload.writeTo(sectionData);
+                    sectionCount++;
+                }
+        String[] palette = new String[paletteIndex.size()];
+        paletteIndex.forEach((state, id) -> palette[id] = state);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + sectionData.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(minX);
+        out.writeInt(minY);
+        out.writeInt(minZ);
+        out.writeInt(maxX);
+        out.writeInt(maxY);
+        out.writeInt(maxZ);
+        writeVarInt(out, palette.length);
+        for (String state : palette) {
+            byte[] stateBytes = state.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, stateBytes.length);
+            out.write(stateBytes);
+        }
+        writeVarInt(out, sectionCount);
+        sectionData.writeTo(out);
+        JsonFile.writeAtomically(file, bytes.toByteArray(), true);
+    }
+
+    /**
+     * Creates a job which restores the world to this snapshot. The job should be run through the
+     * {@link io.github.spleefx.compatibility.worldedit.RegenerationPipeline}.
+     *
+     * @param world World to restore in
+     * @return The restore job
+     */
+    public PasteJob restore(World world) {
+        return new RestoreJob(world);
+    }
+
+    private static long pack(int chunkX, int sectionY, int chunkZ) {
+        return ((long) chunkX & 0x3FFFFFF) << 38 | ((long) chunkZ & 0x3FFFFFF) << 12 | (sectionY & 0xFFF);
+    }
+
+    private static int encodeZigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int decodeZigZag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    /**
+     * Provides the blocks of a region to write into a snapshot file
+     */
+    public interface BlockSource {
+
+        /**
+         * Returns the block state at the specified position
+         *
+         * @param x X of the block
+         * @param y Y of the block
+         * @param z Z of the block
+         * @return The block state, as a string understood by {@link SectionAccess#parse(String)}, or null if
+         * the block is a tile entity
+         */
+        String get(int x, int y, int z);
+
+    }
+
+    /**
+     * Thrown when a region cannot be written into a snapshot file because it contains tile entities (such as
+     * chests and signs), whose data snapshot files do not store. Such regions should be pasted instead.
+     */
+    public static class TileEntityException extends IOException {
+
+        public TileEntityException(int x, int y, int z) {
+            super("Tile entity at " + x + ", " + y + ", " + z + " cannot be stored in a snapshot file");
+        }
+    }
+
+    /**
+     * Restores the snapshot one chunk column at a time, decoding the sections of each column as it goes
+     */
+    private class RestoreJob extends PasteJob {
+
+        private final SectionAccess access;
+        private final ByteBuffer reader = buffer.duplicate();
+
+        /**
+         * The decoded sections of the current chunk column, indexed by the section Y
+         */
+        private final char[][] column = new char[16][];
+        private int columnX = Integer.MIN_VALUE, columnZ = Integer.MIN_VALUE, openSection = -1;
+
+        RestoreJob(World world) {
+            super(minX, minY, minZ, maxX, maxY, maxZ);
+            access = CompatibilityHandler.getProtocol().newSectionAccess(world);
+            if (states == null) {
+                Object[] resolved = new Object[palette.length];
+                for (int i = 0; i < palette.length; i++)
+                    resolved[i] = access.parse(palette[i]);
+                states = resolved;
+            }
+        }
+
+        @Override
+        protected void place(int x, int y, int z) {
+            int chunkX = x >> 4, sectionY = y >> 4, chunkZ = z >> 4;
+            if (chunkX != columnX || chunkZ != columnZ) {
+                columnX = chunkX;
+                columnZ = chunkZ;
+                openSection = -1;
+                for (int s = minY >> 4; s <= maxY >> 4; s++)
+                    column[s] = decode(chunkX, s, chunkZ);
+            }
+            if (sectionY != openSection) {
+                openSection = sectionY;
+                access.open(chunkX, sectionY, chunkZ);
+            }
+            Object state = states[column[sectionY][(y & 15) << 8 | (z & 15) << 4 | (x & 15)]];
+            if (!state.equals(access.get(x & 15, y & 15, z & 15)))
+                access.set(x & 15, y & 15, z & 15, state);
+        }
+
+        @Override
+        protected void flush() {
+            access.flush();
+            openSection = -1;
+        }
+
+        private char[] decode(int chunkX, int sectionY, int chunkZ) {
+            Integer offset = sections.get(pack(chunkX, sectionY, chunkZ));
+            if (offset == null) throw new IllegalStateException("Snapshot is missing section " + chunkX + ", " + sectionY + ", " + chunkZ);
+            char[] indices = column[sectionY] == null ? new char[4096] : column[sectionY];
+            reader.position(offset);
+            for (int i = 0; i < indices.length; ) {
+                int run = readVarInt(reader);
+                char id = (char) readVarInt(reader);
+                for (int end = Math.min(indices.length, i + run); i < end; i++)
+                    indices[i] = id;
+            }
+            return indices;
+        }
+    }
+}
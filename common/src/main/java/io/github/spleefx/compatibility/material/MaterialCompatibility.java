@@ -18,6 +18,7 @@ package io.github.spleefx.compatibility.material;
 import org.bukkit.DyeColor;
 import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.block.Block;
 import org.bukkit.entity.Projectile;
 import org.bukkit.inventory.ItemStack;
 
@@ -90,6 +91,34 @@ public interface MaterialCompatibility {
      */
     String mapMaterial(String original);
 
+    /**
+     * Captures the type and data of the specified block, to be restored later with {@link #restoreBlock(Block, Object)}.
+     * <p>
+     * Captured values implement {@link Object#equals(Object)} and {@link Object#hashCode()}, so equal block
+     * states can be shared.
+     *
+     * @param block Block to capture
+     * @return The captured state
+     */
+    Object captureBlock(Block block);
+
+    /**
+     * Restores the type and data of the specified block without applying physics
+     *
+     * @param block Block to restore
+     * @param state State previously captured with {@link #captureBlock(Block)}
+     */
+    void restoreBlock(Block block, Object state);
+
+    /**
+     * Parses a block state from its string form, as used by arena snapshot files. On 1.13+ this is the
+     * block data string, and on older versions it is {@code id:data}.
+     *
+     * @param state String to parse
+     * @return The parsed state, which can be passed to {@link #restoreBlock(Block, Object)}
+     */
+    Object parseBlock(String state);
+
     /**
      * Returns the material assigned to the key
      *
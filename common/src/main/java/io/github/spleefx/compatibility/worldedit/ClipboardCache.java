@@ -0,0 +1,140 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.compatibility.worldedit;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import io.github.spleefx.util.plugin.PluginSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of decoded schematic clipboards, so that regenerating an arena does not have to read
+ * and decode its schematic every time.
+ * <p>
+ * Entries are keyed by the schematic name (which is the arena key), and are only valid as long as the file's
+ * modification time and length are unchanged. When the estimated size of all entries goes over the
+ * configured cap, the least recently used clipboards are evicted.
+ * <p>
+ * This class is thread-safe, as FastAsyncWorldEdit pastes schematics asynchronously.
+ */
+public class ClipboardCache {
+
+    /**
+     * All cached clipboards, in access order
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The estimated size (in bytes) of all cached clipboards
+     */
+    private long size;
+
+    /**
+     * Returns the clipboard of the specified schematic, reading it if it is not cached or if the file has changed
+     *
+     * @param manager Schematic manager to read with
+     * @return The clipboard, or null if the schematic is empty or cannot be recognized.
+     * @throws IOException If the schematic cannot be read
+     */
+    Clipboard get(SchematicManager manager) throws IOException {
+        File file = manager.schematic;
+        String key = SchematicManager.getBaseName(file);
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length)
+                return entry.clipboard;
+        }
+        Clipboard clipboard = manager.read(); // read outside the lock, as large schematics can take a while to decode
+        if (clipboard == null) return null;
+        long cap = ((Number) PluginSettings.ARENA_CLIPBOARD_CACHE_SIZE.get()).longValue() * 1024 * 1024;
+        long weight = manager.estimateSize(clipboard);
+        synchronized (this) {
+            remove(key);
+            if (weight > cap) return clipboard; // would not fit anyway
+            entries.put(key, new Entry(clipboard, lastModified, length, weight));
+            size += weight;
+            for (Iterator<Entry> iterator = entries.values().iterator(); size > cap && iterator.hasNext(); ) {
+                size -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+        return clipboard;
+    }
+
+    /**
+     * Removes the clipboard of the specified schematic from the cache
+     *
+     * @param key Name of the schematic
+     */
+    public synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    /**
+     * Removes all cached clipboards
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the amount of cached clipboards
+     *
+     * @return The amount of cached clipboards
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated size (in bytes) of all cached clipboards
+     *
+     * @return The estimated size
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) size -= entry.size;
+    }
+
+    /**
+     * Represents a cached clipboard
+     */
+    private static class Entry {
+
+        private final Clipboard clipboard;
+        private final long lastModified;
+        private final long length;
+        private final long size;
+
+        Entry(Clipboard clipboard, long lastModified, long length, long size) {
+            this.clipboard = clipboard;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.size = size;
+        }
+    }
+}
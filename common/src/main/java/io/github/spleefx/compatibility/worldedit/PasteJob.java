@@ -0,0 +1,143 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.compatibility.worldedit;
+
+/**
+ * An incremental paste of a schematic, which places the blocks of the clipboard region one chunk column
+ * at a time, so that it can be split over many ticks.
+ * <p>
+ * Implementations only need to place a single block and to flush their changes.
+ */
+public abstract class PasteJob {
+
+    /**
+     * The amount of blocks placed between each deadline check
+     */
+    private static final int CHECK_INTERVAL = 64;
+
+    /**
+     * The region bounds, in clipboard coordinates
+     */
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * The total amount of blocks in the region
+     */
+    private final long volume;
+
+    /**
+     * The amount of blocks placed so far
+     */
+    private long placed;
+
+    /**
+     * The cursor, pointing at the next block to place
+     */
+    private int chunkX, chunkZ, x, y, z;
+
+    /**
+     * Creates a new paste job over the specified region
+     *
+     * @param minX Minimum X of the region
+     * @param minY Minimum Y of the region
+     * @param minZ Minimum Z of the region
+     * @param maxX Maximum X of the region
+     * @param maxY Maximum Y of the region
+     * @param maxZ Maximum Z of the region
+     */
+    protected PasteJob(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        chunkX = minX >> 4;
+        chunkZ = minZ >> 4;
+        enterChunk();
+    }
+
+    /**
+     * Places blocks until the deadline is reached or the job is done
+     *
+     * @param deadline The {@link System#nanoTime()} at which to stop
+     * @return True if the job is done, false if there are blocks left
+     */
+    public boolean step(long deadline) {
+        try {
+            while (placed < volume) {
+                for (int i = 0; i < CHECK_INTERVAL && placed < volume; i++) {
+                    place(x, y, z);
+                    placed++;
+                    advance();
+                }
+                if (System.nanoTime() >= deadline) break;
+            }
+        } finally {
+            flush();
+        }
+        return placed >= volume;
+    }
+
+    /**
+     * Returns the completion of this job
+     *
+     * @return The completion, between 0 and 1
+     */
+    public double getProgress() {
+        return volume == 0 ? 1 : (double) placed / volume;
+    }
+
+    /**
+     * Places a single block of the clipboard
+     *
+     * @param x X of the block in the clipboard
+     * @param y Y of the block in the clipboard
+     * @param z Z of the block in the clipboard
+     */
+    protected abstract void place(int x, int y, int z);
+
+    /**
+     * Applies all the blocks placed since the last flush to the world
+     */
+    protected abstract void flush();
+
+    /**
+     * Releases any resources held by this job. Invoked once, when the job is done, has failed or has been replaced.
+     */
+    protected void close() {
+    }
+
+    private void advance() {
+        if (++y <= maxY) return;
+        y = minY;
+        if (++z <= Math.min(maxZ, chunkZ << 4 | 15)) return;
+        z = Math.max(minZ, chunkZ << 4);
+        if (++x <= Math.min(maxX, chunkX << 4 | 15)) return;
+        if (++chunkZ > maxZ >> 4) {
+            chunkZ = minZ >> 4;
+            chunkX++;
+        }
+        enterChunk();
+    }
+
+    private void enterChunk() {
+        x = Math.max(minX, chunkX << 4);
+        z = Math.max(minZ, chunkZ << 4);
+        y = minY;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.compatibility.worldedit;
+
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Runs schematic pastes incrementally on the main thread, under a per-tick time budget.
+ * <p>
+ * The budget is shared between all running pastes: each tick, every paste gets an equal slice of whatever is
+ * left of the budget, and time left unused by one paste is handed to the ones after it. The paste which goes
+ * first is rotated every tick.
+ * <p>
+ * A paste whose future is completed from outside (for example when its regeneration times out) is cancelled
+ * before its next step.
+ * <p>
+ * This class is only accessed from the main thread.
+ */
+public class RegenerationPipeline implements Runnable {
+
+    /**
+     * All running pastes, mapped by the schematic name
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * The index of the paste which goes first in the next tick
+     */
+    private int cursor;
+
+    /**
+     * The backing task
+     */
+    private BukkitTask task;
+
+    /**
+     * Starts the pipeline
+     *
+     * @param plugin Plugin to run under
+     */
+    public void start(Plugin plugin) {
+        if (task != null) task.cancel();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1, 1);
+    }
+
+    /**
+     * Submits a paste. If the same schematic is already being pasted, the running paste is replaced
+     * and both futures complete when the new one is done.
+     *
+     * @param key Name of the schematic
+     * @param job Paste to run
+     * @return A future which completes when the paste is done
+     */
+    public CompletableFuture<Void> submit(String key, PasteJob job) {
+        Entry entry = new Entry(job);
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            previous.job.close();
+            entry.future.whenComplete((v, e) -> {
+                if (e == null) previous.future.complete(null);
+                else previous.future.completeExceptionally(e);
+            });
+        }
+        entries.put(key, entry);
+        return entry.future;
+    }
+
+    /**
+     * Returns the progress of the paste of the specified schematic
+     *
+     * @param key Name of the schematic
+     * @return The progress between 0 and 1, or -1 if it is not being pasted.
+     */
+    public double getProgress(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? -1 : entry.job.getProgress();
+    }
+
+    /**
+     * Returns the progress of all running pastes
+     *
+     * @return The progress of each paste, mapped by the schematic name
+     */
+    public Map<String, Double> getProgress() {
+        Map<String, Double> progress = new LinkedHashMap<>();
+        entries.forEach((key, entry) -> progress.put(key, entry.job.getProgress()));
+        return progress;
+    }
+
+    /**
+     * Completes all running pastes immediately, regardless of the budget, including the ones submitted while
+     * finishing. Used when the server stops.
+     */
+    public void finishAll() {
+        while (!entries.isEmpty())
+            for (Map.Entry<String, Entry> entry : new ArrayList<>(entries.entrySet()))
+                step(entry.getKey(), entry.getValue(), Long.MAX_VALUE);
+    }
+
+    @Override
+    public void run() {
+        if (entries.isEmpty()) return;
+        long budget = (long) (((Number) PluginSettings.ARENA_REGENERATION_BUDGET.get()).doubleValue() * TimeUnit.MILLISECONDS.toNanos(1));
+        List<Map.Entry<String, Entry>> running = new ArrayList<>(entries.entrySet());
+        int count = running.size();
+        cursor %= count;
+        long end = System.nanoTime() + budget;
+        for (int k = 0; k < count; k++) {
+            Map.Entry<String, Entry> entry = running.get((cursor + k) % count);
+            long now = System.nanoTime();
+            long slice = Math.max(0, end - now) / (count - k); // every paste makes some progress, even over budget
+            step(entry.getKey(), entry.getValue(), now + slice);
+        }
+        cursor++;
+    }
+
+    private void step(String key, Entry entry, long deadline) {
+        if (entries.get(key) != entry) return; // replaced by an earlier paste in this tick
+        if (entry.future.isDone()) { // cancelled
+            entries.remove(key, entry);
+            entry.job.close();
+            return;
+        }
+        try {
+            if (!entry.job.step(deadline)) return;
+            entries.remove(key, entry);
+            entry.job.close();
+            entry.future.complete(null);
+        } catch (Throwable t) {
+            SpleefX.logger().log(Level.SEVERE, "Failed to paste schematic " + key, t);
+            entries.remove(key, entry);
+            entry.job.close();
+            entry.future.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * Represents a running paste
+     */
+    private static class Entry {
+
+        private final PasteJob job;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Entry(PasteJob job) {
+            this.job = job;
+        }
+    }
+}
@@ -17,7 +17,11 @@ package io.github.spleefx.compatibility.worldedit;
 
 import com.google.common.base.Preconditions;
 import com.sk89q.worldedit.bukkit.WorldEditPlugin;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.session.ClipboardHolder;
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.compatibility.ArenaSnapshot;
+import io.github.spleefx.compatibility.SnapshotFile;
 import io.github.spleefx.compatibility.CompatibilityHandler;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -26,6 +30,7 @@ import org.bukkit.World;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -46,6 +51,16 @@ public abstract class SchematicManager {
      */
     private static final SchematicManager FACTORY;
 
+    /**
+     * The cache of decoded schematic clipboards
+     */
+    private static final ClipboardCache CLIPBOARDS = new ClipboardCache();
+
+    /**
+     * The pipeline which runs incremental pastes
+     */
+    private static final RegenerationPipeline PIPELINE = new RegenerationPipeline();
+
     /**
      * Represents the schematic file
      */
@@ -87,6 +102,98 @@ public abstract class SchematicManager {
      */
     public abstract void write(ClipboardHolder clipboard);
 
+    /**
+     * Reads and decodes the schematic file. Implementations should not cache the result, as this is
+     * handled by {@link #getClipboard()}.
+     *
+     * @return The clipboard of the schematic, or null if the file is empty or has an unknown format.
+     * @throws IOException If the file cannot be read
+     */
+    protected abstract Clipboard read() throws IOException;
+
+    /**
+     * Returns the estimated amount of memory (in bytes) the specified clipboard takes
+     *
+     * @param clipboard Clipboard to estimate
+     * @return The estimated size
+     */
+    protected abstract long estimateSize(Clipboard clipboard);
+
+    /**
+     * Returns the region the specified clipboard occupies when pasted at the specified location
+     *
+     * @param clipboard Clipboard to paste
+     * @param location  Location to paste in
+     * @return The region bounds, as {minX, minY, minZ, maxX, maxY, maxZ}
+     */
+    protected abstract int[] getPasteRegion(Clipboard clipboard, Location location);
+
+    /**
+     * Returns a source of the blocks of the specified clipboard when pasted at the specified location,
+     * used to convert it into a {@link SnapshotFile}
+     *
+     * @param clipboard Clipboard to read from
+     * @param location  Location the clipboard is pasted in
+     * @return The block source, which accepts world coordinates
+     */
+    protected abstract SnapshotFile.BlockSource getBlockSource(Clipboard clipboard, Location location);
+
+    /**
+     * Converts the specified clipboard into a snapshot file, as it would be when pasted at the specified location
+     *
+     * @param clipboard Clipboard to convert
+     * @param location  Location the clipboard is pasted in
+     * @param file      File to write to
+     * @throws SnapshotFile.TileEntityException If the clipboard contains tile entities
+     * @throws IOException                      If the file cannot be written
+     */
+    public void writeSnapshot(Clipboard clipboard, Location location, File file) throws IOException {
+        int[] region = getPasteRegion(clipboard, location);
+        SnapshotFile.write(file, region[0], region[1], region[2], region[3], region[4], region[5], getBlockSource(clipboard, location));
+    }
+
+    /**
+     * Converts the schematic into a snapshot file
+     *
+     * @param location Location the schematic is pasted in
+     * @param file     File to write to
+     * @throws NoSchematicException If the schematic does not exist or cannot be read
+     * @throws IOException          If the file cannot be written
+     */
+    public void writeSnapshot(Location location, File file) throws NoSchematicException, IOException {
+        writeSnapshot(getClipboard(), location, file);
+    }
+
+    /**
+     * Captures the blocks in the region of the schematic when pasted at the specified location
+     *
+     * @param location Location the schematic is pasted in
+     * @return The captured snapshot, or null if the region contains tile entities
+     * @throws NoSchematicException If the schematic does not exist or cannot be read
+     */
+    public ArenaSnapshot snapshot(Location location) throws NoSchematicException {
+        int[] region = getPasteRegion(getClipboard(), location);
+        return ArenaSnapshot.capture(location.getWorld(), region[0], region[1], region[2], region[3], region[4], region[5]);
+    }
+
+    /**
+     * Returns the clipboard of the schematic, from the cache if it is unchanged since it was last read
+     *
+     * @return The clipboard of the schematic
+     * @throws NoSchematicException If the schematic does not exist or cannot be read
+     */
+    public Clipboard getClipboard() throws NoSchematicException {
+        Clipboard clipboard;
+        try {
+            clipboard = CLIPBOARDS.get(this);
+        } catch (IOException e) {
+            e.printStackTrace();
+            clipboard = null;
+        }
+        if (clipboard == null) throw new NoSchematicException(getBaseName(schematic));
+        return clipboard;
+    }
+
     /**
      * Pastes the specified clipboard at the specified location
      *
@@ -115,6 +222,43 @@ public abstract class SchematicManager {
         return FACTORY.newInstance(plugin, name, directory);
     }
 
+    /**
+     * Reads the schematics of all the specified arenas into the clipboard cache. This should be invoked
+     * asynchronously.
+     *
+     * @param plugin    WorldEdit plugin instance
+     * @param keys      Keys of the arenas
+     * @param directory Directory that contains the schematics
+     */
+    public static void warm(WorldEditPlugin plugin, Collection<String> keys, File directory) {
+        for (String key : keys) {
+            if (new File(directory, key + ".schem").length() == 0) continue; // no building set yet
+            try {
+                newSchematicManager(plugin, key, directory).getClipboard();
+            } catch (NoSchematicException e) {
+                SpleefX.logger().warning("Cannot preload the schematic of arena " + key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the cache of decoded schematic clipboards
+     *
+     * @return The clipboard cache
+     */
+    public static ClipboardCache getClipboardCache() {
+        return CLIPBOARDS;
+    }
+
+    /**
+     * Returns the pipeline which runs incremental pastes on the main thread
+     *
+     * @return The regeneration pipeline
+     */
+    public static RegenerationPipeline getRegenerationPipeline() {
+        return PIPELINE;
+    }
+
     public static Location getOrigin(World world, ClipboardHolder clipboardHolder) {
         return FACTORY.convertVector(world.getName(), clipboardHolder);
     }
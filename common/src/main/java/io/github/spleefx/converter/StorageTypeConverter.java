@@ -15,15 +15,82 @@
  */
 package io.github.spleefx.converter;
 
+import com.google.common.base.Stopwatch;
+import com.google.common.io.CountingInputStream;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import io.github.spleefx.SpleefX;
 import io.github.spleefx.arena.api.ArenaData;
 import io.github.spleefx.data.DataProvider;
 import io.github.spleefx.data.GameStats;
-import io.github.spleefx.data.provider.UnitedFileProvider;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.moltenjson.json.JsonFile;
 
-public class StorageTypeConverter implements Runnable {
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Converts the united statistics file into the specified data provider.
+ * <p>
+ * The file is streamed, so only a batch of players is in memory at a time. Every batch is written to the provider
+ * in parallel, and the amount of converted and failed players is recorded in a progress file after each batch,
+ * so an interrupted conversion resumes where it stopped. Once the conversion is done, the file is deleted, or
+ * renamed to {@code .failed} if any player could not be converted.
+ * <p>
+ * The conversion is meant to run in the background. While it runs, players cannot join the server, so no statistics
+ * are modified before they are converted. To gate logins, register the converter as a listener before starting it.
+ */
+public class StorageTypeConverter implements Runnable, Listener {
+
+    /**
+     * The amount of players converted in each batch
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The interval (in milliseconds) at which progress is reported
+     */
+    private static final long REPORT_INTERVAL = 5000;
+
+    /**
+     * The time (in seconds) a joining player waits for the conversion before they are disallowed
+     */
+    private static final long LOGIN_WAIT = 5;
+
+    private static final JsonParser PARSER = new JsonParser();
 
     private DataProvider newProvider;
 
+    /**
+     * Counted down once the conversion is finished or stopped
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Whether has the conversion been requested to stop
+     */
+    private volatile boolean stopped;
+
     public StorageTypeConverter(DataProvider newProvider) {
         this.newProvider = newProvider;
     }
@@ -41,13 +108,141 @@ public class StorageTypeConverter implements Runnable {
      */
     @Override
     public void run() {
-        UnitedFileProvider fileProvider = new UnitedFileProvider();
-        if (!fileProvider.getConfig().getFile().exists()) return;
-        fileProvider.getConfig().getContent().entrySet().forEach((entry) -> {
-            String player = entry.getKey();
-            GameStats stats = ArenaData.GSON.fromJson(entry.getValue(), GameStats.class);
-            newProvider.setStatistics(DataProvider.getStoringStrategy().from(player), stats);
-        });
-        fileProvider.getConfig().getFile().getFile().delete();
+        try {
+            convert();
+        } finally {
+            finished.countDown();
+            if (SpleefX.getPlugin().isEnabled())
+                Bukkit.getScheduler().runTask(SpleefX.getPlugin(), () -> HandlerList.unregisterAll(this));
+        }
+    }
+
+    /**
+     * Stops the conversion after the current batch, and waits for it to finish. The conversion resumes on the
+     * next startup.
+     *
+     * @param timeout Maximum time to wait (in seconds)
+     */
+    public void stop(long timeout) {
+        stopped = true;
+        try {
+            if (!finished.await(timeout, TimeUnit.SECONDS))
+                SpleefX.logger().warning("Timed out while stopping the conversion of player statistics.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        try {
+            if (finished.await(LOGIN_WAIT, TimeUnit.SECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, "Player statistics are being converted. Please try again in a few moments.");
+    }
+
+    private void convert() {
+        File file = new File(new File(SpleefX.getPlugin().getDataFolder(), PluginSettings.STATISTICS_DIRECTORY.get()), PluginSettings.UNITED_FILE_NAME.get());
+        if (!file.exists()) return;
+        File progressFile = new File(file.getParentFile(), file.getName() + ".progress");
+        int[] progress = readProgress(progressFile);
+        int done = progress[0];
+        AtomicInteger failed = new AtomicInteger(progress[1]);
+        if (done > 0) SpleefX.logger().info("Resuming the conversion of " + file.getName() + " after " + done + " players.");
+        Stopwatch timer = Stopwatch.createStarted();
+        long lastReport = 0;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        try (CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+             JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8)))) {
+            long size = file.length();
+            reader.beginObject();
+            for (int skipped = 0; skipped < done && reader.hasNext(); skipped++) {
+                reader.nextName();
+                reader.skipValue();
+            }
+            List<Entry<String, GameStats>> batch = new ArrayList<>(BATCH_SIZE);
+            while (reader.hasNext()) {
+                String player = reader.nextName();
+                JsonElement value = PARSER.parse(reader); // consumes the whole value, even if it cannot be deserialized
+                try {
+                    batch.add(new SimpleEntry<>(player, ArenaData.GSON.fromJson(value, GameStats.class)));
+                } catch (JsonParseException e) {
+                    SpleefX.logger().warning("Skipping unreadable statistics of " + player + ": " + e.getMessage());
+                    batch.add(new SimpleEntry<>(player, null)); // still counted, so progress stays in file order
+                }
+                if (batch.size() == BATCH_SIZE || !reader.hasNext()) {
+                    List<Entry<String, GameStats>> converting = batch;
+                    pool.submit(() -> converting.parallelStream().forEach(entry -> convert(entry, failed))).get();
+                    done += converting.size();
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    JsonFile.writeAtomically(progressFile, (done + " " + failed.get()).getBytes(StandardCharsets.UTF_8), true);
+                    if (timer.elapsed(TimeUnit.MILLISECONDS) - lastReport >= REPORT_INTERVAL) {
+                        lastReport = timer.elapsed(TimeUnit.MILLISECONDS);
+                        SpleefX.logger().info("Converting " + file.getName() + ": " + done + " players (" + (size == 0 ? 100 : counter.getCount() * 100 / size) + "%)");
+                    }
+                    if (stopped && reader.hasNext()) {
+                        SpleefX.logger().info("Stopped converting " + file.getName() + " after " + done + " players. The conversion will resume on the next startup.");
+                        return;
+                    }
+                }
+            }
+            reader.endObject();
+        } catch (IOException | JsonParseException | IllegalStateException | ExecutionException e) {
+            SpleefX.logger().log(Level.SEVERE, "Failed to convert " + file.getName() + ". The conversion will resume on the next startup.", e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            pool.shutdown();
+        }
+        SpleefX.logger().info("Converted " + (done - failed.get()) + " players from " + file.getName() + " in " + timer.elapsed(TimeUnit.SECONDS) + " seconds"
+                + (failed.get() == 0 ? "." : ". " + failed.get() + " players could not be converted."));
+        try {
+            if (failed.get() == 0)
+                Files.delete(file.toPath());
+            else { // keep the players which were not converted, but do not convert the file again
+                File kept = new File(file.getParentFile(), file.getName() + ".failed");
+                if (kept.exists()) kept = new File(file.getParentFile(), file.getName() + "." + System.currentTimeMillis() + ".failed");
+                Files.move(file.toPath(), kept.toPath());
+                SpleefX.logger().warning("Kept the statistics which could not be converted in " + kept.getName() + ".");
+            }
+            Files.deleteIfExists(progressFile.toPath());
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.WARNING, "Failed to remove " + file.getName() + " after converting it", e);
+        }
+    }
+
+    private void convert(Entry<String, GameStats> entry, AtomicInteger failed) {
+        try {
+            OfflinePlayer player = DataProvider.getStoringStrategy().from(entry.getKey());
+            if (entry.getValue() == null || player == null) {
+                failed.incrementAndGet();
+                return;
+            }
+            newProvider.setStatistics(player, entry.getValue());
+        } catch (IOException | RuntimeException e) {
+            SpleefX.logger().warning("Failed to convert the statistics of " + entry.getKey() + ": " + e.getMessage());
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reads the amount of converted and failed players from the progress file
+     *
+     * @param progressFile File to read from
+     * @return The converted players, followed by the failed players. Files which do not record the failed
+     * players have none.
+     */
+    private static int[] readProgress(File progressFile) {
+        if (!progressFile.exists()) return new int[2];
+        try {
+            String[] values = new String(Files.readAllBytes(progressFile.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+            return new int[]{Integer.parseInt(values[0]), values.length > 1 ? Integer.parseInt(values[1]) : 0};
+        } catch (IOException | NumberFormatException e) {
+            return new int[2];
+        }
     }
 }
@@ -0,0 +1,208 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import io.github.spleefx.economy.booster.BoosterFactory;
+import io.github.spleefx.economy.booster.BoosterInstance;
+import io.github.spleefx.economy.booster.BoosterState;
+import io.github.spleefx.extension.ExtensionsManager;
+import io.github.spleefx.perk.GamePerk;
+import org.moltenjson.utils.Gsons;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A compact binary codec for {@link GameStats}.
+ * <p>
+ * Layout (version 1), where integers are zigzag-encoded varints and strings are a varint length followed by
+ * UTF-8 bytes:
+ * <pre>
+ * int     magic ("SXGS")
+ * byte    version
+ * varint  coins
+ * byte    statistic count n, then n global statistics in ordinal order
+ * varint  mode count, then for each mode: string extension key, n statistics
+ * varint  perk count, then for each perk: string perk key, varint amount
+ * varint  booster count, then for each booster: varint id, string type, byte state, double multiplier, varint duration
+ * string  the custom data map, as JSON
+ * </pre>
+ * Statistics are stored by their ordinal, so new statistics must be added to the end of {@link PlayerStatistic}.
+ * Statistics a file has more of than the running version knows are skipped.
+ */
+final class BinaryStatsCodec {
+
+    /**
+     * The file magic
+     */
+    private static final int MAGIC = 0x53584753;
+
+    /**
+     * The current version
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * The type of the custom data map
+     */
+    private static final Type CUSTOM_TYPE = new TypeToken<Map<Object, Object>>() {
+    }.getType();
+
+    private BinaryStatsCodec() {
+    }
+
+    /**
+     * Encodes the specified statistics into the buffer
+     *
+     * @param stats  Statistics to encode
+     * @param buffer Buffer to encode into
+     * @throws java.nio.BufferOverflowException If the buffer is too small
+     */
+    static void encode(GameStats stats, ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        putVarInt(buffer, stats.coins);
+        int[] global = stats.getGlobalStatistics();
+        buffer.put((byte) global.length);
+        for (int value : global)
+            putVarInt(buffer, value);
+        int[][] modes = stats.getModeStatistics();
+        int count = 0;
+        for (int[] mode : modes)
+            if (mode != null) count++;
+        putVarInt(buffer, count);
+        for (int id = 0; id < modes.length; id++) {
+            if (modes[id] == null) continue;
+            putString(buffer, ExtensionsManager.getKeyById(id));
+            for (int value : modes[id])
+                putVarInt(buffer, value);
+        }
+        Map<GamePerk, Integer> perks = stats.getPerks();
+        putVarInt(buffer, perks.size());
+        perks.forEach((perk, amount) -> {
+            putString(buffer, perk.getKey());
+            putVarInt(buffer, amount);
+        });
+        Map<Integer, BoosterInstance> boosters = stats.getBoosters();
+        putVarInt(buffer, boosters.size());
+        boosters.forEach((id, booster) -> {
+            putVarInt(buffer, id);
+            putString(buffer, booster.getType() == null ? "" : booster.getType().getKey());
+            buffer.put((byte) booster.getState().ordinal());
+            buffer.putDouble(booster.getMultiplier());
+            putVarLong(buffer, booster.getDuration());
+        });
+        putString(buffer, Gsons.DEFAULT.toJson(stats.getCustomDataMap()));
+    }
+
+    /**
+     * Decodes statistics from the buffer
+     *
+     * @param buffer Buffer to decode from
+     * @return The decoded statistics
+     * @throws IOException If the buffer does not contain valid statistics
+     */
+    static GameStats decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a statistics file");
+            byte version = buffer.get();
+            if (version != VERSION) throw new IOException("Unsupported statistics file version: " + version);
+            GameStats stats = new GameStats();
+            stats.coins = getVarInt(buffer);
+            int statistics = buffer.get();
+            readStatistics(buffer, statistics, stats.getGlobalStatistics());
+            int[][] modes = new int[0][];
+            for (int i = getVarInt(buffer); i > 0; i--) {
+                int id = ExtensionsManager.getId(getString(buffer));
+                if (id >= modes.length) modes = Arrays.copyOf(modes, id + 1);
+                modes[id] = new int[PlayerStatistic.values.length];
+                readStatistics(buffer, statistics, modes[id]);
+            }
+            stats.setModeStatistics(modes);
+            for (int i = getVarInt(buffer); i > 0; i--) {
+                GamePerk perk = GamePerk.getPerk(getString(buffer));
+                int amount = getVarInt(buffer);
+                if (perk != null) stats.getPerks().put(perk, amount);
+            }
+            for (int i = getVarInt(buffer); i > 0; i--) {
+                int id = getVarInt(buffer);
+                BoosterFactory type = BoosterFactory.get(getString(buffer));
+                BoosterState state = BoosterState.values()[buffer.get()];
+                stats.getBoosters().put(id, new BoosterInstance(type, state, buffer.getDouble(), getVarLong(buffer)));
+            }
+            Map<Object, Object> custom = Gsons.DEFAULT.fromJson(getString(buffer), CUSTOM_TYPE);
+            if (custom != null) stats.getCustomDataMap().putAll(custom);
+            return stats;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | JsonParseException e) {
+            throw new IOException("Corrupted statistics file", e);
+        }
+    }
+
+    private static void readStatistics(ByteBuffer buffer, int count, int[] into) {
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            int value = getVarInt(buffer);
+            if (ordinal < into.length) into[ordinal] = value;
+        }
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        putVarLong(buffer, value);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        long v = (value << 1) ^ (value >> 63); // zigzag, so small negative values stay small
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        return (int) getVarLong(buffer);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+            if (shift > 63) throw new IndexOutOfBoundsException("Malformed varint");
+        }
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[getVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -36,4 +36,16 @@ public class DataException extends RuntimeException {
     public DataException(Throwable cause) {
         super(cause);
     }
+
+    /**
+     * Constructs a new runtime exception with the specified detail message and cause.
+     *
+     * @param message the detail message (which is saved for later retrieval by the
+     *                {@link #getMessage()} method).
+     * @param cause   the cause (which is saved for later retrieval by the
+     *                {@link #getCause()} method).
+     */
+    public DataException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -17,6 +17,8 @@ package io.github.spleefx.data;
 
 import io.github.spleefx.SpleefX;
 import io.github.spleefx.data.provider.FlatFileProvider;
+import io.github.spleefx.data.provider.LogProvider;
+import io.github.spleefx.data.provider.SQLiteProvider;
 import io.github.spleefx.economy.booster.BoosterInstance;
 import io.github.spleefx.extension.GameExtension;
 import io.github.spleefx.util.io.FileManager;
@@ -25,7 +27,11 @@ import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.inventory.Inventory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 import static java.util.UUID.fromString;
 
@@ -88,6 +94,7 @@ public interface DataProvider {
     default void addBooster(OfflinePlayer player, BoosterInstance booster) {
         GameStats stats = getStatistics(player);
         stats.getBoosters().put(stats.getBoosters().size() + 1, booster);
+        stats.markDirty();
     }
 
     /**
@@ -97,14 +104,24 @@ public interface DataProvider {
      */
     void saveEntries(SpleefX plugin);
 
+    /**
+     * Saves all the entries of the data, and waits for them to be written. Invoked when the server stops.
+     *
+     * @param plugin Plugin instance
+     */
+    default void close(SpleefX plugin) {
+        saveEntries(plugin);
+    }
+
     /**
      * Sets the player statistics entirely. Useful for converting between different {@link DataProvider}
      * implementations.
      *
      * @param player Player to convert
      * @param stats  Stats to override with
+     * @throws IOException If the statistics cannot be written
      */
-    void setStatistics(OfflinePlayer player, GameStats stats);
+    void setStatistics(OfflinePlayer player, GameStats stats) throws IOException;
 
     /**
      * Returns the top n players in the specified statistic
@@ -113,6 +130,32 @@ public interface DataProvider {
      */
     List<LeaderboardTopper> getTopPlayers(PlayerStatistic statistic, GameExtension extension);
 
+    /**
+     * Returns a copy of the top players in the specified statistic, which does not change with the leaderboard
+     *
+     * @param statistic Statistic to get from
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param limit     The maximum amount of players to return
+     * @return The top players, highest first
+     */
+    default List<LeaderboardTopper> getTopPlayers(PlayerStatistic statistic, GameExtension extension, int limit) {
+        List<LeaderboardTopper> top = getTopPlayers(statistic, extension);
+        return Collections.unmodifiableList(new ArrayList<>(top.subList(0, Math.min(limit, top.size()))));
+    }
+
+    /**
+     * Returns the position of the player in the leaderboard of the specified statistic
+     *
+     * @param statistic Statistic to get from
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param player    Player to get for
+     * @return The position starting from 1, or -1 if the player is not ranked.
+     */
+    default int getRank(PlayerStatistic statistic, GameExtension extension, OfflinePlayer player) {
+        int index = getTopPlayers(statistic, extension).indexOf(new LeaderboardTopper(player.getUniqueId(), 0));
+        return index == -1 ? -1 : index + 1;
+    }
+
     /**
      * Returns the statistics of the specified player
      *
@@ -121,6 +164,31 @@ public interface DataProvider {
      */
     GameStats getStatistics(OfflinePlayer player);
 
+    /**
+     * Returns the statistics of the specified player, only if they are already in memory. Never blocks, and never
+     * loads the statistics.
+     *
+     * @param player Player to retrieve from
+     * @return The player's statistics, or {@code null} if they are not in memory or the provider does not cache
+     */
+    default GameStats peekStatistics(OfflinePlayer player) {
+        return null;
+    }
+
+    /**
+     * Applies the specified task on the statistics of the player. Providers which cache statistics keep them
+     * from being evicted while the task runs, so changes made by the task are never lost. The task must
+     * mark the statistics as changed.
+     *
+     * @param player Player to modify
+     * @param task   Task to apply
+     * @param <R>    The task result
+     * @return The result of the task
+     */
+    default <R> R modifyStatistics(OfflinePlayer player, Function<GameStats, R> task) {
+        return task.apply(getStatistics(player));
+    }
+
     /**
      * Returns the storing strategy specified in the config
      *
@@ -158,9 +226,14 @@ public interface DataProvider {
         FLAT_FILE(FlatFileProvider.class),
 
         /**
-         * A SQLite file
+         * An embedded SQLite database
+         */
+        SQLITE(getSQLProvider()),
+
+        /**
+         * An append-only log of statistic changes
          */
-        SQLITE(getSQLProvider());
+        LOG(LogProvider.class);
 
         private Class<? extends DataProvider> providerClass;
 
@@ -189,7 +262,8 @@ public interface DataProvider {
         }
 
         /**
-         * Returns the SQL provider class, or the flat file provider if no SQL provider is found
+         * Returns the SQL provider class of the SpleefXSQL extension, or the built-in SQL provider if the
+         * extension is not found
          *
          * @return The appropriate class
          */
@@ -198,7 +272,7 @@ public interface DataProvider {
             try {
                 return (Class<? extends DataProvider>) Class.forName("io.github.spleefx.data.provider.sqlite.SQLiteProvider");
             } catch (Throwable t) {
-                return FlatFileProvider.class;
+                return SQLiteProvider.class;
             }
         }
 
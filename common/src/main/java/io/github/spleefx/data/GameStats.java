@@ -15,28 +15,29 @@
  */
 package io.github.spleefx.data;
 
+import com.google.gson.*;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 import io.github.spleefx.SpleefX;
+import io.github.spleefx.economy.CoinLedger;
 import io.github.spleefx.economy.booster.BoosterInstance;
+import io.github.spleefx.extension.ExtensionsManager;
 import io.github.spleefx.extension.GameExtension;
 import io.github.spleefx.perk.GamePerk;
 import io.github.spleefx.perk.GamePerk.MapAdapter;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 
+import java.lang.reflect.Type;
 import java.text.NumberFormat;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
+import java.util.*;
+import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
 
-import static io.github.spleefx.util.plugin.PluginSettings.ECO_USE_VAULT;
-
 /**
  * A simple container (POJO) for a player's statistics. Used mainly by data providers which use GSON.
  */
@@ -47,11 +48,16 @@ public class GameStats {
     public static final NumberFormat FORMAT = NumberFormat.getInstance(Locale.US);
 
     /**
-     * The player's coins
+     * The amount of statistics
+     */
+    private static final int STATISTICS = PlayerStatistic.values.length;
+
+    /**
+     * The player's coins. Must only be modified through the {@link CoinLedger}.
      */
     @Expose
     @SerializedName("coins")
-    public int coins = 0;
+    public volatile int coins = 0;
 
     @Expose
     @JsonAdapter(MapAdapter.class)
@@ -66,11 +72,12 @@ public class GameStats {
     private Map<Integer, BoosterInstance> boosters = new HashMap<>();
 
     /**
-     * Represents the global statistics
+     * Represents the global statistics, indexed by the statistic ordinal
      */
     @Expose
     @SerializedName("global")
-    private Map<PlayerStatistic, Integer> global;
+    @JsonAdapter(StatisticsAdapter.class)
+    private int[] global;
 
     /**
      * A map which stores outer objects, whether from this plugin or from other plugins
@@ -80,18 +87,25 @@ public class GameStats {
     private Map<Object, Object> customDataMap;
 
     /**
-     * Represents statistics for each mode
+     * Represents statistics for each mode, indexed by the extension id (see {@link ExtensionsManager#getId(String)})
+     * and then by the statistic ordinal. Modes the player has no statistics in are null.
      */
     @Expose
     @SerializedName("modes")
-    private Map<String, Map<PlayerStatistic, Integer>> gameStatistics;
+    @JsonAdapter(ModesAdapter.class)
+    private int[][] gameStatistics;
+
+    /**
+     * Whether has this entry changed since it was last saved
+     */
+    private transient volatile boolean dirty;
 
     /**
      * A simple instance for empty maps
      */
     public GameStats() {
-        global = new HashMap<>();
-        gameStatistics = new HashMap<>();
+        global = new int[STATISTICS];
+        gameStatistics = new int[0][];
     }
 
     /**
@@ -103,8 +117,9 @@ public class GameStats {
      */
     public int get(PlayerStatistic type, GameExtension mode) {
         if (mode == null)
-            return global.computeIfAbsent(type, (e) -> 0);
-        return gameStatistics.computeIfAbsent(mode.getKey(), (v) -> new HashMap<>()).computeIfAbsent(type, (e) -> 0);
+            return global[type.ordinal()];
+        int id = ExtensionsManager.getId(mode.getKey());
+        return id < gameStatistics.length && gameStatistics[id] != null ? gameStatistics[id][type.ordinal()] : 0;
     }
 
     /**
@@ -116,12 +131,74 @@ public class GameStats {
      * @return
      */
     public GameStats add(PlayerStatistic type, GameExtension mode, int addition) {
-        global.merge(type, addition, Integer::sum);
-        if (mode != null)
-            gameStatistics.computeIfAbsent(mode.getKey(), (v) -> new HashMap<>()).merge(type, addition, Integer::sum);
+        return add(type, mode == null ? -1 : ExtensionsManager.getId(mode.getKey()), addition);
+    }
+
+    /**
+     * Adds the specified statistics to the player
+     *
+     * @param type     Type of the statistic
+     * @param id       ID of the mode to add (see {@link ExtensionsManager#getId(String)}), or -1 to only add globally
+     * @param addition Value to add
+     * @return This statistics instance
+     */
+    GameStats add(PlayerStatistic type, int id, int addition) {
+        dirty = true;
+        return addDelta(type, id, addition);
+    }
+
+    /**
+     * Adds the specified statistics to the player without marking this entry as changed. Used by data
+     * providers which persist the change on their own, so that it does not need a full save.
+     *
+     * @param type     Type of the statistic
+     * @param mode     Mode to add. Can be null.
+     * @param addition Value to add
+     * @return This statistics instance
+     */
+    public GameStats addDelta(PlayerStatistic type, GameExtension mode, int addition) {
+        return addDelta(type, mode == null ? -1 : ExtensionsManager.getId(mode.getKey()), addition);
+    }
+
+    private GameStats addDelta(PlayerStatistic type, int id, int addition) {
+        global[type.ordinal()] += addition;
+        if (id != -1) {
+            if (id >= gameStatistics.length)
+                gameStatistics = Arrays.copyOf(gameStatistics, id + 1);
+            if (gameStatistics[id] == null)
+                gameStatistics[id] = new int[STATISTICS];
+            gameStatistics[id][type.ordinal()] += addition;
+        }
         return this;
     }
 
+    /**
+     * Returns the global statistics, indexed by the statistic ordinal
+     *
+     * @return The global statistics
+     */
+    int[] getGlobalStatistics() {
+        return global;
+    }
+
+    /**
+     * Returns the statistics of each mode, indexed by the extension id and then by the statistic ordinal
+     *
+     * @return The statistics of each mode. Modes the player has no statistics in are null.
+     */
+    int[][] getModeStatistics() {
+        return gameStatistics;
+    }
+
+    /**
+     * Sets the statistics of each mode
+     *
+     * @param modes The new statistics, indexed by the extension id and then by the statistic ordinal
+     */
+    void setModeStatistics(int[][] modes) {
+        gameStatistics = modes;
+    }
+
     public Map<Object, Object> getCustomDataMap() {
         return customDataMap == null ? customDataMap = new HashMap<>() : customDataMap;
     }
@@ -138,29 +215,31 @@ public class GameStats {
      * Returns the amount of coins the player has
      *
      * @return The coins
+     * @see CoinLedger#getCoins(OfflinePlayer)
      */
     public int getCoins(OfflinePlayer player) {
-        if ((boolean) ECO_USE_VAULT.get() && VAULT_EXISTS.get()) {
-            coins = (int) SpleefX.getPlugin().getVaultHandler().getCoins(player);
-        }
-        return coins;
+        return SpleefX.getPlugin().getCoinLedger().getCoins(player);
     }
 
     /**
      * Applies the specified task on the player's coins
      *
      * @param task Task to run
+     * @see CoinLedger#update(GameStats, IntUnaryOperator)
      */
     public int onCoins(IntFunction<Integer> task) {
-        return coins = task.apply(coins);
+        return CoinLedger.update(this, task::apply);
     }
 
+    /**
+     * Gives the specified amount of coins to the player
+     *
+     * @param player Player to give to
+     * @param amount Amount to give
+     * @see CoinLedger#give(OfflinePlayer, int)
+     */
     public void giveCoins(OfflinePlayer player, int amount) {
-        if ((boolean) ECO_USE_VAULT.get() && VAULT_EXISTS.get()) {
-            SpleefX.getPlugin().getVaultHandler().add(player, amount);
-            return;
-        }
-        coins += amount;
+        SpleefX.getPlugin().getCoinLedger().give(player, amount);
     }
 
     /**
@@ -172,12 +251,16 @@ public class GameStats {
         return FORMAT.format(getCoins(player));
     }
 
-    public void takeCoins(OfflinePlayer player, int amount) {
-        if ((boolean) ECO_USE_VAULT.get() && VAULT_EXISTS.get()) {
-            SpleefX.getPlugin().getVaultHandler().withdraw(player, amount);
-            return;
-        }
-        coins -= amount;
+    /**
+     * Takes the specified amount of coins from the player, only if the player has enough coins
+     *
+     * @param player Player to take from
+     * @param amount Amount to take
+     * @return {@code true} if the coins were taken
+     * @see CoinLedger#take(OfflinePlayer, int)
+     */
+    public boolean takeCoins(OfflinePlayer player, int amount) {
+        return SpleefX.getPlugin().getCoinLedger().take(player, amount);
     }
 
     /**
@@ -189,14 +272,93 @@ public class GameStats {
         return boosters;
     }
 
+    /**
+     * Marks this entry as changed, so it gets written on the next save. Must be invoked after modifying
+     * the maps returned by {@link #getPerks()}, {@link #getBoosters()} or {@link #getCustomDataMap()}.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Returns whether has this entry changed since it was last saved
+     *
+     * @return {@code true} if this entry should be saved
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks this entry as saved. Should be invoked right before the entry is serialized, so changes made
+     * while it is being written are not lost.
+     */
+    public void clearDirty() {
+        dirty = false;
+    }
+
     @Override
     public String toString() {
         return "GameStats{" +
                 "coins=" + coins +
                 ", boosters=" + boosters +
-                ", global=" + global +
-                ", gameStatistics=" + gameStatistics +
+                ", global=" + Arrays.toString(global) +
+                ", gameStatistics=" + Arrays.deepToString(gameStatistics) +
                 '}';
     }
 
+    /**
+     * Reads and writes statistics arrays as an object of statistic names to values
+     */
+    public static class StatisticsAdapter implements JsonSerializer<int[]>, JsonDeserializer<int[]> {
+
+        @Override
+        public int[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+            int[] statistics = new int[STATISTICS];
+            for (Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+                PlayerStatistic statistic = PlayerStatistic.from(entry.getKey());
+                if (statistic != null)
+                    statistics[statistic.ordinal()] = entry.getValue().getAsInt();
+            }
+            return statistics;
+        }
+
+        @Override
+        public JsonElement serialize(int[] src, Type typeOfSrc, JsonSerializationContext context) {
+            JsonObject object = new JsonObject();
+            for (PlayerStatistic statistic : PlayerStatistic.values)
+                object.addProperty(statistic.name(), src[statistic.ordinal()]);
+            return object;
+        }
+    }
+
+    /**
+     * Reads and writes the statistics of all modes as an object of extension keys to statistics
+     */
+    public static class ModesAdapter implements JsonSerializer<int[][]>, JsonDeserializer<int[][]> {
+
+        private static final StatisticsAdapter STATISTICS_ADAPTER = new StatisticsAdapter();
+
+        @Override
+        public int[][] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+            int[][] modes = new int[0][];
+            for (Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+                int id = ExtensionsManager.getId(entry.getKey());
+                if (id >= modes.length)
+                    modes = Arrays.copyOf(modes, id + 1);
+                modes[id] = STATISTICS_ADAPTER.deserialize(entry.getValue(), int[].class, context);
+            }
+            return modes;
+        }
+
+        @Override
+        public JsonElement serialize(int[][] src, Type typeOfSrc, JsonSerializationContext context) {
+            JsonObject object = new JsonObject();
+            for (int id = 0; id < src.length; id++)
+                if (src[id] != null)
+                    object.add(ExtensionsManager.getKeyById(id), STATISTICS_ADAPTER.serialize(src[id], int[].class, context));
+            return object;
+        }
+    }
+
 }
@@ -15,6 +15,8 @@
  */
 package io.github.spleefx.data;
 
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.data.leaderboard.NameCache;
 import io.github.spleefx.data.leaderboard.OfflinePlayerFactory;
 import org.bukkit.OfflinePlayer;
 
@@ -37,11 +39,26 @@ public class LeaderboardTopper {
         this.count = count;
     }
 
+    public UUID getUniqueId() {
+        return player;
+    }
+
     public CompletableFuture<OfflinePlayer> getPlayer() {
         return playerOff == null ? OfflinePlayerFactory.FACTORY.getOrRequest(player).thenApply(p -> playerOff = p)
                 : CompletableFuture.completedFuture(playerOff);
     }
 
+    /**
+     * Returns the name of the player from the {@link NameCache}. If the player is not cached, they are
+     * resolved in the background.
+     *
+     * @return The name, or null if it is not cached yet
+     */
+    public String getName() {
+        NameCache names = SpleefX.getPlugin().getNameCache();
+        return names == null ? null : names.getName(player);
+    }
+
     public int getCount() {
         return count;
     }
@@ -0,0 +1,264 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data;
+
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A cache of the statistics of players, which only keeps the players that are likely to be needed.
+ * <p>
+ * Statistics are loaded in the background when a player logs in, and stay pinned while they are online.
+ * Once a player goes offline, their statistics are evicted after the configured time, or earlier (least
+ * recently used first) when the cache grows over its configured size. Entries with unsaved changes are never
+ * evicted. Statistics of players which are not cached are loaded on demand.
+ * <p>
+ * Code which modifies statistics outside of the main thread must {@link #pin(OfflinePlayer)} the entry while
+ * it does, and mark it dirty before unpinning it. Pinned entries are never evicted, so the changes can never
+ * land on statistics which were already dropped from the cache.
+ * <p>
+ * This class is thread-safe.
+ */
+public class StatisticsCache implements Listener {
+
+    /**
+     * The function which loads the statistics of a player. Invoked outside of the lock, possibly from another thread.
+     */
+    private final Function<OfflinePlayer, GameStats> loader;
+
+    /**
+     * All cached statistics, mapped by the player UUID, in access order
+     */
+    private final Map<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The same entries as {@link #entries}, for reads which do not take the lock. Only changed while holding it.
+     */
+    private final Map<UUID, Entry> index = new ConcurrentHashMap<>();
+
+    public StatisticsCache(Function<OfflinePlayer, GameStats> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the statistics of the specified player, loading them if they are not cached
+     *
+     * @param player Player to get for
+     * @return The statistics
+     */
+    public GameStats get(OfflinePlayer player) {
+        GameStats stats = getIfLoaded(player);
+        if (stats != null) return stats;
+        stats = loader.apply(player);
+        OfflinePlayer key = player instanceof Player ? Bukkit.getOfflinePlayer(player.getUniqueId()) : player; // do not keep online player objects after they quit
+        synchronized (this) {
+            Entry entry = entries.get(player.getUniqueId());
+            if (entry != null) return entry.stats; // loaded by another thread meanwhile
+            put(player.getUniqueId(), new Entry(key, stats, player.isOnline()));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the statistics of the specified player, loading them if they are not cached, and keeps them from
+     * being evicted until {@link #unpin(OfflinePlayer)} is invoked
+     *
+     * @param player Player to pin
+     * @return The statistics
+     */
+    public GameStats pin(OfflinePlayer player) {
+        synchronized (this) {
+            Entry entry = entries.get(player.getUniqueId());
+            if (entry != null) {
+                entry.pins++;
+                return entry.stats;
+            }
+        }
+        GameStats stats = loader.apply(player);
+        OfflinePlayer key = player instanceof Player ? Bukkit.getOfflinePlayer(player.getUniqueId()) : player;
+        synchronized (this) {
+            Entry entry = entries.get(player.getUniqueId());
+            if (entry == null) put(player.getUniqueId(), entry = new Entry(key, stats, player.isOnline()));
+            entry.pins++;
+            return entry.stats;
+        }
+    }
+
+    /**
+     * Releases an entry pinned by {@link #pin(OfflinePlayer)}
+     *
+     * @param player Player to unpin
+     */
+    public synchronized void unpin(OfflinePlayer player) {
+        Entry entry = entries.get(player.getUniqueId());
+        if (entry != null && entry.pins > 0) entry.pins--;
+    }
+
+    /**
+     * Returns the statistics of the specified player, only if they are cached
+     *
+     * @param player Player to get for
+     * @return The statistics, or {@code null} if they are not cached.
+     */
+    public synchronized GameStats getIfLoaded(OfflinePlayer player) {
+        Entry entry = entries.get(player.getUniqueId());
+        return entry == null ? null : entry.stats;
+    }
+
+    /**
+     * Returns the statistics of the specified player, only if they are cached. Unlike {@link #getIfLoaded(OfflinePlayer)},
+     * this never blocks and does not count as a use of the entry, so it may return statistics which are being evicted.
+     * Only suitable for reads.
+     *
+     * @param player Player to get for
+     * @return The statistics, or {@code null} if they are not cached.
+     */
+    public GameStats peek(OfflinePlayer player) {
+        Entry entry = index.get(player.getUniqueId());
+        return entry == null ? null : entry.stats;
+    }
+
+    /**
+     * Replaces the cached statistics of the specified player, if they are cached
+     *
+     * @param player Player to replace for
+     * @param stats  The new statistics
+     */
+    public synchronized void replace(OfflinePlayer player, GameStats stats) {
+        Entry entry = entries.get(player.getUniqueId());
+        if (entry != null) entry.stats = stats;
+    }
+
+    /**
+     * Returns a copy of all the cached statistics
+     *
+     * @return The cached statistics, mapped by the player
+     */
+    public synchronized Map<OfflinePlayer, GameStats> getLoaded() {
+        Map<OfflinePlayer, GameStats> loaded = new HashMap<>(entries.size());
+        entries.values().forEach(entry -> loaded.put(entry.player, entry.stats));
+        return loaded;
+    }
+
+    /**
+     * Returns the amount of cached players
+     *
+     * @return The cache size
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts all the players which have been offline for longer than the configured time, and the least
+     * recently used offline players while the cache is over its configured size. Players with unsaved
+     * changes, and pinned players, are kept. Must be invoked from the main thread.
+     *
+     * @return The amount of evicted players
+     */
+    public synchronized int evict() {
+        long expiry = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(((Number) PluginSettings.STATISTICS_CACHE_EVICT_AFTER.get()).longValue());
+        int cap = ((Number) PluginSettings.STATISTICS_CACHE_SIZE.get()).intValue();
+        int evicted = 0;
+        for (Iterator<Map.Entry<UUID, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<UUID, Entry> e = iterator.next();
+            Entry entry = e.getValue();
+            if (entry.online) {
+                if (Bukkit.getPlayer(e.getKey()) != null) continue;
+                entry.online = false; // quit while their statistics were loading
+                entry.offlineSince = System.currentTimeMillis();
+            }
+            if (entry.pins > 0 || entry.stats.isDirty()) continue;
+            if (entry.offlineSince < expiry || entries.size() > cap) {
+                iterator.remove();
+                index.remove(e.getKey());
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        if (DataProvider.getStoringStrategy() != DataProvider.PlayerStoringStrategy.UUID) return; // the name is not known to Bukkit yet
+        get(Bukkit.getOfflinePlayer(event.getUniqueId()));
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        OfflinePlayer player = event.getPlayer();
+        synchronized (this) {
+            Entry entry = entries.get(player.getUniqueId());
+            if (entry != null) {
+                entry.online = true;
+                return;
+            }
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(SpleefX.getPlugin(), () -> get(player));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        synchronized (this) {
+            Entry entry = entries.get(event.getPlayer().getUniqueId());
+            if (entry == null) return;
+            entry.online = false;
+            entry.offlineSince = System.currentTimeMillis();
+        }
+    }
+
+    private void put(UUID uuid, Entry entry) {
+        entries.put(uuid, entry);
+        index.put(uuid, entry);
+    }
+
+    /**
+     * Represents a cached player
+     */
+    private static class Entry {
+
+        private final OfflinePlayer player;
+        private volatile GameStats stats;
+        private boolean online;
+
+        /**
+         * The amount of threads currently modifying the statistics
+         */
+        private int pins;
+        private long offlineSince = System.currentTimeMillis();
+
+        Entry(OfflinePlayer player, GameStats stats, boolean online) {
+            this.player = player;
+            this.stats = stats;
+            this.online = online;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data;
+
+import com.google.gson.JsonParseException;
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.util.io.BufferPool;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.moltenjson.json.JsonFile;
+import org.moltenjson.utils.Gsons;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Represents a format in which player statistics files are stored. Files are read through file channels, using
+ * pooled direct buffers, and written atomically with {@link JsonFile#writeAtomically(File, byte[], boolean)}.
+ */
+public enum StatisticsFormat {
+
+    /**
+     * Human-readable JSON files
+     */
+    JSON(".json") {
+        @Override
+        public byte[] encode(GameStats stats) {
+            return Gsons.DEFAULT.toJson(stats).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public GameStats decode(ByteBuffer buffer) throws IOException {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            GameStats stats;
+            try {
+                stats = Gsons.DEFAULT.fromJson(new String(bytes, StandardCharsets.UTF_8), GameStats.class);
+            } catch (JsonParseException e) {
+                throw new IOException(e);
+            }
+            if (stats == null) throw new IOException("The file is empty"); // or holds a JSON null
+            return stats;
+        }
+    },
+
+    /**
+     * Compact binary files (see {@link BinaryStatsCodec})
+     */
+    BINARY(".dat") {
+        @Override
+        public byte[] encode(GameStats stats) {
+            for (int size = POOL.getCapacity(); ; size *= 2) {
+                ByteBuffer buffer = POOL.acquire(size);
+                try {
+                    BinaryStatsCodec.encode(stats, buffer);
+                    buffer.flip();
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    return bytes;
+                } catch (BufferOverflowException ignored) { // retry with a larger buffer
+                } finally {
+                    POOL.release(buffer);
+                }
+            }
+        }
+
+        @Override
+        public GameStats decode(ByteBuffer buffer) throws IOException {
+            return BinaryStatsCodec.decode(buffer);
+        }
+    };
+
+    /**
+     * The pool of buffers used for reading and writing files
+     */
+    private static final BufferPool POOL = new BufferPool(16 * 1024, 16);
+
+    /**
+     * The file extension, including the dot
+     */
+    private final String extension;
+
+    StatisticsFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Encodes the specified statistics
+     *
+     * @param stats Statistics to encode
+     * @return The encoded statistics
+     */
+    public abstract byte[] encode(GameStats stats);
+
+    /**
+     * Decodes statistics from the remaining content of the specified buffer
+     *
+     * @param buffer Buffer to decode
+     * @return The decoded statistics
+     * @throws IOException If the content is not valid statistics
+     */
+    public abstract GameStats decode(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Reads the statistics stored in the specified file
+     *
+     * @param file File to read
+     * @return The statistics
+     * @throws IOException If the file cannot be read, is empty or is not valid
+     */
+    public GameStats read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = POOL.acquire((int) channel.size());
+            try {
+                while (buffer.hasRemaining())
+                    if (channel.read(buffer) == -1) break;
+                buffer.flip();
+                return decode(buffer);
+            } finally {
+                POOL.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the extension of files in this format, including the dot
+     *
+     * @return The file extension
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Converts all the statistics files in the specified directory from one format to the other. Files which
+     * cannot be read are left untouched.
+     *
+     * @param directory Directory of the files
+     * @param from      Format to convert from
+     * @param to        Format to convert to
+     * @return The amount of converted files
+     */
+    public static int convert(File directory, StatisticsFormat from, StatisticsFormat to) {
+        String unitedFile = PluginSettings.UNITED_FILE_NAME.get(); // converted separately, see StorageTypeConverter
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(from.extension) && !name.equals(unitedFile));
+        if (files == null || from == to) return 0;
+        int converted = 0;
+        for (File file : files) {
+            try {
+                String name = file.getName().substring(0, file.getName().length() - from.extension.length());
+                JsonFile.writeAtomically(new File(directory, name + to.extension), to.encode(from.read(file)), true);
+                if (file.delete()) converted++;
+            } catch (IOException e) {
+                SpleefX.logger().warning("Failed to convert statistics file " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        return converted;
+    }
+}
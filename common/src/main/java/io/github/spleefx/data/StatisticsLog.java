@@ -0,0 +1,496 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data;
+
+import com.google.gson.JsonParseException;
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.extension.ExtensionsManager;
+import org.moltenjson.utils.Gsons;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of player statistics, split into segment files.
+ * <p>
+ * The log holds two kinds of entries: deltas, which add to a single statistic of a player, and snapshots,
+ * which replace all the statistics of a player. Replaying the segments in order rebuilds the statistics of
+ * every player.
+ * <p>
+ * Entries are written on a dedicated thread in groups: every group takes all the queued entries, and is
+ * synced to the disk once (group commit). A group which fails to be written is kept and retried in a new
+ * segment, so that an entry torn by the failure is always at the end of its segment. The active segment is replaced with a new one once it grows over
+ * the segment size, and closed segments are compacted into snapshots of every player they contain.
+ * <p>
+ * Every entry is framed as {@code [length][CRC32][type][payload]}, so a torn entry at the end of a segment
+ * (such as after a crash) is detected and discarded.
+ * <p>
+ * This class is thread-safe.
+ */
+public class StatisticsLog {
+
+    /**
+     * Defines the key of an extension ID within a segment: {@code [short id][UTF key]}
+     */
+    private static final byte EXTENSION = 0;
+
+    /**
+     * Adds to a statistic: {@code [long most][long least][short extension id or -1][byte statistic][int delta]}
+     */
+    private static final byte DELTA = 1;
+
+    /**
+     * Replaces all the statistics of a player: {@code [long most][long least][int length][JSON]}
+     */
+    private static final byte SNAPSHOT = 2;
+
+    /**
+     * Marks the end of the queue
+     */
+    private static final Object CLOSE = new Object();
+
+    /**
+     * The delay (in milliseconds) before a group which failed to be written is retried
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * The directory of the segments
+     */
+    private final File directory;
+
+    /**
+     * The size (in bytes) after which the active segment is replaced
+     */
+    private final long segmentSize;
+
+    /**
+     * The entries waiting to be written
+     */
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Whether is a compaction running
+     */
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    /**
+     * The thread which writes the entries
+     */
+    private Thread writer;
+
+    /**
+     * The number of the active segment
+     */
+    private volatile long active;
+
+    /**
+     * The active segment, or null if it is not opened yet. Only accessed from the writer thread.
+     */
+    private FileChannel channel;
+
+    /**
+     * The extension IDs which have been defined in the active segment. Only accessed from the writer thread.
+     */
+    private final BitSet defined = new BitSet();
+
+    /**
+     * Creates a new log
+     *
+     * @param directory   Directory of the segments
+     * @param segmentSize Size (in bytes) after which segments are replaced
+     */
+    public StatisticsLog(File directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Replays all the segments, and starts writing to a new segment
+     *
+     * @return The statistics of all players, mapped by their UUID
+     * @throws IOException If the segments could not be read
+     */
+    public Map<UUID, GameStats> open() throws IOException {
+        directory.mkdirs();
+        Map<UUID, GameStats> statistics = new HashMap<>();
+        List<Long> segments = getSegments();
+        for (long segment : segments)
+            replay(segmentFile(segment), statistics, true);
+        statistics.values().forEach(GameStats::clearDirty);
+        active = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        channel = FileChannel.open(segmentFile(active).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = new Thread(this::writeLoop, "SpleefX Statistics Log");
+        writer.setDaemon(true);
+        writer.start();
+        return statistics;
+    }
+
+    /**
+     * Appends a delta of a single statistic
+     *
+     * @param player    UUID of the player
+     * @param extension ID of the extension (see {@link ExtensionsManager#getId(String)}), or -1 for global statistics only
+     * @param statistic Statistic which changed
+     * @param delta     Value added to the statistic
+     */
+    public void appendDelta(UUID player, int extension, PlayerStatistic statistic, int delta) {
+        queue.add(new Delta(player, extension, statistic, delta));
+    }
+
+    /**
+     * Appends a snapshot of all the statistics of a player. The statistics are serialized immediately.
+     *
+     * @param player UUID of the player
+     * @param stats  The statistics
+     */
+    public void appendSnapshot(UUID player, GameStats stats) {
+        queue.add(new Snapshot(player, Gsons.DEFAULT.toJson(stats).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the amount of entries waiting to be written
+     *
+     * @return The queue size
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Compacts all the closed segments into a single segment, which holds a snapshot of each player. Does
+     * nothing if there are less than two closed segments, or if a compaction is already running.
+     * <p>
+     * The compacted segment replaces the newest closed segment before the older ones are deleted, so the log
+     * is complete at every point of the compaction.
+     */
+    public void compact() {
+        if (!compacting.compareAndSet(false, true)) return;
+        try {
+            List<Long> closed = getSegments();
+            closed.removeIf(segment -> segment >= active);
+            if (closed.size() < 2) return;
+            Map<UUID, GameStats> statistics = new LinkedHashMap<>();
+            for (long segment : closed)
+                replay(segmentFile(segment), statistics, false);
+            long last = closed.get(closed.size() - 1);
+            File temp = new File(directory, segmentFile(last).getName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                for (Map.Entry<UUID, GameStats> entry : statistics.entrySet()) {
+                    frame(bytes, new Snapshot(entry.getKey(), Gsons.DEFAULT.toJson(entry.getValue()).getBytes(StandardCharsets.UTF_8)));
+                    if (bytes.size() > 65536) {
+                        writeFully(out, bytes.toByteArray());
+                        bytes.reset();
+                    }
+                }
+                writeFully(out, bytes.toByteArray());
+                out.force(true);
+            }
+            Files.move(temp.toPath(), segmentFile(last).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (long segment : closed)
+                if (segment != last) Files.deleteIfExists(segmentFile(segment).toPath());
+            SpleefX.logger().info("Compacted " + closed.size() + " statistics log segments into " + statistics.size() + " player snapshots.");
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.WARNING, "Failed to compact the statistics log", e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Writes all queued entries and closes the log. Waits at most the specified time for the writes to finish.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of the timeout
+     * @return {@code true} if all entries were written, false if the time ran out.
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        queue.add(CLOSE);
+        try {
+            writer.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writer.isAlive()) return true;
+        SpleefX.logger().warning("Timed out while saving player statistics. " + queue.size() + " log entries were not saved.");
+        return false;
+    }
+
+    private void writeLoop() {
+        List<Object> group = new ArrayList<>();
+        boolean closing = false;
+        while (true) {
+            if (group.isEmpty() && !closing) {
+                try {
+                    group.add(queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            queue.drainTo(group);
+            if (group.remove(CLOSE)) closing = true;
+            if (group.isEmpty()) break; // only reached when closing
+            try {
+                write(group);
+                group.clear();
+            } catch (IOException e) {
+                // keep the group, and retry it in a new segment, so a torn entry is never followed by good ones
+                SpleefX.logger().log(Level.SEVERE, "Failed to write " + group.size() + " entries to the statistics log. Retrying in a new segment", e);
+                roll();
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Writes the specified entries to the active segment, and syncs them to the disk
+     *
+     * @param group Entries to write
+     * @throws IOException If the entries could not be written
+     */
+    private void write(List<Object> group) throws IOException {
+        if (channel == null)
+            channel = FileChannel.open(segmentFile(active).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitSet defining = new BitSet();
+        for (Object entry : group) {
+            if (entry instanceof Delta) {
+                int extension = ((Delta) entry).extension;
+                if (extension != -1 && !defined.get(extension) && !defining.get(extension)) {
+                    frame(bytes, new Definition(extension, ExtensionsManager.getKeyById(extension)));
+                    defining.set(extension);
+                }
+            }
+            frame(bytes, entry);
+        }
+        long start = channel.size();
+        try {
+            writeFully(channel, bytes.toByteArray());
+            channel.force(false);
+        } catch (IOException e) {
+            // cut off whatever part of the group was written, so it is not replayed twice once the group is retried
+            try {
+                channel.truncate(start);
+                channel.force(false);
+            } catch (IOException truncate) {
+                e.addSuppressed(truncate);
+            }
+            throw e;
+        }
+        defined.or(defining); // only once they are on the disk
+        if (channel.size() >= segmentSize) roll();
+    }
+
+    /**
+     * Closes the active segment, and makes the next segment active. The new segment is opened with the next write.
+     */
+    private void roll() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+        defined.clear();
+        active++;
+    }
+
+    /**
+     * Replays the specified segment into the statistics
+     *
+     * @param file       Segment to replay
+     * @param statistics Statistics to replay into
+     * @param truncate   Whether should a torn entry at the end of the segment be cut off the file
+     * @throws IOException If the segment could not be read
+     */
+    private void replay(File file, Map<UUID, GameStats> statistics, boolean truncate) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        Map<Integer, Integer> extensions = new HashMap<>(); // segment ID -> runtime ID
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() > 0) {
+            int start = buffer.position();
+            if (buffer.remaining() < 8 || buffer.getInt(start) < 1 || buffer.getInt(start) > buffer.remaining() - 8) {
+                torn(file, start, truncate);
+                return;
+            }
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                torn(file, start, truncate);
+                return;
+            }
+            int end = buffer.position() + length;
+            switch (buffer.get()) {
+                case EXTENSION: {
+                    int id = buffer.getShort();
+                    byte[] key = new byte[buffer.getShort()];
+                    buffer.get(key);
+                    extensions.put(id, ExtensionsManager.getId(new String(key, StandardCharsets.UTF_8)));
+                    break;
+                }
+                case DELTA: {
+                    UUID player = new UUID(buffer.getLong(), buffer.getLong());
+                    int extension = buffer.getShort();
+                    int statistic = buffer.get();
+                    int delta = buffer.getInt();
+                    Integer id = extension == -1 ? Integer.valueOf(-1) : extensions.get(extension);
+                    if (id == null)
+                        throw new IOException("Statistics log segment " + file.getName() + " refers to undefined extension ID " + extension + " at byte " + start);
+                    if (statistic < PlayerStatistic.values.length)
+                        statistics.computeIfAbsent(player, k -> new GameStats())
+                                .add(PlayerStatistic.values[statistic], id, delta);
+                    break;
+                }
+                case SNAPSHOT: {
+                    UUID player = new UUID(buffer.getLong(), buffer.getLong());
+                    byte[] json = new byte[buffer.getInt()];
+                    buffer.get(json);
+                    try {
+                        statistics.put(player, Gsons.DEFAULT.fromJson(new String(json, StandardCharsets.UTF_8), GameStats.class));
+                    } catch (JsonParseException e) {
+                        SpleefX.logger().log(Level.WARNING, "Skipping unreadable statistics snapshot of " + player + " in " + file.getName(), e);
+                    }
+                    break;
+                }
+            }
+            buffer.position(end);
+        }
+    }
+
+    private void torn(File file, int position, boolean truncate) throws IOException {
+        SpleefX.logger().warning("Statistics log segment " + file.getName() + " ends with an incomplete entry at byte " + position + ". It will be discarded.");
+        if (truncate)
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+            }
+    }
+
+    /**
+     * Writes the specified entry, framed with its length and checksum
+     */
+    private static void frame(ByteArrayOutputStream out, Object entry) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(body);
+        if (entry instanceof Delta) {
+            Delta delta = (Delta) entry;
+            data.writeByte(DELTA);
+            data.writeLong(delta.player.getMostSignificantBits());
+            data.writeLong(delta.player.getLeastSignificantBits());
+            data.writeShort(delta.extension);
+            data.writeByte(delta.statistic.ordinal());
+            data.writeInt(delta.delta);
+        } else if (entry instanceof Snapshot) {
+            Snapshot snapshot = (Snapshot) entry;
+            data.writeByte(SNAPSHOT);
+            data.writeLong(snapshot.player.getMostSignificantBits());
+            data.writeLong(snapshot.player.getLeastSignificantBits());
+            data.writeInt(snapshot.json.length);
+            data.write(snapshot.json);
+        } else {
+            Definition definition = (Definition) entry;
+            byte[] key = definition.key.getBytes(StandardCharsets.UTF_8);
+            data.writeByte(EXTENSION);
+            data.writeShort(definition.id);
+            data.writeShort(key.length);
+            data.write(key);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+        DataOutputStream framed = new DataOutputStream(out);
+        framed.writeInt(body.size());
+        framed.writeInt((int) crc.getValue());
+        body.writeTo(framed);
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private List<Long> getSegments() {
+        List<Long> segments = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".log"));
+        if (files != null)
+            for (File file : files)
+                segments.add(Long.parseLong(file.getName().substring(8, file.getName().length() - 4)));
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, String.format("segment-%08d.log", segment));
+    }
+
+    private static class Delta {
+
+        private final UUID player;
+        private final int extension;
+        private final PlayerStatistic statistic;
+        private final int delta;
+
+        Delta(UUID player, int extension, PlayerStatistic statistic, int delta) {
+            this.player = player;
+            this.extension = extension;
+            this.statistic = statistic;
+            this.delta = delta;
+        }
+    }
+
+    private static class Snapshot {
+
+        private final UUID player;
+        private final byte[] json;
+
+        Snapshot(UUID player, byte[] json) {
+            this.player = player;
+            this.json = json;
+        }
+    }
+
+    private static class Definition {
+
+        private final int id;
+        private final String key;
+
+        Definition(int id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data;
+
+import io.github.spleefx.SpleefX;
+import org.moltenjson.json.WriteJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * A write-behind writer for statistics files, which writes serialized entries on a background thread.
+ * <p>
+ * Entries are serialized on the thread which submits them (so the statistics are never read while being
+ * modified), and only the file writes happen in the background. Pending writes of the same file are
+ * coalesced, so only the latest content of each file is written. Writes are done in batches: every batch
+ * takes all pending writes at the time it starts, and is committed through a {@link WriteJournal}, so files
+ * are replaced atomically, and a batch is either fully written or recovered after a crash. A batch costs a single
+ * sync of the journal, and the files themselves are synced together at the journal checkpoints. A batch which fails stays pending, and is retried after a delay which
+ * doubles with every consecutive failure.
+ * <p>
+ * This class is thread-safe.
+ */
+public class StatisticsWriter {
+
+    /**
+     * All pending writes, mapped by the file
+     */
+    private final Map<File, byte[]> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The journal of batches. Only accessed by the batch being written.
+     */
+    private final WriteJournal journal;
+
+    /**
+     * Whether is a batch scheduled which has not started yet
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * The delay (in milliseconds) before a failed batch is retried for the first time
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * The maximum delay (in milliseconds) before a failed batch is retried
+     */
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The amount of consecutive batches which failed. Only accessed by the batch being written.
+     */
+    private int failures;
+
+    /**
+     * The background writer thread
+     */
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "SpleefX Statistics Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a new writer
+     *
+     * @param journal The journal file of batches. Should be replayed with {@link WriteJournal#replay(File)} before
+     *                any written file is read.
+     */
+    public StatisticsWriter(File journal) {
+        this.journal = new WriteJournal(journal);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false); // retried by the final batch instead
+    }
+
+    /**
+     * Queues the specified content to be written to the file, replacing any pending content of it
+     *
+     * @param file    File to write to
+     * @param content Content to write
+     */
+    public void write(File file, byte[] content) {
+        pending.put(file, content);
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::writeBatch);
+            } catch (RejectedExecutionException e) { // shutting down, written by the final batch
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the content waiting to be written to the specified file. Readers of the file should
+     * prefer it over the file content, which is outdated.
+     *
+     * @param file File to get for
+     * @return The pending content, or {@code null} if there is none.
+     */
+    public byte[] getPending(File file) {
+        return pending.get(file);
+    }
+
+    /**
+     * Returns the amount of files waiting to be written
+     *
+     * @return The pending writes
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Stops the writer thread, and writes all pending content in a final batch on the calling thread. Waits
+     * at most the specified time for the running batch to finish.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of the timeout
+     * @return {@code true} if all pending writes were done, false otherwise.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                SpleefX.logger().warning("Timed out while saving player statistics. " + pending.size() + " entries were not saved.");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        writeBatch(); // includes failed batches whose retry was dropped, and writes made while stopping
+        try {
+            journal.checkpoint();
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.WARNING, "Failed to sync player statistics. They will be recovered on the next startup.", e);
+        }
+        if (pending.isEmpty()) return true;
+        SpleefX.logger().warning("Failed to save player statistics. " + pending.size() + " entries were not saved.");
+        return false;
+    }
+
+    private void writeBatch() {
+        scheduled.set(false);
+        List<Map.Entry<File, byte[]>> batch = new ArrayList<>(pending.entrySet());
+        if (batch.isEmpty()) return;
+        for (Map.Entry<File, byte[]> entry : batch) {
+            File file = entry.getKey();
+            if (file.getParentFile() != null) file.getParentFile().mkdirs();
+            journal.add(file, entry.getValue());
+        }
+        try {
+            journal.commit();
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.SEVERE, "Failed to save " + batch.size() + " statistics files", e);
+            retry(); // leave them pending, so they are retried with the next batch
+            return;
+        }
+        failures = 0;
+        for (Map.Entry<File, byte[]> entry : batch)
+            pending.remove(entry.getKey(), entry.getValue()); // only once written, so readers never see the file outdated. If replaced meanwhile, the newer content is written in the next batch
+    }
+
+    private void retry() {
+        long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(failures++, 16));
+        if (!scheduled.compareAndSet(false, true)) return; // a batch is already on its way
+        try {
+            executor.schedule(this::writeBatch, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) { // shutting down, written by the final batch
+            scheduled.set(false);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.leaderboard;
+
+import io.github.spleefx.data.GameStats;
+import io.github.spleefx.data.LeaderboardTopper;
+import io.github.spleefx.data.PlayerStatistic;
+import io.github.spleefx.extension.GameExtension;
+
+import java.util.*;
+
+/**
+ * A compact index of the leaderboard scores of all players, so that leaderboards do not require the
+ * statistics of every player to be loaded.
+ * <p>
+ * Every player has a single row of ints, holding each statistic globally and for each extension that
+ * existed when the index was created. Each of these columns has a {@link RankedTree}, which is kept up to date
+ * as scores change, so leaderboards never have to be sorted. Zero scores are not ranked, so players only
+ * appear in the leaderboards of statistics they actually have.
+ * <p>
+ * This class is thread-safe.
+ */
+public class LeaderboardIndex {
+
+    private static final PlayerStatistic[] STATISTICS = PlayerStatistic.values;
+
+    /**
+     * The column group of each extension, mapped by the extension key. Group 0 holds the global statistics.
+     */
+    private final Map<String, Integer> groups = new HashMap<>();
+
+    /**
+     * The indexed extensions, in the order of their groups
+     */
+    private final List<GameExtension> extensions;
+
+    /**
+     * The amount of column groups
+     */
+    private final int width;
+
+    /**
+     * The scores of each player
+     */
+    private Map<UUID, int[]> rows = new HashMap<>();
+
+    /**
+     * The ranking of each column, indexed by {@code statistic * width + group}
+     */
+    private RankedTree[] trees;
+
+    /**
+     * Whether have the stored scores been loaded
+     */
+    private volatile boolean loaded;
+
+    /**
+     * Creates a new index over the specified extensions
+     *
+     * @param extensions Extensions to index
+     */
+    public LeaderboardIndex(Collection<GameExtension> extensions) {
+        this.extensions = new ArrayList<>(extensions);
+        for (GameExtension extension : this.extensions)
+            groups.put(extension.getKey(), groups.size() + 1);
+        width = groups.size() + 1;
+        trees = newTrees();
+    }
+
+    /**
+     * Returns the scores of the specified statistics, as stored in a row of this index
+     *
+     * @param stats Statistics to convert
+     * @return The row
+     */
+    public int[] toRow(GameStats stats) {
+        int[] row = new int[STATISTICS.length * width];
+        for (PlayerStatistic statistic : STATISTICS) {
+            row[statistic.ordinal() * width] = stats.get(statistic, null);
+            for (int group = 1; group < width; group++)
+                row[statistic.ordinal() * width + group] = stats.get(statistic, extensions.get(group - 1));
+        }
+        return row;
+    }
+
+    /**
+     * Loads the stored scores of all players. The rankings are built in parallel, one statistic per thread.
+     * Players who have been updated meanwhile keep their newer scores.
+     *
+     * @param stored The stored scores, as returned by {@link #toRow(GameStats)}, mapped by the player UUID
+     */
+    public void load(Map<UUID, int[]> stored) {
+        RankedTree[] built = newTrees();
+        Arrays.stream(STATISTICS).parallel().forEach(statistic -> {
+            for (int column = statistic.ordinal() * width; column < (statistic.ordinal() + 1) * width; column++)
+                for (Map.Entry<UUID, int[]> row : stored.entrySet())
+                    if (row.getValue()[column] != 0) built[column].insert(row.getKey(), row.getValue()[column]);
+        });
+        synchronized (this) {
+            for (Map.Entry<UUID, int[]> updated : rows.entrySet()) {
+                int[] old = stored.put(updated.getKey(), updated.getValue());
+                for (int column = 0; column < built.length; column++) {
+                    if (old != null && old[column] != 0) built[column].remove(updated.getKey(), old[column]);
+                    if (updated.getValue()[column] != 0) built[column].insert(updated.getKey(), updated.getValue()[column]);
+                }
+            }
+            rows = stored;
+            trees = built;
+            loaded = true;
+        }
+    }
+
+    /**
+     * Updates all the scores of the specified player
+     *
+     * @param player Player to update
+     * @param stats  The player's statistics
+     */
+    public void update(UUID player, GameStats stats) {
+        int[] row = toRow(stats);
+        synchronized (this) {
+            int[] old = rows.put(player, row);
+            for (int column = 0; column < trees.length; column++)
+                move(player, column, old == null ? 0 : old[column], row[column]);
+        }
+    }
+
+    /**
+     * Updates a single statistic of the specified player, globally and in the specified extension
+     *
+     * @param player    Player to update
+     * @param statistic Statistic which changed
+     * @param extension Extension the statistic changed in. Can be null.
+     * @param stats     The player's statistics
+     */
+    public void update(UUID player, PlayerStatistic statistic, GameExtension extension, GameStats stats) {
+        synchronized (this) {
+            int[] row = rows.get(player);
+            if (row == null) {
+                update(player, stats);
+                return;
+            }
+            int column = statistic.ordinal() * width;
+            int score = stats.get(statistic, null);
+            move(player, column, row[column], score);
+            row[column] = score;
+            Integer group = extension == null ? null : groups.get(extension.getKey());
+            if (group != null) {
+                score = stats.get(statistic, extension);
+                move(player, column + group, row[column + group], score);
+                row[column + group] = score;
+            }
+        }
+    }
+
+    /**
+     * Returns whether have the stored scores been loaded
+     *
+     * @return {@code true} if leaderboards are complete
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns a copy of the top of the leaderboard of the specified statistic. Takes O(limit + log n).
+     *
+     * @param statistic Statistic to get
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param limit     The maximum amount of players to return
+     * @return The leaderboard, highest first. Empty if the extension is not indexed.
+     */
+    public synchronized List<LeaderboardTopper> getTop(PlayerStatistic statistic, GameExtension extension, int limit) {
+        Integer group = extension == null ? Integer.valueOf(0) : groups.get(extension.getKey());
+        if (group == null) return Collections.emptyList();
+        return Collections.unmodifiableList(trees[statistic.ordinal() * width + group].top(limit));
+    }
+
+    /**
+     * Returns the position of the specified player in the leaderboard of the specified statistic
+     *
+     * @param statistic Statistic to get
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param player    Player to get for
+     * @return The position starting from 1, or -1 if the player has no score or the extension is not indexed.
+     */
+    public synchronized int getRank(PlayerStatistic statistic, GameExtension extension, UUID player) {
+        Integer group = extension == null ? Integer.valueOf(0) : groups.get(extension.getKey());
+        int[] row = rows.get(player);
+        if (group == null || row == null) return -1;
+        int column = statistic.ordinal() * width + group;
+        if (row[column] == 0) return -1; // not ranked
+        return trees[column].rank(player, row[column]) + 1;
+    }
+
+    /**
+     * Returns the amount of indexed players
+     *
+     * @return The amount of players
+     */
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    private void move(UUID player, int column, int oldScore, int score) {
+        if (oldScore == score) return;
+        if (oldScore != 0) trees[column].remove(player, oldScore);
+        if (score != 0) trees[column].insert(player, score);
+    }
+
+    private RankedTree[] newTrees() {
+        RankedTree[] trees = new RankedTree[STATISTICS.length * width];
+        for (int i = 0; i < trees.length; i++)
+            trees[i] = new RankedTree();
+        return trees;
+    }
+}
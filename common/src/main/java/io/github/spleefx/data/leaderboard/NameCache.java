@@ -0,0 +1,310 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.leaderboard;
+
+import io.github.spleefx.SpleefX;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.moltenjson.json.JsonFile;
+
+import java.io.*;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent cache of player names, used to display players in leaderboards.
+ * <p>
+ * Names are read from a concurrent map without locking. Players who are not cached are queued, and resolved in
+ * batches by the {@link NameResolver}, with a limited amount of batches running at a time. Names which were
+ * resolved longer than the configured time ago are still returned, but are resolved again in the background.
+ * Players who cannot be resolved are not requested again for {@link #RETRY_AFTER} milliseconds, and players whom
+ * the resolver skipped for {@link #SKIPPED_RETRY_AFTER} milliseconds.
+ * <p>
+ * This class is thread-safe.
+ */
+public class NameCache implements Listener {
+
+    /**
+     * The amount of players resolved in a single batch
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * The maximum amount of batches resolved at the same time
+     */
+    private static final int CONCURRENCY = 2;
+
+    /**
+     * The delay (in milliseconds) before queued players are resolved, so that more players are batched together
+     */
+    private static final long BATCH_DELAY = 50;
+
+    /**
+     * The time (in milliseconds) after which players who could not be resolved are requested again
+     */
+    private static final long RETRY_AFTER = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The time (in milliseconds) after which players whom the resolver skipped (such as when it was rate limited)
+     * are requested again
+     */
+    private static final long SKIPPED_RETRY_AFTER = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The file version
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The file the names are stored in
+     */
+    private final File file;
+
+    /**
+     * The time (in milliseconds) after which names are resolved again
+     */
+    private final long expireAfter;
+
+    /**
+     * The cached names
+     */
+    private final Map<UUID, Name> names = new ConcurrentHashMap<>();
+
+    /**
+     * The players which are queued or being resolved
+     */
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The time at which each player who could not be resolved may be requested again
+     */
+    private final Map<UUID, Long> failed = new ConcurrentHashMap<>();
+
+    /**
+     * The players waiting to be resolved
+     */
+    private final Queue<UUID> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether is a batch scheduled to be dispatched
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Limits the amount of batches resolved at the same time
+     */
+    private final Semaphore permits = new Semaphore(CONCURRENCY);
+
+    /**
+     * The executor which batches and resolves players
+     */
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(CONCURRENCY, r -> {
+        Thread thread = new Thread(r, "SpleefX Name Resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The resolver of players who are not cached
+     */
+    private volatile NameResolver resolver;
+
+    /**
+     * Creates a new name cache
+     *
+     * @param file        File to store names in
+     * @param expireAfter Time (in milliseconds) after which names are resolved again
+     * @param resolver    Resolver of players who are not cached
+     */
+    public NameCache(File file, long expireAfter, NameResolver resolver) {
+        this.file = file;
+        this.expireAfter = expireAfter;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Returns the name of the specified player. If the player is not cached, they are queued to be resolved.
+     *
+     * @param player UUID of the player
+     * @return The name, or null if it is not cached yet
+     */
+    public String getName(UUID player) {
+        Name name = names.get(player);
+        if (name == null || System.currentTimeMillis() - name.resolved > expireAfter) request(player);
+        return name == null ? null : name.name;
+    }
+
+    /**
+     * Caches the name of the specified player
+     *
+     * @param player UUID of the player
+     * @param name   The player's name
+     */
+    public void put(UUID player, String name) {
+        names.put(player, new Name(name, System.currentTimeMillis()));
+        failed.remove(player);
+    }
+
+    /**
+     * Caches the names of the specified players, unless they are already cached. Used to populate the cache
+     * in bulk from data the server already has.
+     *
+     * @param players Players to cache
+     * @return The amount of newly cached names
+     */
+    public int populate(OfflinePlayer[] players) {
+        long now = System.currentTimeMillis();
+        int added = 0;
+        for (OfflinePlayer player : players) {
+            if (player.getName() == null) continue;
+            if (names.putIfAbsent(player.getUniqueId(), new Name(player.getName(), now)) == null) added++;
+        }
+        return added;
+    }
+
+    /**
+     * Sets the resolver of players who are not cached
+     *
+     * @param resolver New resolver
+     */
+    public void setResolver(NameResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Loads the names from the file, if it exists
+     *
+     * @throws IOException If the file cannot be read
+     */
+    public void load() throws IOException {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported name cache version: " + version);
+            for (int count = in.readInt(); count > 0; count--) {
+                UUID player = new UUID(in.readLong(), in.readLong());
+                Name name = new Name(in.readUTF(), in.readLong());
+                names.putIfAbsent(player, name);
+            }
+        }
+    }
+
+    /**
+     * Writes the names to the file
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void save() throws IOException {
+        Map<UUID, Name> snapshot = new HashMap<>(names);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(snapshot.size() * 40);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Entry<UUID, Name> entry : snapshot.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeUTF(entry.getValue().name);
+                out.writeLong(entry.getValue().resolved);
+            }
+        }
+        JsonFile.writeAtomically(file, bytes.toByteArray(), true);
+    }
+
+    /**
+     * Stops resolving players
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        put(event.getPlayer().getUniqueId(), event.getPlayer().getName());
+    }
+
+    private void request(UUID player) {
+        Long retry = failed.get(player);
+        if (retry != null && System.currentTimeMillis() < retry) return;
+        if (!pending.add(player)) return;
+        queue.add(player);
+        if (scheduled.compareAndSet(false, true))
+            executor.schedule(this::dispatch, BATCH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Splits the queued players into batches, and starts resolving as many of them as there are free permits.
+     * Never blocks: once the permits run out, the remaining players are dispatched by the batches which
+     * release them.
+     */
+    private void dispatch() {
+        scheduled.set(false);
+        while (!queue.isEmpty() && permits.tryAcquire()) {
+            List<UUID> batch = new ArrayList<>(BATCH_SIZE);
+            for (UUID player; batch.size() < BATCH_SIZE && (player = queue.poll()) != null; )
+                batch.add(player);
+            if (batch.isEmpty()) {
+                permits.release();
+                return;
+            }
+            executor.execute(() -> resolve(batch));
+        }
+    }
+
+    private void resolve(List<UUID> batch) {
+        try {
+            Map<UUID, String> resolved = resolver.resolve(batch);
+            long now = System.currentTimeMillis();
+            for (UUID player : batch) {
+                String name = resolved.get(player);
+                if (name != null) put(player, name);
+                else failed.put(player, now + (resolved.containsKey(player) ? RETRY_AFTER : SKIPPED_RETRY_AFTER));
+            }
+        } catch (IOException | RuntimeException e) {
+            long retry = System.currentTimeMillis() + RETRY_AFTER;
+            batch.forEach(player -> failed.put(player, retry));
+            SpleefX.logger().warning("Failed to resolve the names of " + batch.size() + " players: " + e.getMessage());
+        } finally {
+            pending.removeAll(batch);
+            permits.release();
+            // dispatch the players which were queued while all permits were taken
+            if (!queue.isEmpty() && !executor.isShutdown() && scheduled.compareAndSet(false, true))
+                executor.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * A cached name
+     */
+    private static final class Name {
+
+        private final String name;
+
+        /**
+         * The time at which the name was resolved
+         */
+        private final long resolved;
+
+        private Name(String name, long resolved) {
+            this.name = name;
+            this.resolved = resolved;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.leaderboard;
+
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.data.leaderboard.OfflinePlayerFactory.ProfileResponse;
+import org.bukkit.Bukkit;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static io.github.spleefx.data.leaderboard.OfflinePlayerFactory.ENDPOINT;
+import static io.github.spleefx.data.leaderboard.OfflinePlayerFactory.GSON;
+
+/**
+ * Resolves the names of players which are not in the {@link NameCache}. Invoked in the background, with a batch
+ * of players at a time.
+ */
+@FunctionalInterface
+public interface NameResolver {
+
+    /**
+     * The response code of rate limited requests
+     */
+    int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Resolves names from the Mojang session server, one request per player. A player whose request fails is
+     * reported as unresolved, and the remaining players are still requested, unless the server is rate limiting
+     * (429), in which case they are skipped.
+     */
+    NameResolver MOJANG = players -> {
+        Map<UUID, String> names = new HashMap<>();
+        for (UUID player : players) {
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(String.format(ENDPOINT, player.toString().replace("-", ""))).openConnection();
+                connection.setRequestProperty("Accept", "application/json");
+                connection.setConnectTimeout(5000);
+                connection.setReadTimeout(5000);
+                int code = connection.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NO_CONTENT) { // no such profile
+                    names.put(player, null);
+                    continue;
+                }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    names.put(player, null);
+                    SpleefX.logger().warning("Failed to resolve the name of " + player + ": " + code + " " + connection.getResponseMessage());
+                    if (code == TOO_MANY_REQUESTS) break; // leave the rest for later
+                    continue;
+                }
+                try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                    ProfileResponse response = GSON.fromJson(reader, ProfileResponse.class);
+                    names.put(player, response == null ? null : response.getName());
+                }
+            } catch (IOException e) {
+                if (names.isEmpty()) throw e; // nothing was resolved, most likely the server is unreachable
+                names.put(player, null);
+                SpleefX.logger().warning("Failed to resolve the name of " + player + ": " + e.getMessage());
+                break;
+            } finally {
+                if (connection != null) connection.disconnect();
+            }
+        }
+        return names;
+    };
+
+    /**
+     * Resolves names from the players known to the server. Used on servers in offline mode.
+     */
+    NameResolver BUKKIT = players -> {
+        Map<UUID, String> names = new HashMap<>();
+        for (UUID player : players) {
+            String name = Bukkit.getOfflinePlayer(player).getName();
+            names.put(player, name);
+        }
+        return names;
+    };
+
+    /**
+     * Resolves the names of the specified players
+     *
+     * @param players Players to resolve
+     * @return The names of the players, mapped by their UUID. Players who cannot be found or whose lookup failed
+     * are mapped to null, and players who were not looked up at all (such as when rate limited) are left out.
+     * @throws IOException If none of the names can be retrieved at the moment
+     */
+    Map<UUID, String> resolve(Collection<UUID> players) throws IOException;
+
+}
@@ -0,0 +1,225 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.leaderboard;
+
+import io.github.spleefx.data.LeaderboardTopper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * An order-statistic tree of player scores, which supports inserting, removing, looking up a position and
+ * finding the rank of a player in O(log n).
+ * <p>
+ * Players are ordered by their score (highest first), then by their UUID so that ties have a stable order.
+ * The tree is a treap where every node keeps the size of its subtree.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class RankedTree {
+
+    /**
+     * The generator of node priorities
+     */
+    private final Random random = new Random();
+
+    /**
+     * The root node
+     */
+    private Node root;
+
+    /**
+     * Inserts a player into the tree. The player must not already be in the tree with the same score.
+     *
+     * @param player UUID of the player
+     * @param score  The player's score
+     */
+    public void insert(UUID player, int score) {
+        root = insert(root, new Node(player, score, random.nextInt()));
+    }
+
+    /**
+     * Removes a player from the tree. Does nothing if the player is not in the tree with the specified score.
+     *
+     * @param player UUID of the player
+     * @param score  The score the player was inserted with
+     */
+    public void remove(UUID player, int score) {
+        root = remove(root, player, score);
+    }
+
+    /**
+     * Returns the player at the specified position
+     *
+     * @param index The position, starting from 0 for the highest score
+     * @return The player at the position
+     * @throws IndexOutOfBoundsException If the position is out of bounds
+     */
+    public LeaderboardTopper get(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        Node node = root;
+        while (true) {
+            int left = size(node.left);
+            if (index < left) node = node.left;
+            else if (index == left) return new LeaderboardTopper(node.player, node.score);
+            else {
+                index -= left + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the players at the top of the tree. Takes O(limit + log n).
+     *
+     * @param limit The maximum amount of players to return
+     * @return The players, highest first
+     */
+    public List<LeaderboardTopper> top(int limit) {
+        List<LeaderboardTopper> top = new ArrayList<>(Math.max(0, Math.min(limit, size())));
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (top.size() < limit && (node != null || !path.isEmpty())) { // in-order traversal
+            if (node != null) {
+                path.push(node);
+                node = node.left;
+            } else {
+                node = path.pop();
+                top.add(new LeaderboardTopper(node.player, node.score));
+                node = node.right;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Returns the amount of players ranked above the specified player
+     *
+     * @param player UUID of the player
+     * @param score  The player's score
+     * @return The player's position, starting from 0 for the highest score
+     */
+    public int rank(UUID player, int score) {
+        int rank = 0;
+        for (Node node = root; node != null; ) {
+            int c = compare(player, score, node);
+            if (c <= 0) node = node.left;
+            else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the amount of players in the tree
+     *
+     * @return The size
+     */
+    public int size() {
+        return size(root);
+    }
+
+    private Node insert(Node tree, Node node) {
+        if (tree == null) return node;
+        if (node.priority > tree.priority) {
+            Node[] split = split(tree, node.player, node.score);
+            node.left = split[0];
+            node.right = split[1];
+            return update(node);
+        }
+        if (compare(node.player, node.score, tree) < 0) tree.left = insert(tree.left, node);
+        else tree.right = insert(tree.right, node);
+        return update(tree);
+    }
+
+    private Node remove(Node tree, UUID player, int score) {
+        if (tree == null) return null;
+        int c = compare(player, score, tree);
+        if (c == 0) return merge(tree.left, tree.right);
+        if (c < 0) tree.left = remove(tree.left, player, score);
+        else tree.right = remove(tree.right, player, score);
+        return update(tree);
+    }
+
+    /**
+     * Splits the tree into the nodes ordered before the specified player, and the rest
+     */
+    private Node[] split(Node tree, UUID player, int score) {
+        if (tree == null) return new Node[2];
+        if (compare(player, score, tree) > 0) {
+            Node[] split = split(tree.right, player, score);
+            tree.right = split[0];
+            split[0] = update(tree);
+            return split;
+        }
+        Node[] split = split(tree.left, player, score);
+        tree.left = split[1];
+        split[1] = update(tree);
+        return split;
+    }
+
+    /**
+     * Merges two trees, where all the nodes of the first are ordered before the nodes of the second
+     */
+    private Node merge(Node first, Node second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            return update(first);
+        }
+        second.left = merge(first, second.left);
+        return update(second);
+    }
+
+    private static int compare(UUID player, int score, Node node) {
+        if (score != node.score) return score > node.score ? -1 : 1;
+        return player.compareTo(node.player);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    /**
+     * Represents a ranked player
+     */
+    private static class Node {
+
+        private final UUID player;
+        private final int score;
+        private final int priority;
+        private int size = 1;
+        private Node left, right;
+
+        Node(UUID player, int score, int priority) {
+            this.player = player;
+            this.score = score;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.leaderboard;
+
+import io.github.spleefx.data.LeaderboardTopper;
+import io.github.spleefx.data.PlayerStatistic;
+import io.github.spleefx.extension.ExtensionsManager;
+import io.github.spleefx.extension.GameExtension;
+import org.moltenjson.json.JsonFile;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * Leaderboards of the statistics players gained in the last day, week or month.
+ * <p>
+ * Every player has a counter for each statistic they changed globally and in each extension. A counter holds the
+ * amount gained in each of the last {@link #RETENTION} days, in a ring buffer indexed by the epoch day. The sum of
+ * each {@link Window} is kept along with it, and ranked in a {@link RankedTree}, so statistics are added in
+ * O(log n) and leaderboards never have to be sorted. When the day changes, all sums are recomputed once, and
+ * players with no statistics in the retained days are dropped.
+ * <p>
+ * Days follow the time zone of the server. This class is thread-safe.
+ */
+public class RollingLeaderboards {
+
+    /**
+     * The amount of days retained, which is the length of the longest window
+     */
+    private static final int RETENTION = 30;
+
+    /**
+     * The file version
+     */
+    private static final int VERSION = 1;
+
+    private static final PlayerStatistic[] STATISTICS = PlayerStatistic.values;
+
+    private static final Window[] WINDOWS = Window.values();
+
+    /**
+     * The file the counters are stored in
+     */
+    private final File file;
+
+    /**
+     * The counters of each player
+     */
+    private final Map<UUID, History> players = new HashMap<>();
+
+    /**
+     * The ranking of each column in each window, mapped by the column (see {@link #column(PlayerStatistic, GameExtension)})
+     */
+    private final Map<Integer, RankedTree[]> trees = new HashMap<>();
+
+    /**
+     * The current epoch day
+     */
+    private long today;
+
+    /**
+     * The time (in milliseconds) at which the current day ends
+     */
+    private long tomorrow;
+
+    /**
+     * Creates new leaderboards stored in the specified file
+     *
+     * @param file File to store in
+     */
+    public RollingLeaderboards(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Adds the specified amount to the statistic of the player, globally and in the specified extension
+     *
+     * @param player    Player to add for
+     * @param statistic Statistic to add to
+     * @param extension Extension to add in. Can be null.
+     * @param addition  Value to add
+     */
+    public synchronized void add(UUID player, PlayerStatistic statistic, GameExtension extension, int addition) {
+        ensureDay();
+        History history = players.computeIfAbsent(player, k -> new History());
+        history.advance(today);
+        add(player, history, column(statistic, null), addition);
+        if (extension != null)
+            add(player, history, column(statistic, extension), addition);
+    }
+
+    /**
+     * Returns a copy of the top of the leaderboard of the specified statistic. Takes O(limit + log n).
+     *
+     * @param window    Window to get
+     * @param statistic Statistic to get
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param limit     The maximum amount of players to return
+     * @return The leaderboard, highest first
+     */
+    public synchronized List<LeaderboardTopper> getTop(Window window, PlayerStatistic statistic, GameExtension extension, int limit) {
+        ensureDay();
+        RankedTree[] ranked = trees.get(column(statistic, extension));
+        return ranked == null ? Collections.emptyList() : Collections.unmodifiableList(ranked[window.ordinal()].top(limit));
+    }
+
+    /**
+     * Returns the amount of the statistic the player gained in the specified window
+     *
+     * @param window    Window to get
+     * @param statistic Statistic to get
+     * @param extension Extension to get for. Null to get the global statistic
+     * @param player    Player to get for
+     * @return The amount gained
+     */
+    public synchronized int get(Window window, PlayerStatistic statistic, GameExtension extension, UUID player) {
+        ensureDay();
+        History history = players.get(player);
+        Counter counter = history == null ? null : history.counters.get(column(statistic, extension));
+        return counter == null ? 0 : counter.sums[window.ordinal()];
+    }
+
+    /**
+     * Returns the position of the player in the leaderboard of the specified statistic
+     *
+     * @param window    Window to get
+     * @param statistic Statistic to get
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param player    Player to get for
+     * @return The position starting from 1, or -1 if the player has not gained the statistic in the window
+     */
+    public synchronized int getRank(Window window, PlayerStatistic statistic, GameExtension extension, UUID player) {
+        ensureDay();
+        int column = column(statistic, extension);
+        History history = players.get(player);
+        Counter counter = history == null ? null : history.counters.get(column);
+        if (counter == null || counter.sums[window.ordinal()] == 0) return -1;
+        return trees.get(column)[window.ordinal()].rank(player, counter.sums[window.ordinal()]) + 1;
+    }
+
+    /**
+     * Loads the counters from the file, if it exists. Nothing is loaded if the file is corrupt.
+     *
+     * @throws IOException If the file cannot be read, or is corrupt
+     */
+    public synchronized void load() throws IOException {
+        if (!file.exists()) return;
+        long current = LocalDate.now().toEpochDay();
+        Map<UUID, History> loaded = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported leaderboards file version: " + version);
+            for (int count = in.readInt(); count > 0; count--) {
+                UUID player = new UUID(in.readLong(), in.readLong());
+                History history = new History();
+                history.day = in.readLong();
+                for (int columns = in.readUnsignedShort(); columns > 0; columns--) {
+                    int statistic = in.readUnsignedByte();
+                    if (statistic >= STATISTICS.length) throw new IOException("Invalid statistic " + statistic + " of player " + player);
+                    String extension = in.readUTF();
+                    Counter counter = new Counter();
+                    int days = in.readUnsignedByte();
+                    if (days > RETENTION) throw new IOException("Invalid amount of days " + days + " of player " + player);
+                    for (; days > 0; days--) {
+                        int slot = in.readUnsignedByte();
+                        if (slot >= RETENTION) throw new IOException("Invalid day slot " + slot + " of player " + player);
+                        counter.days[slot] = in.readInt();
+                    }
+                    history.counters.put(column(statistic, extension.isEmpty() ? -1 : ExtensionsManager.getId(extension)), counter);
+                }
+                if (history.day > current - RETENTION) loaded.put(player, history);
+            }
+        }
+        players.putAll(loaded);
+        today = tomorrow = 0; // rebuild the rankings
+        ensureDay();
+    }
+
+    /**
+     * Writes the counters to the file
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            synchronized (this) {
+                out.writeInt(VERSION);
+                out.writeInt(players.size());
+                for (Entry<UUID, History> entry : players.entrySet()) {
+                    History history = entry.getValue();
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    out.writeLong(history.day);
+                    out.writeShort(history.counters.size());
+                    for (Entry<Integer, Counter> counter : history.counters.entrySet()) {
+                        int extension = counter.getKey() / STATISTICS.length - 1;
+                        out.writeByte(counter.getKey() % STATISTICS.length);
+                        out.writeUTF(extension == -1 ? "" : ExtensionsManager.getKeyById(extension));
+                        int[] days = counter.getValue().days;
+                        int stored = 0;
+                        for (int value : days)
+                            if (value != 0) stored++;
+                        out.writeByte(stored);
+                        for (int slot = 0; slot < days.length; slot++) {
+                            if (days[slot] == 0) continue;
+                            out.writeByte(slot);
+                            out.writeInt(days[slot]);
+                        }
+                    }
+                }
+            }
+        }
+        JsonFile.writeAtomically(file, bytes.toByteArray(), true);
+    }
+
+    private void add(UUID player, History history, int column, int addition) {
+        Counter counter = history.counters.computeIfAbsent(column, k -> new Counter());
+        counter.days[slot(today)] += addition;
+        RankedTree[] ranked = trees.computeIfAbsent(column, k -> newTrees());
+        for (Window window : WINDOWS) {
+            int sum = counter.sums[window.ordinal()];
+            if (sum != 0) ranked[window.ordinal()].remove(player, sum);
+            counter.sums[window.ordinal()] = sum += addition;
+            if (sum != 0) ranked[window.ordinal()].insert(player, sum);
+        }
+    }
+
+    /**
+     * Starts a new day if the current one has ended, by recomputing the sums of all players and rebuilding
+     * the rankings
+     */
+    private void ensureDay() {
+        if (System.currentTimeMillis() < tomorrow) return;
+        LocalDate date = LocalDate.now();
+        tomorrow = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (date.toEpochDay() == today) return;
+        today = date.toEpochDay();
+        trees.clear();
+        for (Iterator<Entry<UUID, History>> iterator = players.entrySet().iterator(); iterator.hasNext(); ) {
+            Entry<UUID, History> entry = iterator.next();
+            History history = entry.getValue();
+            if (history.day <= today - RETENTION) {
+                iterator.remove();
+                continue;
+            }
+            for (Entry<Integer, Counter> column : history.counters.entrySet()) {
+                Counter counter = column.getValue();
+                RankedTree[] ranked = trees.computeIfAbsent(column.getKey(), k -> newTrees());
+                for (Window window : WINDOWS) {
+                    int sum = 0;
+                    for (long day = Math.max(today - window.days, history.day - RETENTION) + 1; day <= history.day; day++)
+                        sum += counter.days[slot(day)];
+                    counter.sums[window.ordinal()] = sum;
+                    if (sum != 0) ranked[window.ordinal()].insert(entry.getKey(), sum);
+                }
+            }
+        }
+    }
+
+    private static RankedTree[] newTrees() {
+        RankedTree[] trees = new RankedTree[WINDOWS.length];
+        for (int i = 0; i < trees.length; i++)
+            trees[i] = new RankedTree();
+        return trees;
+    }
+
+    private static int slot(long day) {
+        return (int) (day % RETENTION);
+    }
+
+    private static int column(PlayerStatistic statistic, GameExtension extension) {
+        return column(statistic.ordinal(), extension == null ? -1 : ExtensionsManager.getId(extension.getKey()));
+    }
+
+    private static int column(int statistic, int extension) {
+        return (extension + 1) * STATISTICS.length + statistic;
+    }
+
+    /**
+     * Represents a window of leaderboards
+     */
+    public enum Window {
+
+        /**
+         * The current day
+         */
+        DAILY(1),
+
+        /**
+         * The current day and the 6 days before it
+         */
+        WEEKLY(7),
+
+        /**
+         * The current day and the 29 days before it
+         */
+        MONTHLY(RETENTION);
+
+        /**
+         * The amount of days in the window
+         */
+        private final int days;
+
+        Window(int days) {
+            this.days = days;
+        }
+
+        /**
+         * Returns the window with the specified name, ignoring case
+         *
+         * @param name Name of the window
+         * @return The window, or null if there is no window with the name
+         */
+        public static Window from(String name) {
+            for (Window window : WINDOWS)
+                if (window.name().equalsIgnoreCase(name)) return window;
+            return null;
+        }
+    }
+
+    /**
+     * The counters of a single player
+     */
+    private static final class History {
+
+        /**
+         * The epoch day of the newest bucket in the counters
+         */
+        private long day;
+
+        /**
+         * The counter of each column
+         */
+        private final Map<Integer, Counter> counters = new HashMap<>();
+
+        /**
+         * Moves the newest bucket to the specified day, clearing the buckets of the days in between
+         *
+         * @param today The current epoch day
+         */
+        private void advance(long today) {
+            if (day >= today) return;
+            for (Counter counter : counters.values())
+                if (today - day >= RETENTION)
+                    Arrays.fill(counter.days, 0);
+                else
+                    for (long cleared = day + 1; cleared <= today; cleared++)
+                        counter.days[slot(cleared)] = 0;
+            day = today;
+        }
+    }
+
+    /**
+     * The counter of a statistic
+     */
+    private static final class Counter {
+
+        /**
+         * The amount gained in each retained day, indexed by {@link #slot(long)}
+         */
+        private final int[] days = new int[RETENTION];
+
+        /**
+         * The sum of each window, indexed by the window ordinal
+         */
+        private final int[] sums = new int[WINDOWS.length];
+    }
+}
@@ -15,39 +15,85 @@
  */
 package io.github.spleefx.data.papi;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import io.github.spleefx.SpleefX;
-import io.github.spleefx.data.GameStats;
 import io.github.spleefx.data.LeaderboardTopper;
 import io.github.spleefx.data.PlayerStatistic;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards.Window;
 import io.github.spleefx.extension.ExtensionsManager;
 import io.github.spleefx.extension.GameExtension;
 import io.github.spleefx.util.game.Chat;
 import io.github.spleefx.util.plugin.PluginSettings;
-import lombok.AllArgsConstructor;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
 
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * PlaceholderAPI expansion for SpleefX
+ * PlaceholderAPI expansion for SpleefX.
+ * <p>
+ * Each identifier is parsed once into a {@link Resolver}, which is cached. Statistics can be requested for all
+ * time, or for a {@link Window} (for example {@code wins_weekly_spleef} or {@code wins_daily_1:spleef:name}), and
+ * the position of the player is requested with {@code rank_<statistic>}. Leaderboard placeholders are served
+ * from a read-only snapshot of the top players, which is refreshed at most once every {@link #SNAPSHOT_INTERVAL}
+ * milliseconds.
+ * <p>
+ * This class is thread-safe.
  */
-@AllArgsConstructor
 public class SpleefXPAPI extends PlaceholderExpansion {
 
-    private static final List<String> INTS = new ArrayList<>(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"));
+    /**
+     * The maximum amount of compiled identifiers which are cached
+     */
+    private static final int MAXIMUM_IDENTIFIERS = 1024;
+
+    /**
+     * The interval (in milliseconds) at which leaderboard snapshots are refreshed
+     */
+    private static final long SNAPSHOT_INTERVAL = 1000;
 
     /**
-     * The number formatter
+     * The minimum amount of players in leaderboard snapshots
      */
-    private static final NumberFormat FORMAT = NumberFormat.getInstance(Locale.US);
+    private static final int MINIMUM_SNAPSHOT_SIZE = 10;
+
+    /**
+     * The pattern of leaderboard identifiers, for example {@code wins_1:spleef:name}
+     */
+    private static final Pattern LEADERBOARD = Pattern.compile("(.+)_(\\d{1,9}):([^:]*):(.+)");
+
+    /**
+     * The number formatter. Number formats are not thread-safe, so each thread has its own.
+     */
+    private static final ThreadLocal<NumberFormat> FORMAT = ThreadLocal.withInitial(() -> NumberFormat.getInstance(Locale.US));
 
     /**
      * The SpleefX plugin
      */
-    private SpleefX plugin;
+    private final SpleefX plugin;
+
+    /**
+     * The compiled identifiers
+     */
+    private final LoadingCache<String, Resolver> resolvers = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_IDENTIFIERS)
+            .build(CacheLoader.from(this::compile));
+
+    /**
+     * The leaderboard snapshots, mapped by the statistic and the extension key
+     */
+    private final Map<String, Leaderboard> leaderboards = new ConcurrentHashMap<>();
+
+    public SpleefXPAPI(SpleefX plugin) {
+        this.plugin = plugin;
+    }
 
     @Override public String getIdentifier() {
         return plugin.getDescription().getName().toLowerCase();
@@ -79,77 +125,113 @@ public class SpleefXPAPI extends PlaceholderExpansion {
      */
     @Override
     public String onRequest(OfflinePlayer player, String identifier) {
-        if (INTS.stream().anyMatch(identifier::contains)) {
-            String[] requested = identifier.split(":");
-            String[] split = requested[0].split("_");
-            int pos = Integer.parseInt(split[split.length - 1]);
-            GameExtension extension = ExtensionsManager.getByKey(requested[1]);
-            String request = requested[2];
-            PlayerStatistic stat = PlayerStatistic.from(requested[0].substring(0, requested[0].lastIndexOf("_")));
-            LeaderboardTopper topper;
-            List<LeaderboardTopper> toppers = plugin.getDataProvider().getTopPlayers(stat, extension);
-            try {
-                topper = toppers.get(pos - 1);
-            } catch (IndexOutOfBoundsException e) {
-                topper = toppers.get(toppers.size() - 1);
+        return resolvers.getUnchecked(identifier).resolve(player);
+    }
+
+    /**
+     * Parses the specified identifier
+     *
+     * @param identifier Identifier to parse
+     * @return The resolver of the identifier
+     */
+    private Resolver compile(String identifier) {
+        Matcher matcher = LEADERBOARD.matcher(identifier);
+        if (matcher.matches()) {
+            Target target = Target.parse(matcher.group(1));
+            if (target == null || target.extension != null) {
+                String invalid = "Invalid statistic: " + matcher.group(1);
+                return player -> invalid;
             }
-            CompletableFuture<OfflinePlayer> playerFuture = topper.getPlayer();
-            if (!playerFuture.isDone())
-                return "Player not cached yet";
-            OfflinePlayer lbPlayer = playerFuture.join();
-            switch (request) {
-                case "name":
-                    return lbPlayer.getName();
-                case "pos":
-                    return format(pos);
-                case "stat":
-                case "count":
-                case "number":
-                case "score":
-                case "statistic":
-                    return format(topper.getCount());
-                case "format": {
+            String extension = matcher.group(3);
+            Leaderboard leaderboard = leaderboards.computeIfAbsent(target.statistic.name() + ":" + target.window + ":" + extension,
+                    k -> new Leaderboard(target.statistic, target.window, extension));
+            return compile(leaderboard, Integer.parseInt(matcher.group(2)), matcher.group(4));
+        }
+        boolean rank = identifier.toLowerCase().startsWith("rank_");
+        Target target = Target.parse(rank ? identifier.substring("rank_".length()) : identifier);
+        String zero = format(0);
+        if (target == null) return player -> zero;
+        PlayerStatistic statistic = target.statistic;
+        Window window = target.window;
+        String extensionKey = target.extension;
+        if (rank)
+            return player -> {
+                if (player == null) return "";
+                GameExtension extension = extension(extensionKey);
+                int position;
+                if (window == null)
+                    position = plugin.getDataProvider().getRank(statistic, extension, player);
+                else {
+                    RollingLeaderboards rolling = plugin.getRollingLeaderboards();
+                    position = rolling == null ? -1 : rolling.getRank(window, statistic, extension, player.getUniqueId());
+                }
+                return position == -1 ? "" : format(position);
+            };
+        if (window == null)
+            return player -> player == null ? zero : format(plugin.getDataProvider().getStatistics(player).get(statistic, extension(extensionKey)));
+        return player -> {
+            RollingLeaderboards rolling = plugin.getRollingLeaderboards();
+            return player == null || rolling == null ? zero : format(rolling.get(window, statistic, extension(extensionKey), player.getUniqueId()));
+        };
+    }
+
+    /**
+     * Looks up the specified extension. Extensions are looked up whenever a placeholder is evaluated rather than
+     * when it is compiled, as they can be loaded or reloaded after that.
+     *
+     * @param key Key of the extension. Can be null.
+     * @return The extension, or null for statistics of all extensions
+     */
+    private static GameExtension extension(String key) {
+        return key == null ? null : ExtensionsManager.getByKey(key);
+    }
+
+    /**
+     * Parses the specified leaderboard request
+     *
+     * @param leaderboard Leaderboard to request from
+     * @param pos         The requested position, starting from 1
+     * @param request     The requested value
+     * @return The resolver of the request
+     */
+    private Resolver compile(Leaderboard leaderboard, int pos, String request) {
+        leaderboard.require(pos);
+        String position = format(pos);
+        switch (request) {
+            case "name":
+                return player -> {
+                    LeaderboardTopper topper = leaderboard.get(pos);
+                    if (topper == null) return "";
+                    String name = topper.getName();
+                    return name == null ? "Player not cached yet" : name;
+                };
+            case "pos":
+                return player -> position;
+            case "stat":
+            case "count":
+            case "number":
+            case "score":
+            case "statistic":
+                return player -> {
+                    LeaderboardTopper topper = leaderboard.get(pos);
+                    return topper == null ? "" : format(topper.getCount());
+                };
+            case "format":
+                return player -> {
+                    LeaderboardTopper topper = leaderboard.get(pos);
+                    if (topper == null) return "";
+                    String name = topper.getName();
+                    if (name == null)
+                        return "Player not cached yet";
                     String format = PluginSettings.LEADERBOARDS_FORMAT.get();
                     return Chat.colorize(format)
-                            .replace("{player}", Objects.requireNonNull(lbPlayer.getName(), "Player name is null!"))
-                            .replace("{pos}", format(pos))
+                            .replace("{player}", name)
+                            .replace("{pos}", position)
                             .replace("{score}", format(topper.getCount()));
-                }
-                default:
-                    return "Invalid request: " + request;
-            }
-        }
-        if (player == null) return format(0);
-        GameStats stats = plugin.getDataProvider().getStatistics(player);
-        switch (identifier.toLowerCase()) {
-            case "games_played":
-                return format(stats.get(PlayerStatistic.GAMES_PLAYED, null));
-            case "wins":
-                return format(stats.get(PlayerStatistic.WINS, null));
-            case "losses":
-                return format(stats.get(PlayerStatistic.LOSSES, null));
-            case "draws":
-                return format(stats.get(PlayerStatistic.DRAWS, null));
-            case "blocks_mined":
-                return format(stats.get(PlayerStatistic.BLOCKS_MINED, null));
+                };
             default:
-                String[] split = identifier.split("_");
-                String key = split[split.length - 1];
-                GameExtension mode = ExtensionsManager.getByKey(key);
-                switch (identifier.substring(0, identifier.indexOf(split[split.length - 1]) - 1).toLowerCase()) {
-                    case "games_played":
-                        return format(stats.get(PlayerStatistic.GAMES_PLAYED, mode));
-                    case "wins":
-                        return format(stats.get(PlayerStatistic.WINS, mode));
-                    case "losses":
-                        return format(stats.get(PlayerStatistic.LOSSES, mode));
-                    case "draws":
-                        return format(stats.get(PlayerStatistic.DRAWS, mode));
-                    case "blocks_mined":
-                        return format(stats.get(PlayerStatistic.BLOCKS_MINED, mode));
-                    default:
-                        return format(0);
-                }
+                String invalid = "Invalid request: " + request;
+                return player -> invalid;
         }
     }
 
@@ -160,7 +242,136 @@ public class SpleefXPAPI extends PlaceholderExpansion {
      * @return The formatted string
      */
     private static String format(int number) {
-        return FORMAT.format(number);
+        return FORMAT.get().format(number);
+    }
+
+    /**
+     * A compiled placeholder identifier
+     */
+    @FunctionalInterface
+    private interface Resolver {
+
+        /**
+         * Returns the value of the placeholder
+         *
+         * @param player Player to request for. Can be null.
+         * @return The value
+         */
+        String resolve(OfflinePlayer player);
+
+    }
+
+    /**
+     * A statistic requested by an identifier, in the form {@code <statistic>[_<window>][_<extension>]}
+     */
+    private static final class Target {
+
+        private final PlayerStatistic statistic;
+        private final Window window;
+        private final String extension;
+
+        private Target(PlayerStatistic statistic, Window window, String extension) {
+            this.statistic = statistic;
+            this.window = window;
+            this.extension = extension;
+        }
+
+        /**
+         * Parses the specified statistic
+         *
+         * @param value Value to parse
+         * @return The parsed statistic, or null if it does not start with a valid statistic
+         */
+        private static Target parse(String value) {
+            for (PlayerStatistic statistic : PlayerStatistic.values) {
+                String name = statistic.name();
+                if (!value.regionMatches(true, 0, name, 0, name.length())) continue;
+                if (value.length() == name.length()) return new Target(statistic, null, null);
+                if (value.charAt(name.length()) != '_') continue;
+                String rest = value.substring(name.length() + 1);
+                int split = rest.indexOf('_');
+                Window window = Window.from(split == -1 ? rest : rest.substring(0, split));
+                if (window == null) return new Target(statistic, null, rest);
+                return new Target(statistic, window, split == -1 ? null : rest.substring(split + 1));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A periodically refreshed snapshot of the top players of a leaderboard
+     */
+    private final class Leaderboard {
+
+        private final PlayerStatistic statistic;
+        private final Window window;
+
+        /**
+         * The key of the extension, which is looked up on every refresh
+         */
+        private final String extension;
+
+        /**
+         * The amount of players to include in snapshots, which is the highest requested position
+         */
+        private volatile int size = MINIMUM_SNAPSHOT_SIZE;
+
+        /**
+         * The current snapshot
+         */
+        private volatile List<LeaderboardTopper> snapshot = Collections.emptyList();
+
+        /**
+         * The time at which the current snapshot was taken, or 0 if none was taken yet
+         */
+        private volatile long taken;
+
+        private Leaderboard(PlayerStatistic statistic, Window window, String extension) {
+            this.statistic = statistic;
+            this.window = window;
+            this.extension = extension;
+        }
+
+        /**
+         * Makes snapshots include the specified position
+         *
+         * @param pos Position to include
+         */
+        private synchronized void require(int pos) {
+            if (pos > size) {
+                size = pos;
+                taken = 0;
+            }
+        }
+
+        /**
+         * Returns the player at the specified position. If the position is outside the leaderboard, the last
+         * player is returned.
+         *
+         * @param pos The position, starting from 1
+         * @return The player, or null if the leaderboard is empty
+         */
+        private LeaderboardTopper get(int pos) {
+            if (System.currentTimeMillis() - taken >= SNAPSHOT_INTERVAL) refresh();
+            List<LeaderboardTopper> top = snapshot;
+            if (top.isEmpty()) return null;
+            return pos < 1 || pos > top.size() ? top.get(top.size() - 1) : top.get(pos - 1);
+        }
+
+        private synchronized void refresh() {
+            long now = System.currentTimeMillis();
+            if (now - taken < SNAPSHOT_INTERVAL) return; // refreshed by another thread meanwhile
+            GameExtension extension = extension(this.extension);
+            if (window == null)
+                snapshot = plugin.getDataProvider().getTopPlayers(statistic, extension, size);
+            else {
+                RollingLeaderboards rolling = plugin.getRollingLeaderboards();
+                if (rolling == null)
+                    throw new IllegalStateException("Leaderboards are not enabled! Enable them in the config.yml.");
+                snapshot = rolling.getTop(window, statistic, extension, size);
+            }
+            taken = now;
+        }
     }
 
 }
@@ -17,10 +17,9 @@ package io.github.spleefx.data.provider;
 
 import com.google.common.base.Stopwatch;
 import io.github.spleefx.SpleefX;
-import io.github.spleefx.data.DataProvider;
-import io.github.spleefx.data.GameStats;
-import io.github.spleefx.data.LeaderboardTopper;
-import io.github.spleefx.data.PlayerStatistic;
+import io.github.spleefx.data.*;
+import io.github.spleefx.data.leaderboard.LeaderboardIndex;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards;
 import io.github.spleefx.extension.ExtensionsManager;
 import io.github.spleefx.extension.GameExtension;
 import io.github.spleefx.util.PlaceholderUtil;
@@ -28,36 +27,45 @@ import io.github.spleefx.util.io.FileManager;
 import io.github.spleefx.util.plugin.PluginSettings;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
-import org.moltenjson.configuration.tree.TreeConfiguration;
-import org.moltenjson.configuration.tree.TreeConfigurationBuilder;
 import org.moltenjson.configuration.tree.strategy.TreeNamingStrategy;
-import org.moltenjson.utils.Gsons;
+import org.moltenjson.json.JsonFile;
+import org.moltenjson.json.WriteJournal;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
-
-import static java.util.Collections.reverseOrder;
+import java.util.function.Function;
+import java.util.logging.Level;
 
 public class FlatFileProvider implements DataProvider {
 
     private static final TreeNamingStrategy<OfflinePlayer> NAMING_STRATEGY = new PlayerNamingStrategy();
 
-    private static final Map<PlayerStatistic, Set<LeaderboardTopper>> TOP = new HashMap<>();
+    private final File directory = new File(SpleefX.getPlugin().getDataFolder(), PluginSettings.STATISTICS_DIRECTORY.get());
 
-    private static final Map<PlayerStatistic, Map<GameExtension, Set<LeaderboardTopper>>> TOP_BY_EXTENSION = new HashMap<>();
+    /**
+     * The format of the player files
+     */
+    private final StatisticsFormat format = PluginSettings.STATISTICS_FILE_FORMAT.get();
 
-    private TreeConfiguration<OfflinePlayer, GameStats> statisticsTree =
-            new TreeConfigurationBuilder<OfflinePlayer, GameStats>(new File(SpleefX.getPlugin().getDataFolder(), PluginSettings.STATISTICS_DIRECTORY.get()), NAMING_STRATEGY)
-                    .setLazy(false)
-                    .setDataMap(new HashMap<>())
-                    .setGson(Gsons.DEFAULT)
-                    .ignoreInvalidFiles(true)
-                    .build();
+    /**
+     * The writer which saves changed entries in the background
+     */
+    private final StatisticsWriter writer = new StatisticsWriter(new File(directory, WriteJournal.FILE_NAME));
+
+    /**
+     * The statistics of online and recently seen players
+     */
+    private final StatisticsCache cache = new StatisticsCache(this::load);
+
+    /**
+     * The leaderboard scores of all players. Null if leaderboards are disabled.
+     */
+    private LeaderboardIndex leaderboards;
 
     /**
      * Returns whether the player has an entry in the storage or not
@@ -67,7 +75,7 @@ public class FlatFileProvider implements DataProvider {
      */
     @Override
     public boolean hasEntry(OfflinePlayer player) {
-        return statisticsTree.hasData(player);
+        return cache.getIfLoaded(player) != null || fileOf(player).exists();
     }
 
     /**
@@ -77,12 +85,7 @@ public class FlatFileProvider implements DataProvider {
      */
     @Override
     public void add(OfflinePlayer player) {
-        try {
-            statisticsTree.createIfAbsent(player, new GameStats(), "json");
-        } catch (IOException e) {
-            SpleefX.logger().severe("Failed to create statistics for player " + player.getName() + ". Error:");
-            e.printStackTrace();
-        }
+        getStatistics(player);
     }
 
     /**
@@ -95,7 +98,7 @@ public class FlatFileProvider implements DataProvider {
      */
     @Override
     public int get(PlayerStatistic stat, OfflinePlayer player, GameExtension mode) {
-        return statisticsTree.lazyLoad(player, GameStats.class, "json").get(stat, mode);
+        return getStatistics(player).get(stat, mode);
     }
 
     /**
@@ -108,25 +111,40 @@ public class FlatFileProvider implements DataProvider {
      */
     @Override
     public void add(PlayerStatistic stat, OfflinePlayer player, GameExtension mode, int addition) {
-        add(player);
-        statisticsTree.get(player).add(stat, mode, addition);
+        GameStats stats = modifyStatistics(player, s -> s.add(stat, mode, addition));
+        if (leaderboards != null) leaderboards.update(player.getUniqueId(), stat, mode, stats);
+        RollingLeaderboards rolling = SpleefX.getPlugin().getRollingLeaderboards();
+        if (rolling != null) rolling.add(player.getUniqueId(), stat, mode, addition);
     }
 
     /**
-     * Saves all the entries of the data
+     * Saves all the entries which have changed since they were last saved. Entries are serialized
+     * immediately, and written to their files in the background.
      *
      * @param plugin Plugin instance
      */
     @Override
     public void saveEntries(SpleefX plugin) {
-        try {
-            statisticsTree.lazySave();
-        } catch (IOException e) {
-            SpleefX.logger().severe("Failed to save player statistics. Error:");
-            e.printStackTrace();
+        for (Entry<OfflinePlayer, GameStats> entry : cache.getLoaded().entrySet()) {
+            GameStats stats = entry.getValue();
+            if (!stats.isDirty()) continue;
+            stats.clearDirty();
+            writer.write(fileOf(entry.getKey()), format.encode(stats));
+            if (leaderboards != null) leaderboards.update(entry.getKey().getUniqueId(), stats);
         }
     }
 
+    /**
+     * Saves all the changed entries, and waits (up to the configured timeout) for them to be written
+     *
+     * @param plugin Plugin instance
+     */
+    @Override
+    public void close(SpleefX plugin) {
+        saveEntries(plugin);
+        writer.shutdown(((Number) PluginSettings.STATISTICS_SHUTDOWN_TIMEOUT.get()).longValue(), TimeUnit.SECONDS);
+    }
+
     /**
      * Sets the player statistics entirely. Useful for converting between different {@link DataProvider}
      * implementations.
@@ -135,13 +153,12 @@ public class FlatFileProvider implements DataProvider {
      * @param stats  Stats to override with
      */
     @Override
-    public void setStatistics(OfflinePlayer player, GameStats stats) {
-        try {
-            statisticsTree.create(player, stats, "json");
-        } catch (IOException e) {
-            SpleefX.logger().severe("Failed to convert player statistics. Error:");
-            e.printStackTrace();
-        }
+    public void setStatistics(OfflinePlayer player, GameStats stats) throws IOException {
+        File file = fileOf(player);
+        file.getParentFile().mkdirs();
+        JsonFile.writeAtomically(file, format.encode(stats), true);
+        cache.replace(player, stats);
+        if (leaderboards != null) leaderboards.update(player.getUniqueId(), stats);
     }
 
     /**
@@ -151,60 +168,88 @@ public class FlatFileProvider implements DataProvider {
      */
     @Override
     public void createRequiredFiles(FileManager<SpleefX> fileManager) {
+        SpleefX plugin = fileManager.getPlugin();
+        try {
+            int recovered = WriteJournal.replay(new File(directory, WriteJournal.FILE_NAME));
+            if (recovered > 0)
+                SpleefX.logger().info("Recovered " + recovered + " player files from an interrupted save.");
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.SEVERE, "Failed to recover player files from an interrupted save", e);
+        }
+        moveToShards();
+        File[] shards = directory.listFiles(FlatFileProvider::isShard);
+        for (StatisticsFormat other : StatisticsFormat.values()) {
+            int converted = 0;
+            if (shards != null)
+                for (File shard : shards)
+                    converted += StatisticsFormat.convert(shard, other, format);
+            if (converted > 0)
+                SpleefX.logger().info("Converted " + converted + " player files from " + other.name() + " to " + format.name() + ".");
+        }
+        Bukkit.getPluginManager().registerEvents(cache, plugin);
+        Bukkit.getOnlinePlayers().forEach(cache::get); // players who are already online, such as after a reload
+        Bukkit.getScheduler().runTaskTimer(plugin, cache::evict, 1200, 1200);
         if (PlaceholderUtil.PAPI && (boolean) PluginSettings.LEADERBOARDS.get()) {
-            AtomicBoolean firstTime = new AtomicBoolean(true);
-            SpleefX.logger().info("Leaderboards are enabled. Loading player data after 5 seconds to allow it to be sorted beforehand. This may take some time depending on the amount of data it has to process.");
-            Bukkit.getScheduler().runTaskTimer(fileManager.getPlugin(), () -> {
+            leaderboards = new LeaderboardIndex(ExtensionsManager.EXTENSIONS.values());
+            SpleefX.logger().info("Leaderboards are enabled. Indexing player data in the background. This may take some time depending on the amount of data it has to process.");
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
                 Stopwatch timer = Stopwatch.createStarted();
-                Map<OfflinePlayer, GameStats> stats = new HashMap<>(statisticsTree.isDataLoaded() ? statisticsTree.getData() : statisticsTree.load(GameStats.class));
-                for (PlayerStatistic ps : PlayerStatistic.values) {
-                    if (firstTime.get())
-                        SpleefX.logger().info("Sorting leaderboards for statistic " + ps);
-
-                    List<Entry<OfflinePlayer, GameStats>> toSort = new ArrayList<>(stats.entrySet());
-                    toSort.removeIf(e -> e.getKey() == null || e.getValue() == null);
-                    toSort.sort(reverseOrder(Comparator.comparingInt(e -> e.getValue().get(ps, null))));
-                    List<LeaderboardTopper> top = toSort.stream().map(player -> new LeaderboardTopper(player.getKey().getUniqueId(), player.getValue().get(ps, null))).collect(Collectors.toList());
-                    TOP.put(ps, new HashSet<>(top));
-                    Map<GameExtension, Set<LeaderboardTopper>> tops = new HashMap<>();
-                    for (GameExtension extension : ExtensionsManager.EXTENSIONS.values()) {
-                        if (firstTime.get())
-                            SpleefX.logger().info("Sorting leaderboards for extension " + extension.getKey() + " in statistic " + ps);
-                        List<LeaderboardTopper> topEx = stats.entrySet().stream()
-                                .sorted(reverseOrder(Comparator.comparingInt(e -> e.getValue().get(ps, extension))))
-                                .map(e -> new LeaderboardTopper(e.getKey().getUniqueId(), e.getValue().get(ps, extension)))
-                                .collect(Collectors.toList());
-                        tops.put(extension, new LinkedHashSet<>(topEx));
+                Map<UUID, int[]> stored = new HashMap<>();
+                for (File file : listPlayerFiles(directory, format)) {
+                    try {
+                        OfflinePlayer player = NAMING_STRATEGY.fromName(file.getName().substring(0, file.getName().length() - format.getExtension().length()));
+                        GameStats stats = read(file);
+                        if (player != null && stats != null) stored.put(player.getUniqueId(), leaderboards.toRow(stats));
+                    } catch (IllegalArgumentException ignored) { // not a player file
                     }
-                    TOP_BY_EXTENSION.put(ps, tops);
                 }
-                SpleefX.logger().info("Finished loading and sorting all leaderboards in " + timer.elapsed(TimeUnit.MILLISECONDS) + " milliseconds.");
-                firstTime.set(false);
-                timer.stop();
-            }, 0, 600 * 20);
+                leaderboards.load(stored);
+                SpleefX.logger().info("Finished indexing the leaderboards of " + leaderboards.size() + " players in " + timer.elapsed(TimeUnit.MILLISECONDS) + " milliseconds.");
+            });
         }
     }
 
     /**
-     * Returns the top n players in the specified statistic
+     * Returns all the ranked players in the specified statistic
      *
      * @param statistic Statistic to get from
      */
     @Override
     public List<LeaderboardTopper> getTopPlayers(PlayerStatistic statistic, GameExtension extension) {
+        return getTopPlayers(statistic, extension, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a copy of the top players in the specified statistic
+     *
+     * @param statistic Statistic to get from
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param limit     The maximum amount of players to return
+     * @return The top players, highest first
+     */
+    @Override
+    public List<LeaderboardTopper> getTopPlayers(PlayerStatistic statistic, GameExtension extension, int limit) {
         if (!(boolean) PluginSettings.LEADERBOARDS.get())
             throw new IllegalStateException("Leaderboards are not enabled! Enable them in the config.yml.");
         if (!PlaceholderUtil.PAPI)
             throw new IllegalStateException("PlaceholderAPI is not found! Get PlaceholderAPI for leaderboards to work.");
-        if (extension == null) {
-            try {
-                return new ArrayList<>(TOP.get(statistic));
-            } catch (NullPointerException e) {
-                e.printStackTrace();
-                throw new IllegalStateException("The plugin hasn't started loading leaderboards data yet! Please wait. If this occured even after 5 seconds of loading the plugin, report (all of) the errors above. Otherwise, ignore it and wait!");
-            }
-        } else
-            return new ArrayList<>(TOP_BY_EXTENSION.get(statistic).get(extension));
+        if (leaderboards == null || !leaderboards.isLoaded())
+            throw new IllegalStateException("The plugin hasn't finished indexing leaderboards data yet! Please wait.");
+        return leaderboards.getTop(statistic, extension, limit);
+    }
+
+    /**
+     * Returns the position of the player in the leaderboard of the specified statistic
+     *
+     * @param statistic Statistic to get from
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param player    Player to get for
+     * @return The position starting from 1, or -1 if the player is not ranked.
+     */
+    @Override
+    public int getRank(PlayerStatistic statistic, GameExtension extension, OfflinePlayer player) {
+        getTopPlayers(statistic, extension, 0); // validate that leaderboards are available
+        return leaderboards.getRank(statistic, extension, player.getUniqueId());
     }
 
     /**
@@ -215,16 +260,144 @@ public class FlatFileProvider implements DataProvider {
      */
     @Override
     public GameStats getStatistics(OfflinePlayer player) {
-        GameStats stats = statisticsTree.lazyLoad(player, GameStats.class, "json");
+        return cache.get(player);
+    }
+
+    @Override
+    public GameStats peekStatistics(OfflinePlayer player) {
+        return cache.peek(player);
+    }
+
+    /**
+     * Applies the specified task on the statistics of the player, while they are pinned in the cache
+     *
+     * @param player Player to modify
+     * @param task   Task to apply
+     * @param <R>    The task result
+     * @return The result of the task
+     */
+    @Override
+    public <R> R modifyStatistics(OfflinePlayer player, Function<GameStats, R> task) {
+        GameStats stats = cache.pin(player);
+        try {
+            return task.apply(stats);
+        } finally {
+            cache.unpin(player);
+        }
+    }
+
+    /**
+     * Returns the cache of player statistics
+     *
+     * @return The statistics cache
+     */
+    public StatisticsCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Loads the statistics of the specified player from their file, or creates new statistics if they have none
+     *
+     * @param player Player to load
+     * @return The loaded statistics
+     */
+    private GameStats load(OfflinePlayer player) {
+        File file = fileOf(player);
+        GameStats stats = read(file);
         if (stats == null) {
+            stats = new GameStats();
+            if (!file.exists()) stats.markDirty(); // create the file on the next save. Unreadable files are left untouched until the player's statistics change
+        }
+        return stats;
+    }
+
+    /**
+     * Reads the statistics stored in the specified file, preferring any content which is still waiting to be written
+     *
+     * @param file File to read
+     * @return The statistics, or {@code null} if the file does not exist or cannot be read.
+     */
+    private GameStats read(File file) {
+        try {
+            byte[] content = writer.getPending(file);
+            if (content != null) return format.decode(ByteBuffer.wrap(content));
+            if (!file.exists()) return null;
+            return format.read(file);
+        } catch (IOException e) {
+            SpleefX.logger().log(Level.WARNING, "Failed to read statistics file " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private File fileOf(OfflinePlayer player) {
+        String name = NAMING_STRATEGY.toName(player);
+        return new File(new File(directory, shardOf(name)), name + format.getExtension());
+    }
+
+    /**
+     * Moves the player files which are directly inside the data directory (from before files were sharded)
+     * into their shards
+     */
+    private void moveToShards() {
+        String unitedFile = PluginSettings.UNITED_FILE_NAME.get(); // converted separately, see StorageTypeConverter
+        File[] files = directory.listFiles((dir, name) -> !name.equals(unitedFile)
+                && Arrays.stream(StatisticsFormat.values()).anyMatch(f -> name.endsWith(f.getExtension())));
+        if (files == null || files.length == 0) return;
+        int moved = 0;
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().lastIndexOf('.'));
+            File shard = new File(directory, shardOf(name));
             try {
-                statisticsTree.create(player, stats = new GameStats(), "json");
+                shard.mkdirs();
+                Files.move(file.toPath(), new File(shard, file.getName()).toPath());
+                moved++;
             } catch (IOException e) {
-                SpleefX.logger().severe("Failed to save player statistics. Error:");
-                e.printStackTrace();
+                SpleefX.logger().warning("Failed to move player file " + file.getName() + " into its shard: " + e.getMessage());
             }
         }
-        return stats;
+        SpleefX.logger().info("Moved " + moved + " player files into shard directories.");
+    }
+
+    /**
+     * Returns all the player files of the specified format, in the shards of the specified directory or
+     * directly inside it
+     *
+     * @param directory Data directory
+     * @param format    Format of the files
+     * @return The player files
+     */
+    static List<File> listPlayerFiles(File directory, StatisticsFormat format) {
+        String unitedFile = PluginSettings.UNITED_FILE_NAME.get();
+        List<File> files = new ArrayList<>();
+        File[] children = directory.listFiles();
+        if (children == null) return files;
+        for (File child : children) {
+            if (isShard(child)) {
+                File[] shard = child.listFiles((dir, name) -> name.endsWith(format.getExtension()));
+                if (shard != null) files.addAll(Arrays.asList(shard));
+            } else if (child.getName().endsWith(format.getExtension()) && !child.getName().equals(unitedFile))
+                files.add(child);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the shard of the player with the specified file name. For UUIDs this is the first two hex
+     * characters, and for names two hex characters of the name's hash, so players spread evenly over
+     * 256 shards.
+     *
+     * @param name The player's file name, without the extension
+     * @return The shard directory name
+     */
+    private static String shardOf(String name) {
+        if (DataProvider.getStoringStrategy() == DataProvider.PlayerStoringStrategy.UUID && name.length() >= 2)
+            return name.substring(0, 2).toLowerCase(Locale.ROOT);
+        int hash = name.toLowerCase(Locale.ROOT).hashCode();
+        return String.format("%02x", (hash ^ (hash >>> 8) ^ (hash >>> 16) ^ (hash >>> 24)) & 0xFF);
+    }
+
+    private static boolean isShard(File file) {
+        return file.isDirectory() && file.getName().matches("[0-9a-f]{2}");
     }
 
     static class PlayerNamingStrategy implements TreeNamingStrategy<OfflinePlayer> {
@@ -0,0 +1,267 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.provider;
+
+import com.google.common.base.Stopwatch;
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.data.*;
+import io.github.spleefx.data.leaderboard.LeaderboardIndex;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards;
+import io.github.spleefx.extension.ExtensionsManager;
+import io.github.spleefx.extension.GameExtension;
+import io.github.spleefx.util.PlaceholderUtil;
+import io.github.spleefx.util.io.FileManager;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A data provider which stores player statistics in an append-only log (see {@link StatisticsLog}).
+ * <p>
+ * Every statistic change is appended as a small delta entry, instead of rewriting the player's whole entry.
+ * Other changes (such as coins, boosters and perks) are saved as snapshots of the player's entry. The statistics
+ * of all players are kept in memory, and are rebuilt from the log when the server starts.
+ */
+public class LogProvider implements DataProvider {
+
+    /**
+     * The statistics of all players, mapped by their UUID
+     */
+    private final Map<UUID, GameStats> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * The log
+     */
+    private final StatisticsLog log = new StatisticsLog(new File(new File(SpleefX.getPlugin().getDataFolder(), PluginSettings.STATISTICS_DIRECTORY.get()), "log"),
+            ((Number) PluginSettings.STATISTICS_LOG_SEGMENT_SIZE.get()).longValue() * 1024 * 1024);
+
+    /**
+     * The leaderboard scores of all players. Null if leaderboards are disabled.
+     */
+    private LeaderboardIndex leaderboards;
+
+    /**
+     * Creates the required files for this provider
+     *
+     * @param fileManager File manager instance
+     */
+    @Override
+    public void createRequiredFiles(FileManager<SpleefX> fileManager) {
+        SpleefX plugin = fileManager.getPlugin();
+        Stopwatch timer = Stopwatch.createStarted();
+        try {
+            statistics.putAll(log.open());
+        } catch (IOException e) {
+            throw new DataException("Failed to read the statistics log", e);
+        }
+        if (statistics.isEmpty()) importFlatFiles();
+        SpleefX.logger().info("Loaded the statistics of " + statistics.size() + " players from the statistics log in " + timer.elapsed(TimeUnit.MILLISECONDS) + " milliseconds.");
+        if (PlaceholderUtil.PAPI && (boolean) PluginSettings.LEADERBOARDS.get()) {
+            leaderboards = new LeaderboardIndex(ExtensionsManager.EXTENSIONS.values());
+            Map<UUID, int[]> rows = new HashMap<>(statistics.size());
+            statistics.forEach((player, stats) -> rows.put(player, leaderboards.toRow(stats)));
+            leaderboards.load(rows);
+        }
+        long interval = ((Number) PluginSettings.STATISTICS_LOG_COMPACTION_INTERVAL.get()).longValue() * 1200;
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, log::compact, interval, interval);
+    }
+
+    /**
+     * Returns whether the player has an entry in the storage or not
+     *
+     * @param player Player to check for
+     * @return {@code true} if the player is stored, false if otherwise.
+     */
+    @Override
+    public boolean hasEntry(OfflinePlayer player) {
+        return statistics.containsKey(player.getUniqueId());
+    }
+
+    /**
+     * Adds the player to the data entries
+     *
+     * @param player Player to add
+     */
+    @Override
+    public void add(OfflinePlayer player) {
+        getStatistics(player);
+    }
+
+    /**
+     * Retrieves the player's statistics from the specified extension
+     *
+     * @param stat   Statistic to retrieve
+     * @param player Player to retrieve from
+     * @param mode   The mode. Set to {@code null} to get global statistics
+     * @return The statistic
+     */
+    @Override
+    public int get(PlayerStatistic stat, OfflinePlayer player, GameExtension mode) {
+        return getStatistics(player).get(stat, mode);
+    }
+
+    /**
+     * Adds the specified amount to the statistic, and appends it to the log
+     *
+     * @param stat     Statistic to add to
+     * @param player   Player to add for
+     * @param mode     Mode to add for
+     * @param addition Value to add
+     */
+    @Override
+    public void add(PlayerStatistic stat, OfflinePlayer player, GameExtension mode, int addition) {
+        GameStats stats = getStatistics(player);
+        stats.addDelta(stat, mode, addition); // the change is in the log, so it does not need a snapshot
+        log.appendDelta(player.getUniqueId(), mode == null ? -1 : ExtensionsManager.getId(mode.getKey()), stat, addition);
+        if (leaderboards != null) leaderboards.update(player.getUniqueId(), stat, mode, stats);
+        RollingLeaderboards rolling = SpleefX.getPlugin().getRollingLeaderboards();
+        if (rolling != null) rolling.add(player.getUniqueId(), stat, mode, addition);
+    }
+
+    /**
+     * Appends a snapshot of every entry which has changed other than through {@link #add(PlayerStatistic, OfflinePlayer, GameExtension, int)}
+     *
+     * @param plugin Plugin instance
+     */
+    @Override
+    public void saveEntries(SpleefX plugin) {
+        for (Entry<UUID, GameStats> entry : statistics.entrySet()) {
+            GameStats stats = entry.getValue();
+            if (!stats.isDirty()) continue;
+            stats.clearDirty();
+            log.appendSnapshot(entry.getKey(), stats);
+        }
+    }
+
+    /**
+     * Saves all the changed entries, and waits (up to the configured timeout) for the log to be written
+     *
+     * @param plugin Plugin instance
+     */
+    @Override
+    public void close(SpleefX plugin) {
+        saveEntries(plugin);
+        log.close(((Number) PluginSettings.STATISTICS_SHUTDOWN_TIMEOUT.get()).longValue(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets the player statistics entirely. Useful for converting between different {@link DataProvider}
+     * implementations.
+     *
+     * @param player Player to convert
+     * @param stats  Stats to override with
+     */
+    @Override
+    public void setStatistics(OfflinePlayer player, GameStats stats) {
+        stats.clearDirty();
+        statistics.put(player.getUniqueId(), stats);
+        log.appendSnapshot(player.getUniqueId(), stats);
+        if (leaderboards != null) leaderboards.update(player.getUniqueId(), stats);
+    }
+
+    /**
+     * Returns all the ranked players in the specified statistic
+     *
+     * @param statistic Statistic to get from
+     */
+    @Override
+    public List<LeaderboardTopper> getTopPlayers(PlayerStatistic statistic, GameExtension extension) {
+        return getTopPlayers(statistic, extension, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a copy of the top players in the specified statistic
+     *
+     * @param statistic Statistic to get from
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param limit     The maximum amount of players to return
+     * @return The top players, highest first
+     */
+    @Override
+    public List<LeaderboardTopper> getTopPlayers(PlayerStatistic statistic, GameExtension extension, int limit) {
+        if (!(boolean) PluginSettings.LEADERBOARDS.get())
+            throw new IllegalStateException("Leaderboards are not enabled! Enable them in the config.yml.");
+        if (!PlaceholderUtil.PAPI)
+            throw new IllegalStateException("PlaceholderAPI is not found! Get PlaceholderAPI for leaderboards to work.");
+        return leaderboards.getTop(statistic, extension, limit);
+    }
+
+    /**
+     * Returns the position of the player in the leaderboard of the specified statistic
+     *
+     * @param statistic Statistic to get from
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param player    Player to get for
+     * @return The position starting from 1, or -1 if the player is not ranked.
+     */
+    @Override
+    public int getRank(PlayerStatistic statistic, GameExtension extension, OfflinePlayer player) {
+        getTopPlayers(statistic, extension, 0); // validate that leaderboards are available
+        return leaderboards.getRank(statistic, extension, player.getUniqueId());
+    }
+
+    /**
+     * Returns the statistics of the specified player
+     *
+     * @param player Player to retrieve from
+     * @return The player's statistics
+     */
+    @Override
+    public GameStats getStatistics(OfflinePlayer player) {
+        return statistics.computeIfAbsent(player.getUniqueId(), uuid -> {
+            GameStats stats = new GameStats();
+            stats.markDirty(); // store the player on the next save
+            return stats;
+        });
+    }
+
+    @Override
+    public GameStats peekStatistics(OfflinePlayer player) {
+        return statistics.get(player.getUniqueId());
+    }
+
+    /**
+     * Imports the player files of {@link FlatFileProvider} into the log. The files are kept, so switching back
+     * to flat files restores the statistics from before the import.
+     */
+    private void importFlatFiles() {
+        StatisticsFormat format = PluginSettings.STATISTICS_FILE_FORMAT.get();
+        List<File> files = FlatFileProvider.listPlayerFiles(new File(SpleefX.getPlugin().getDataFolder(), PluginSettings.STATISTICS_DIRECTORY.get()), format);
+        if (files.isEmpty()) return;
+        FlatFileProvider.PlayerNamingStrategy naming = new FlatFileProvider.PlayerNamingStrategy();
+        for (File file : files) {
+            try {
+                OfflinePlayer player = naming.fromName(file.getName().substring(0, file.getName().length() - format.getExtension().length()));
+                GameStats stats = format.read(file);
+                if (player != null && stats != null) setStatistics(player, stats);
+            } catch (IOException | IllegalArgumentException e) {
+                SpleefX.logger().warning("Failed to import statistics file " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        SpleefX.logger().info("Imported the statistics of " + statistics.size() + " players from player files into the statistics log.");
+    }
+
+}
@@ -0,0 +1,623 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.provider;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.data.*;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards;
+import io.github.spleefx.extension.GameExtension;
+import io.github.spleefx.util.io.FileManager;
+import io.github.spleefx.util.plugin.PluginSettings;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.moltenjson.utils.Gsons;
+
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * A data provider which stores player statistics in an embedded SQLite database.
+ * <p>
+ * Statistics are stored in a normalised table of (player, extension, statistic, value) rows, where the global
+ * statistics have an empty extension. The remaining player data (coins, boosters, perks, etc.) is stored as JSON
+ * in a separate table. Players are always stored by their UUID.
+ * <p>
+ * Changed entries are written in batches of prepared statements on a dedicated thread, and leaderboards are
+ * read with index-backed queries, so only the top players are ever read into memory. A batch which fails stays
+ * pending, and is retried after a delay which doubles with every consecutive failure.
+ * <p>
+ * Leaderboards and ranks are queried in the background on their own connection, and the last result is served
+ * meanwhile, so the main thread never waits for them.
+ */
+public class SQLiteProvider implements DataProvider {
+
+    /**
+     * The extension column of global statistics
+     */
+    private static final String GLOBAL = "";
+
+    /**
+     * The delay (in milliseconds) before a failed batch is retried for the first time
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * The maximum delay (in milliseconds) before a failed batch is retried
+     */
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private final File file = new File(new File(SpleefX.getPlugin().getDataFolder(), PluginSettings.STATISTICS_DIRECTORY.get()), PluginSettings.SQLITE_FILE_NAME.get());
+
+    /**
+     * The statistics of online and recently seen players
+     */
+    private final StatisticsCache cache = new StatisticsCache(this::load);
+
+    /**
+     * All entries waiting to be written, mapped by the player UUID
+     */
+    private final Map<UUID, JsonObject> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Whether is a batch scheduled which has not started yet
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * The last queried leaderboards, mapped by the statistic and the extension key
+     */
+    private final Map<String, List<LeaderboardTopper>> leaderboards = new ConcurrentHashMap<>();
+
+    /**
+     * The keys of the leaderboards which have changed since they were last queried. Filled whenever a batch is written.
+     */
+    private final Set<String> outdated = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The keys of the leaderboards which are currently being queried
+     */
+    private final Set<String> querying = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The counted ranks of players outside the cached leaderboards, mapped by the statistic, the extension key
+     * and the player UUID
+     */
+    private final Map<String, CachedRank> ranks = new ConcurrentHashMap<>();
+
+    /**
+     * The keys of the ranks which are currently being counted
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The amount of consecutive batches which failed. Only accessed by the batch being written.
+     */
+    private int failures;
+
+    /**
+     * The thread which writes to the database
+     */
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "SpleefX SQLite Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The connection used for writing. Only accessed from the writer thread, or once it has stopped.
+     */
+    private Connection writeConnection;
+
+    /**
+     * The connection used for reading player entries. Guarded by itself.
+     */
+    private Connection readConnection;
+
+    /**
+     * The connection used for querying leaderboards and ranks in the background, so the slow queries never
+     * hold the read connection. Guarded by itself.
+     */
+    private Connection rankConnection;
+
+    /**
+     * Creates the required files for this provider
+     *
+     * @param fileManager File manager instance
+     */
+    @Override
+    public void createRequiredFiles(FileManager<SpleefX> fileManager) {
+        SpleefX plugin = fileManager.getPlugin();
+        try {
+            file.getParentFile().mkdirs();
+            writeConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement statement = writeConnection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL"); // so reads are not blocked by writes
+                statement.execute("CREATE TABLE IF NOT EXISTS players (player TEXT PRIMARY KEY, data TEXT NOT NULL)");
+                statement.execute("CREATE TABLE IF NOT EXISTS statistics (player TEXT NOT NULL, extension TEXT NOT NULL, statistic TEXT NOT NULL, value INTEGER NOT NULL, " +
+                        "PRIMARY KEY (player, extension, statistic))");
+                statement.execute("CREATE INDEX IF NOT EXISTS statistics_ranking ON statistics (extension, statistic, value DESC, player)");
+            }
+            writeConnection.setAutoCommit(false);
+            readConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            rankConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        } catch (SQLException e) {
+            throw new DataException("Failed to open the SQLite database " + file.getName(), e);
+        }
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false); // retried by the final batch instead
+        Bukkit.getPluginManager().registerEvents(cache, plugin);
+        Bukkit.getOnlinePlayers().forEach(cache::get); // players who are already online, such as after a reload
+        Bukkit.getScheduler().runTaskTimer(plugin, cache::evict, 1200, 1200);
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::evictRanks, 1200, 1200);
+    }
+
+    /**
+     * Returns whether the player has an entry in the storage or not. Players who are not cached are looked up
+     * by their primary key, on the read connection which the leaderboard queries never hold.
+     *
+     * @param player Player to check for
+     * @return {@code true} if the player is stored, false if otherwise.
+     */
+    @Override
+    public boolean hasEntry(OfflinePlayer player) {
+        if (cache.getIfLoaded(player) != null || pending.containsKey(player.getUniqueId())) return true;
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement("SELECT 1 FROM players WHERE player = ?")) {
+                statement.setString(1, player.getUniqueId().toString());
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next();
+                }
+            } catch (SQLException e) {
+                throw new DataException("Failed to query player " + player.getUniqueId(), e);
+            }
+        }
+    }
+
+    /**
+     * Adds the player to the data entries
+     *
+     * @param player Player to add
+     */
+    @Override
+    public void add(OfflinePlayer player) {
+        getStatistics(player);
+    }
+
+    /**
+     * Retrieves the player's statistics from the specified extension
+     *
+     * @param stat   Statistic to retrieve
+     * @param player Player to retrieve from
+     * @param mode   The mode. Set to {@code null} to get global statistics
+     * @return The statistic
+     */
+    @Override
+    public int get(PlayerStatistic stat, OfflinePlayer player, GameExtension mode) {
+        return getStatistics(player).get(stat, mode);
+    }
+
+    /**
+     * Adds the specified amount to the statistic
+     *
+     * @param stat     Statistic to add to
+     * @param player   Player to add for
+     * @param mode     Mode to add for
+     * @param addition Value to add
+     */
+    @Override
+    public void add(PlayerStatistic stat, OfflinePlayer player, GameExtension mode, int addition) {
+        modifyStatistics(player, stats -> stats.add(stat, mode, addition));
+        RollingLeaderboards rolling = SpleefX.getPlugin().getRollingLeaderboards();
+        if (rolling != null) rolling.add(player.getUniqueId(), stat, mode, addition);
+    }
+
+    /**
+     * Saves all the entries which have changed since they were last saved. Entries are serialized
+     * immediately, and written to the database in the background.
+     *
+     * @param plugin Plugin instance
+     */
+    @Override
+    public void saveEntries(SpleefX plugin) {
+        for (Entry<OfflinePlayer, GameStats> entry : cache.getLoaded().entrySet()) {
+            GameStats stats = entry.getValue();
+            if (!stats.isDirty()) continue;
+            stats.clearDirty();
+            write(entry.getKey().getUniqueId(), stats);
+        }
+    }
+
+    /**
+     * Saves all the changed entries, waits (up to the configured timeout) for the running batch to finish, and
+     * writes the remaining entries in a final batch
+     *
+     * @param plugin Plugin instance
+     */
+    @Override
+    public void close(SpleefX plugin) {
+        saveEntries(plugin);
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(((Number) PluginSettings.STATISTICS_SHUTDOWN_TIMEOUT.get()).longValue(), TimeUnit.SECONDS)) {
+                writeBatch(); // includes failed batches whose retry was dropped
+                if (!pending.isEmpty())
+                    SpleefX.logger().warning("Failed to save player statistics. " + pending.size() + " entries were not saved.");
+            } else
+                SpleefX.logger().warning("Timed out while saving player statistics. " + pending.size() + " entries were not saved.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            synchronized (readConnection) {
+                readConnection.close();
+            }
+            synchronized (rankConnection) {
+                rankConnection.close();
+            }
+            if (executor.isTerminated()) writeConnection.close(); // otherwise still in use by the writer thread
+        } catch (SQLException e) {
+            SpleefX.logger().log(Level.WARNING, "Failed to close the SQLite database", e);
+        }
+    }
+
+    /**
+     * Sets the player statistics entirely. Useful for converting between different {@link DataProvider}
+     * implementations.
+     *
+     * @param player Player to convert
+     * @param stats  Stats to override with
+     */
+    @Override
+    public void setStatistics(OfflinePlayer player, GameStats stats) {
+        stats.clearDirty();
+        cache.replace(player, stats);
+        write(player.getUniqueId(), stats);
+    }
+
+    /**
+     * Returns the top players in the specified statistic, as last queried from the database. Leaderboards are
+     * queried in the background when first requested and after they change, so this returns an empty list until
+     * the first query finishes.
+     *
+     * @param statistic Statistic to get from
+     */
+    @Override
+    public List<LeaderboardTopper> getTopPlayers(PlayerStatistic statistic, GameExtension extension) {
+        if (!(boolean) PluginSettings.LEADERBOARDS.get())
+            throw new IllegalStateException("Leaderboards are not enabled! Enable them in the config.yml.");
+        String key = statistic.name() + ":" + (extension == null ? GLOBAL : extension.getKey());
+        List<LeaderboardTopper> top = leaderboards.get(key);
+        if ((top == null || outdated.contains(key)) && !executor.isShutdown() && querying.add(key)) {
+            outdated.remove(key); // before querying, so a batch written meanwhile marks it again
+            Bukkit.getScheduler().runTaskAsynchronously(SpleefX.getPlugin(), () -> {
+                try {
+                    leaderboards.put(key, queryTop(statistic, extension));
+                } catch (DataException e) {
+                    SpleefX.logger().log(Level.WARNING, e.getMessage(), e.getCause());
+                } finally {
+                    querying.remove(key);
+                }
+            });
+        }
+        return top == null ? Collections.emptyList() : top;
+    }
+
+    /**
+     * Queries the top players in the specified statistic
+     *
+     * @param statistic Statistic to query
+     * @param extension Extension to query for. Null to query the global leaderboard
+     * @return The top players
+     */
+    private List<LeaderboardTopper> queryTop(PlayerStatistic statistic, GameExtension extension) {
+        List<LeaderboardTopper> top = new ArrayList<>();
+        synchronized (rankConnection) {
+            try (PreparedStatement query = rankConnection.prepareStatement("SELECT player, value FROM statistics WHERE extension = ? AND statistic = ? " +
+                    "ORDER BY value DESC, player LIMIT ?")) {
+                query.setString(1, extension == null ? GLOBAL : extension.getKey());
+                query.setString(2, statistic.name());
+                query.setInt(3, ((Number) PluginSettings.SQLITE_LEADERBOARD_SIZE.get()).intValue());
+                try (ResultSet result = query.executeQuery()) {
+                    while (result.next())
+                        top.add(new LeaderboardTopper(UUID.fromString(result.getString(1)), result.getInt(2)));
+                }
+            } catch (SQLException e) {
+                throw new DataException("Failed to query the leaderboard of " + statistic.name(), e);
+            }
+        }
+        return Collections.unmodifiableList(top);
+    }
+
+    /**
+     * Returns the position of the player in the leaderboard of the specified statistic, as currently saved
+     * in the database.
+     * <p>
+     * Players in the cached top players are ranked from them directly. The ranks of other players are counted
+     * in the background and cached, and are refreshed at most once every configured interval. Until the rank
+     * of a player is counted for the first time, they are considered unranked.
+     *
+     * @param statistic Statistic to get from
+     * @param extension Extension to get for. Null to get the global leaderboard
+     * @param player    Player to get for
+     * @return The position starting from 1, or -1 if the player is not ranked.
+     */
+    @Override
+    public int getRank(PlayerStatistic statistic, GameExtension extension, OfflinePlayer player) {
+        List<LeaderboardTopper> top = getTopPlayers(statistic, extension);
+        UUID uuid = player.getUniqueId();
+        for (int i = 0; i < top.size(); i++)
+            if (top.get(i).getUniqueId().equals(uuid)) return i + 1;
+        String key = statistic.name() + ":" + (extension == null ? GLOBAL : extension.getKey()) + ":" + uuid;
+        CachedRank rank = ranks.get(key);
+        long now = System.currentTimeMillis();
+        if ((rank == null || now - rank.time >= rankRefreshInterval()) && !executor.isShutdown() && refreshing.add(key))
+            Bukkit.getScheduler().runTaskAsynchronously(SpleefX.getPlugin(), () -> {
+                try {
+                    ranks.put(key, new CachedRank(countRank(statistic, extension, uuid), System.currentTimeMillis()));
+                } catch (DataException e) {
+                    SpleefX.logger().log(Level.WARNING, e.getMessage(), e.getCause());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        return rank == null ? -1 : rank.position;
+    }
+
+    /**
+     * Counts the position of the player in the leaderboard of the specified statistic
+     *
+     * @param statistic Statistic to count in
+     * @param extension Extension to count for. Null to count in the global leaderboard
+     * @param player    Player to count for
+     * @return The position starting from 1, or -1 if the player is not ranked.
+     */
+    private int countRank(PlayerStatistic statistic, GameExtension extension, UUID player) {
+        synchronized (rankConnection) {
+            try (PreparedStatement query = rankConnection.prepareStatement("SELECT (SELECT COUNT(*) FROM statistics o WHERE o.extension = s.extension AND o.statistic = s.statistic " +
+                    "AND (o.value > s.value OR (o.value = s.value AND o.player < s.player))) FROM statistics s WHERE s.extension = ? AND s.statistic = ? AND s.player = ?")) {
+                query.setString(1, extension == null ? GLOBAL : extension.getKey());
+                query.setString(2, statistic.name());
+                query.setString(3, player.toString());
+                try (ResultSet result = query.executeQuery()) {
+                    return result.next() ? result.getInt(1) + 1 : -1;
+                }
+            } catch (SQLException e) {
+                throw new DataException("Failed to query the rank of " + player, e);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached ranks which have not been refreshed for two intervals, as they are no longer requested
+     */
+    private void evictRanks() {
+        long expiry = System.currentTimeMillis() - rankRefreshInterval() * 2;
+        ranks.values().removeIf(rank -> rank.time < expiry);
+    }
+
+    /**
+     * Returns the interval (in milliseconds) after which cached ranks are refreshed
+     *
+     * @return The refresh interval
+     */
+    private static long rankRefreshInterval() {
+        return ((Number) PluginSettings.SQLITE_RANK_REFRESH_INTERVAL.get()).longValue() * 1000;
+    }
+
+    /**
+     * Returns the statistics of the specified player
+     *
+     * @param player Player to retrieve from
+     * @return The player's statistics
+     */
+    @Override
+    public GameStats getStatistics(OfflinePlayer player) {
+        return cache.get(player);
+    }
+
+    @Override
+    public GameStats peekStatistics(OfflinePlayer player) {
+        return cache.peek(player);
+    }
+
+    /**
+     * Applies the specified task on the statistics of the player, while they are pinned in the cache
+     *
+     * @param player Player to modify
+     * @param task   Task to apply
+     * @param <R>    The task result
+     * @return The result of the task
+     */
+    @Override
+    public <R> R modifyStatistics(OfflinePlayer player, Function<GameStats, R> task) {
+        GameStats stats = cache.pin(player);
+        try {
+            return task.apply(stats);
+        } finally {
+            cache.unpin(player);
+        }
+    }
+
+    /**
+     * Returns the cache of player statistics
+     *
+     * @return The statistics cache
+     */
+    public StatisticsCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Queues the specified statistics to be written to the database
+     *
+     * @param player UUID of the player
+     * @param stats  Statistics to write
+     */
+    private void write(UUID player, GameStats stats) {
+        pending.put(player, Gsons.DEFAULT.toJsonTree(stats).getAsJsonObject());
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::writeBatch);
+            } catch (RejectedExecutionException e) { // closing, written by the final batch
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Loads the statistics of the specified player, or creates new statistics if they have none
+     *
+     * @param player Player to load
+     * @return The loaded statistics
+     */
+    private GameStats load(OfflinePlayer player) {
+        JsonObject tree = pending.get(player.getUniqueId());
+        if (tree == null) tree = read(player.getUniqueId());
+        if (tree == null) {
+            GameStats stats = new GameStats();
+            stats.markDirty(); // store the player on the next save
+            return stats;
+        }
+        return Gsons.DEFAULT.fromJson(tree, GameStats.class);
+    }
+
+    /**
+     * Reads the stored entry of the specified player, in the JSON layout of {@link GameStats}
+     *
+     * @param player UUID of the player
+     * @return The entry, or {@code null} if the player is not stored.
+     */
+    private JsonObject read(UUID player) {
+        synchronized (readConnection) {
+            try (PreparedStatement data = readConnection.prepareStatement("SELECT data FROM players WHERE player = ?");
+                 PreparedStatement statistics = readConnection.prepareStatement("SELECT extension, statistic, value FROM statistics WHERE player = ?")) {
+                data.setString(1, player.toString());
+                JsonObject tree;
+                try (ResultSet result = data.executeQuery()) {
+                    if (!result.next()) return null;
+                    tree = new JsonParser().parse(result.getString(1)).getAsJsonObject();
+                }
+                JsonObject global = new JsonObject(), modes = new JsonObject();
+                statistics.setString(1, player.toString());
+                try (ResultSet result = statistics.executeQuery()) {
+                    while (result.next()) {
+                        String extension = result.getString(1);
+                        JsonObject target = extension.equals(GLOBAL) ? global : modes.has(extension) ? modes.getAsJsonObject(extension) : new JsonObject();
+                        if (!extension.equals(GLOBAL)) modes.add(extension, target);
+                        target.addProperty(result.getString(2), result.getInt(3));
+                    }
+                }
+                tree.add("global", global);
+                tree.add("modes", modes);
+                return tree;
+            } catch (SQLException | JsonParseException e) {
+                throw new DataException("Failed to load statistics of " + player, e);
+            }
+        }
+    }
+
+    private void writeBatch() {
+        scheduled.set(false);
+        List<Entry<UUID, JsonObject>> batch = new ArrayList<>(pending.entrySet());
+        if (batch.isEmpty()) return;
+        try (PreparedStatement players = writeConnection.prepareStatement("INSERT OR REPLACE INTO players (player, data) VALUES (?, ?)");
+             PreparedStatement statistics = writeConnection.prepareStatement("INSERT OR REPLACE INTO statistics (player, extension, statistic, value) VALUES (?, ?, ?, ?)")) {
+            for (Entry<UUID, JsonObject> entry : batch) {
+                String player = entry.getKey().toString();
+                JsonObject data = new JsonObject();
+                for (Entry<String, JsonElement> property : entry.getValue().entrySet()) {
+                    switch (property.getKey()) {
+                        case "global":
+                            addStatistics(statistics, player, GLOBAL, property.getValue().getAsJsonObject());
+                            break;
+                        case "modes":
+                            for (Entry<String, JsonElement> mode : property.getValue().getAsJsonObject().entrySet())
+                                addStatistics(statistics, player, mode.getKey(), mode.getValue().getAsJsonObject());
+                            break;
+                        default:
+                            data.add(property.getKey(), property.getValue());
+                    }
+                }
+                players.setString(1, player);
+                players.setString(2, data.toString());
+                players.addBatch();
+            }
+            players.executeBatch();
+            statistics.executeBatch();
+            writeConnection.commit();
+        } catch (SQLException e) {
+            SpleefX.logger().log(Level.SEVERE, "Failed to save " + batch.size() + " player statistics to the SQLite database", e);
+            try {
+                writeConnection.rollback();
+            } catch (SQLException ignored) {
+            }
+            retry(); // leave the entries pending, so they are retried in the next batch
+            return;
+        }
+        failures = 0;
+        for (Entry<UUID, JsonObject> entry : batch)
+            pending.remove(entry.getKey(), entry.getValue()); // if replaced meanwhile, the newer entry is written in the next batch
+        outdated.addAll(leaderboards.keySet());
+        outdated.addAll(querying); // may have been queried before this batch
+    }
+
+    private void retry() {
+        long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(failures++, 16));
+        if (!scheduled.compareAndSet(false, true)) return; // a batch is already on its way
+        try {
+            executor.schedule(this::writeBatch, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) { // closing, written by the final batch
+            scheduled.set(false);
+        }
+    }
+
+    private static void addStatistics(PreparedStatement statement, String player, String extension, JsonObject statistics) throws SQLException {
+        for (Entry<String, JsonElement> statistic : statistics.entrySet()) {
+            statement.setString(1, player);
+            statement.setString(2, extension);
+            statement.setString(3, statistic.getKey());
+            statement.setInt(4, statistic.getValue().getAsInt());
+            statement.addBatch();
+        }
+    }
+
+    /**
+     * A counted rank, along with the time it was counted at
+     */
+    private static final class CachedRank {
+
+        private final int position;
+        private final long time;
+
+        CachedRank(int position, long time) {
+            this.position = position;
+            this.time = time;
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ import io.github.spleefx.data.DataProvider;
 import io.github.spleefx.data.GameStats;
 import io.github.spleefx.data.LeaderboardTopper;
 import io.github.spleefx.data.PlayerStatistic;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards;
 import io.github.spleefx.economy.booster.BoosterInstance;
 import io.github.spleefx.extension.GameExtension;
 import io.github.spleefx.util.plugin.PluginSettings;
@@ -108,6 +109,8 @@ public class UnitedFileProvider implements DataProvider {
         GameStats stats = config.get(DataProvider.getStoringStrategy().apply(player), GameStats.class, ArenaData.GSON);
         stats.add(stat, mode, addition);
         config.set(DataProvider.getStoringStrategy().apply(player), stats);
+        RollingLeaderboards rolling = SpleefX.getPlugin().getRollingLeaderboards();
+        if (rolling != null) rolling.add(player.getUniqueId(), stat, mode, addition);
     }
 
     /**
@@ -0,0 +1,182 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.economy;
+
+import io.github.spleefx.SpleefX;
+import io.github.spleefx.data.DataProvider;
+import io.github.spleefx.data.GameStats;
+import org.bukkit.OfflinePlayer;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.IntUnaryOperator;
+
+import static io.github.spleefx.util.plugin.PluginSettings.ECO_USE_VAULT;
+
+/**
+ * The ledger of player coins. All changes to a player's coins go through this class.
+ * <p>
+ * Balances are stored in {@link GameStats#coins}, and are updated with compare-and-set, so concurrent
+ * changes (such as Vault calls from asynchronous plugins) do not overwrite each other, and reads of loaded
+ * balances never block.
+ * Changes are made through {@link DataProvider#modifyStatistics(OfflinePlayer, java.util.function.Function)},
+ * which keeps the statistics from being evicted from the provider's cache meanwhile. Changed entries are
+ * marked dirty, so they are persisted by the data provider on its next save.
+ * <p>
+ * {@link #getBalance(OfflinePlayer)}, {@link #deposit(OfflinePlayer, int)}, {@link #withdraw(OfflinePlayer, int)}
+ * and {@link #update(OfflinePlayer, IntUnaryOperator)} always operate on the SpleefX balance, while
+ * {@link #getCoins(OfflinePlayer)}, {@link #give(OfflinePlayer, int)} and {@link #take(OfflinePlayer, int)}
+ * use the Vault economy when it is enabled in the config.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CoinLedger {
+
+    /**
+     * The updater of player balances
+     */
+    private static final AtomicIntegerFieldUpdater<GameStats> COINS = AtomicIntegerFieldUpdater.newUpdater(GameStats.class, "coins");
+
+    /**
+     * The data provider which stores the balances
+     */
+    private final DataProvider dataProvider;
+
+    /**
+     * Creates a new ledger
+     *
+     * @param dataProvider The data provider which stores the balances
+     */
+    public CoinLedger(DataProvider dataProvider) {
+        this.dataProvider = dataProvider;
+    }
+
+    /**
+     * Returns the SpleefX balance of the specified player. The balance of players whose statistics are in memory
+     * (which includes all online players) is read without locking. Other players have their statistics loaded
+     * first, which may block on the disk or database, so avoid this for offline players on the main thread.
+     *
+     * @param player Player to get for
+     * @return The balance
+     */
+    public int getBalance(OfflinePlayer player) {
+        GameStats stats = dataProvider.peekStatistics(player);
+        return (stats == null ? dataProvider.getStatistics(player) : stats).coins;
+    }
+
+    /**
+     * Adds the specified amount to the SpleefX balance of the player
+     *
+     * @param player Player to deposit to
+     * @param amount Amount to deposit
+     * @return The new balance
+     */
+    public int deposit(OfflinePlayer player, int amount) {
+        return dataProvider.modifyStatistics(player, stats -> {
+            int balance = COINS.addAndGet(stats, amount);
+            stats.markDirty();
+            return balance;
+        });
+    }
+
+    /**
+     * Takes the specified amount from the SpleefX balance of the player, only if the player has enough
+     * coins. The check and the withdrawal are done atomically.
+     *
+     * @param player Player to withdraw from
+     * @param amount Amount to withdraw
+     * @return {@code true} if the amount was withdrawn, {@code false} if the player does not have enough coins
+     */
+    public boolean withdraw(OfflinePlayer player, int amount) {
+        return dataProvider.modifyStatistics(player, stats -> {
+            int balance;
+            do {
+                balance = stats.coins;
+                if (balance < amount) return false;
+            } while (!COINS.compareAndSet(stats, balance, balance - amount));
+            stats.markDirty();
+            return true;
+        });
+    }
+
+    /**
+     * Applies the specified task on the SpleefX balance of the player
+     *
+     * @param player Player to update
+     * @param task   Task which computes the new balance from the current one. May be invoked more than once.
+     * @return The new balance
+     */
+    public int update(OfflinePlayer player, IntUnaryOperator task) {
+        return dataProvider.modifyStatistics(player, stats -> update(stats, task));
+    }
+
+    /**
+     * Returns the coins of the player in the server economy
+     *
+     * @param player Player to get for
+     * @return The coins
+     */
+    public int getCoins(OfflinePlayer player) {
+        if (usesVault())
+            return (int) SpleefX.getPlugin().getVaultHandler().getCoins(player);
+        return getBalance(player);
+    }
+
+    /**
+     * Gives the specified amount of coins to the player in the server economy
+     *
+     * @param player Player to give to
+     * @param amount Amount to give
+     */
+    public void give(OfflinePlayer player, int amount) {
+        if (usesVault())
+            SpleefX.getPlugin().getVaultHandler().add(player, amount);
+        else
+            deposit(player, amount);
+    }
+
+    /**
+     * Takes the specified amount of coins from the player in the server economy, only if the player has
+     * enough coins
+     *
+     * @param player Player to take from
+     * @param amount Amount to take
+     * @return {@code true} if the coins were taken, {@code false} if the player does not have enough coins
+     */
+    public boolean take(OfflinePlayer player, int amount) {
+        if (usesVault())
+            return SpleefX.getPlugin().getVaultHandler().withdraw(player, amount);
+        return withdraw(player, amount);
+    }
+
+    /**
+     * Applies the specified task on the balance of the specified statistics. The caller must make sure the
+     * statistics cannot be evicted meanwhile, otherwise prefer {@link #update(OfflinePlayer, IntUnaryOperator)}.
+     *
+     * @param stats Statistics to update
+     * @param task  Task which computes the new balance from the current one. May be invoked more than once.
+     * @return The new balance
+     */
+    public static int update(GameStats stats, IntUnaryOperator task) {
+        int balance = COINS.updateAndGet(stats, task);
+        stats.markDirty();
+        return balance;
+    }
+
+    private static boolean usesVault() {
+        return (boolean) ECO_USE_VAULT.get() && GameStats.VAULT_EXISTS.get();
+    }
+
+}
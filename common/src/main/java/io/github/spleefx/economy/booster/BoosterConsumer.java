@@ -69,10 +69,11 @@ public class BoosterConsumer {
         for (Iterator<Entry<BoosterInstance, Long>> iterator = activeBoosters.entrySet().iterator(); iterator.hasNext(); ) {
             Entry<BoosterInstance, Long> boosterInstanceLongEntry = iterator.next();
             boosterInstanceLongEntry.getKey().reduce();
+            OfflinePlayer owner = Bukkit.getOfflinePlayer(boosterInstanceLongEntry.getKey().getOwner());
+            SpleefX.getPlugin().getDataProvider().getStatistics(owner).markDirty(); // the remaining duration is saved with the stats
             if (boosterInstanceLongEntry.setValue(boosterInstanceLongEntry.getValue() - 1) <= 0) {
                 iterator.remove();
-                OfflinePlayer player = Bukkit.getOfflinePlayer(boosterInstanceLongEntry.getKey().getOwner());
-                GameStats stats = SpleefX.getPlugin().getDataProvider().getStatistics(player);
+                GameStats stats = SpleefX.getPlugin().getDataProvider().getStatistics(owner);
                 int boosterId = 0;
                 for (Iterator<Entry<Integer, BoosterInstance>> iter = stats.getBoosters().entrySet().iterator(); iter.hasNext(); ) {
                     Entry<Integer, BoosterInstance> entry = iter.next();
@@ -83,7 +84,7 @@ public class BoosterConsumer {
                         iter.remove();
                     }
                 }
-                SpleefX.getActiveBoosterLoader().getActiveBoostersMap().remove(player.getUniqueId(), boosterId);
+                SpleefX.getActiveBoosterLoader().getActiveBoostersMap().remove(owner.getUniqueId(), boosterId);
             }
         }
     }
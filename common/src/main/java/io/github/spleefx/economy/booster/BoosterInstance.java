@@ -73,6 +73,13 @@ public class BoosterInstance {
         this.duration = duration.getSeconds();
     }
 
+    public BoosterInstance(BoosterFactory type, BoosterState state, double multiplier, long duration) {
+        this.type = type;
+        this.state = state;
+        this.multiplier = multiplier;
+        this.duration = duration;
+    }
+
     public BoosterFactory getType() {
         return type;
     }
@@ -28,8 +28,10 @@ import org.moltenjson.json.JsonReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ExtensionsManager {
 
@@ -58,6 +60,52 @@ public class ExtensionsManager {
      */
     private static final Map<String, GameExtension> COMMANDS = new HashMap<>();
 
+    /**
+     * The dense id of every extension key, used to index per-extension data in arrays
+     */
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    /**
+     * The extension key of every id. Replaced with a longer copy whenever an id is assigned, while holding
+     * {@link #KEYS_LOCK}.
+     */
+    private static volatile String[] keys = new String[0];
+
+    /**
+     * The lock which guards assigning new ids
+     */
+    private static final Object KEYS_LOCK = new Object();
+
+    /**
+     * Returns the dense id of the specified extension key, assigning a new one if it has none. Ids are assigned
+     * from 0 and are only valid while the server runs, so they must never be stored.
+     *
+     * @param key Key of the extension. The extension does not have to be loaded.
+     * @return The id
+     */
+    public static int getId(String key) {
+        Integer id = IDS.get(key);
+        return id != null ? id : IDS.computeIfAbsent(key, k -> {
+            synchronized (KEYS_LOCK) {
+                String[] assigned = Arrays.copyOf(keys, keys.length + 1);
+                assigned[assigned.length - 1] = k;
+                keys = assigned; // published before the id, so the key of any returned id can be read
+                return assigned.length - 1;
+            }
+        });
+    }
+
+    /**
+     * Returns the extension key of the specified id
+     *
+     * @param id Id to get for
+     * @return The extension key
+     * @see #getId(String)
+     */
+    public static String getKeyById(int id) {
+        return keys[id];
+    }
+
     /**
      * Returns an extension from the specified key
      *
@@ -95,6 +95,7 @@ public class SpleggUpgrade {
     public boolean purchase(ArenaPlayer player) {
         GameStats stats = player.getStats();
         List<String> purchased = (List<String>) stats.getCustomDataMap().computeIfAbsent("purchasedSpleggUpgrades", (k) -> new ArrayList<String>());
+        stats.markDirty();
         purchased.addAll(SpleggExtension.EXTENSION.getUpgrades().values().stream().filter(upgrade -> upgrade.isDefault() && !purchased.contains(upgrade.getKey())).map(SpleggUpgrade::getKey).collect(Collectors.toList()));
         if (isDefault || purchased.contains(getKey())) {
             Message.UPGRADE_SELECTED.reply(player.getPlayer(), this);
@@ -102,10 +103,10 @@ public class SpleggUpgrade {
         } else {
             if (stats.getCoins(player.getPlayer()) >= price) {
                 if (purchased.containsAll(requiredUpgradesBefore)) {
+                    if (!stats.takeCoins(player.getPlayer(), price)) return false;
                     ((List<String>) stats.getCustomDataMap().computeIfAbsent("purchasedSpleggUpgrades", (k) -> new ArrayList<>()))
                             .add(getKey());
                     stats.getCustomDataMap().put("selectedSpleggUpgrade", getKey());
-                    stats.takeCoins(player.getPlayer(), price);
                     Message.UPGRADE_PURCHASED.reply(player.getPlayer(), this);
                 } else {
                     Message.MUST_PURCHASE_BEFORE.reply(player.getPlayer(), this);
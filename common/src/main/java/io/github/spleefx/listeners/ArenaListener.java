@@ -21,23 +21,26 @@ import io.github.spleefx.arena.ArenaPlayer;
 import io.github.spleefx.arena.ArenaPlayer.ArenaPlayerState;
 import io.github.spleefx.arena.api.ArenaEngine;
 import io.github.spleefx.arena.api.ArenaType;
+import io.github.spleefx.arena.api.BlockJournal;
 import io.github.spleefx.arena.api.GameArena;
 import io.github.spleefx.compatibility.CompatibilityHandler;
 import io.github.spleefx.data.PlayerStatistic;
-import io.github.spleefx.team.GameTeam;
 import io.github.spleefx.util.message.message.Message;
 import io.github.spleefx.util.plugin.PluginSettings;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
+import org.bukkit.entity.TNTPrimed;
 import org.bukkit.event.Event.Result;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.inventory.ItemStack;
@@ -45,7 +48,6 @@ import org.bukkit.inventory.ItemStack;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 public class ArenaListener implements Listener {
 
@@ -66,34 +68,7 @@ public class ArenaListener implements Listener {
                 event.setCancelled(true);
             if (damaged.getHealth() - event.getDamage() < 1) {
                 event.setCancelled(true);
-                ArenaEngine engine = arena.getEngine();
-                if (arena.getArenaType() == ArenaType.FREE_FOR_ALL) {
-                    GameTeam ffa = arena.getGameTeams().get(0);
-                    engine.lose(p, ffa, false);
-                    if (engine.getAlive().size() == 1) {
-                        ArenaPlayer winner = ArenaPlayer.adapt(engine.getAlive().get(0));
-                        engine.win(winner, ffa);
-                        engine.end(true);
-                    }
-                } else {
-                    GameTeam team1 = engine.getPlayerTeams().get(p);
-                    engine.lose(p, team1, false);
-                    if (team1.getAlive().size() == 0) {
-                        engine.broadcast(Message.TEAM_ELIMINATED, arena, team1.getColor(), arena.getExtension());
-                        engine.getDeadTeams().add(team1);
-                    }
-                    List<GameTeam> teamsLeft =
-                            arena.getGameTeams().stream().filter(team -> !team.isEliminated())
-                                    .collect(Collectors.toList());
-                    if (teamsLeft.size() == 1) {
-                        GameTeam team = teamsLeft.get(0);
-                        team.getAlive().forEach(winner -> {
-                            ArenaPlayer player = ArenaPlayer.adapt(winner);
-                            engine.win(player, team);
-                        });
-                        engine.end(true);
-                    }
-                }
+                arena.getEngine().eliminate(p);
             }
         }
     }
@@ -128,6 +103,25 @@ public class ArenaListener implements Listener {
         }
     }
 
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        BlockJournal journal = BlockJournal.getExploding();
+        if (journal == null) return;
+        for (Block block : event.blockList())
+            journal.record(block);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        if (!(event.getEntity() instanceof TNTPrimed)) return;
+        if (!(((TNTPrimed) event.getEntity()).getSource() instanceof Player)) return;
+        ArenaPlayer p = ArenaPlayer.adapt((Player) ((TNTPrimed) event.getEntity()).getSource());
+        if (p.getState() != ArenaPlayerState.IN_GAME) return;
+        BlockJournal journal = p.getCurrentArena().getBlockJournal();
+        for (Block block : event.blockList())
+            journal.record(block);
+    }
+
     private static void handleTeamDamage(ArenaPlayer p, EntityDamageByEntityEvent event) {
         if (p.getCurrentArena().getArenaType() == ArenaType.FREE_FOR_ALL) return;
         if (!(event.getDamager() instanceof Player)) return;
@@ -160,6 +154,7 @@ public class ArenaListener implements Listener {
                         ItemStack mainHand = CompatibilityHandler.either(() -> player.getInventory().getItemInMainHand(), () -> player.getItemInHand());
                         if (event.getResult() != Result.DENY) {
                             GameArena arena = p.getCurrentArena();
+                            arena.getBlockJournal().record(block);
                             if (!arena.isDropMinedBlocks()) {
                                 Collection<ItemStack> oldDrops = block.getDrops(mainHand);
                                 block.setType(Material.AIR);
@@ -187,6 +182,7 @@ public class ArenaListener implements Listener {
             ArenaPlayer p = ArenaPlayer.adapt(event.getPlayer());
             if (p.getState() == ArenaPlayerState.IN_GAME) {
                 GameArena arena = p.getCurrentArena();
+                arena.getBlockJournal().record(event.getBlock());
                 if (!arena.isDropMinedBlocks()) {
                     ItemStack mainHand = CompatibilityHandler.either(() -> p.getPlayer().getInventory().getItemInMainHand(), () -> p.getPlayer().getItemInHand());
                     Collection<ItemStack> oldDrops = event.getBlock().getDrops(mainHand);
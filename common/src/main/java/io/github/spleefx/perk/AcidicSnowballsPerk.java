@@ -113,8 +113,10 @@ public class AcidicSnowballsPerk extends GamePerk implements Listener {
         if (hitBlock != null)
             if (arena.getEngine().getArenaStage() == ArenaStage.ACTIVE)
                 if (!nonDestroyableBlocks.contains(hitBlock.getType()))
-                    if (CompatibilityHandler.getWorldGuardHook().canBreak(shooter.getPlayer(), hitBlock))
+                    if (CompatibilityHandler.getWorldGuardHook().canBreak(shooter.getPlayer(), hitBlock)) {
+                        arena.getBlockJournal().record(hitBlock);
                         hitBlock.setType(Material.AIR);
+                    }
         projectile.remove();
     }
 }
\ No newline at end of file
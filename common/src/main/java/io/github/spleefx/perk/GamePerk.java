@@ -68,6 +68,7 @@ public class GamePerk {
 
     public boolean consumeFrom(ArenaPlayer player) {
         if (purchaseSettings.getGamesUsableFor() > 0) return true; // No consuming
+        player.getStats().markDirty();
         return player.getStats().getPerks().merge(this, purchaseSettings.getGamesUsableFor() - 1, (i, a) -> i - 1) < 0;
     }
 
@@ -81,11 +82,12 @@ public class GamePerk {
         if (stats.getCoins(player.getPlayer()) >= price) {
             if (getPurchaseSettings().getGamesUsableFor() < 0)
                 Message.PERK_ALREADY_PURCHASED.reply(player.getPlayer(), this);
-            else {
+            else if (stats.takeCoins(player.getPlayer(), price)) {
                 Message.ITEM_PURCHASED.reply(player.getPlayer(), this);
                 stats.getPerks().merge(this, getPurchaseSettings().getGamesUsableFor(), Integer::sum);
-                stats.takeCoins(player.getPlayer(), price);
-            }
+                stats.markDirty();
+            } else
+                return false;
             return true;
         }
         return false;
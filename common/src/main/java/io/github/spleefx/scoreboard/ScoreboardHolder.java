@@ -50,10 +50,46 @@ public class ScoreboardHolder {
 
     public void createScoreboard(ArenaPlayer p) {
         if (!isEnabled()) return;
+        SidebarBoard previous = getPlugin().getScoreboardTicker().getBoards().remove(p.getPlayer().getUniqueId());
+        if (previous != null) previous.destroy();
         getPlugin().getScoreboardTicker().getBoards().put(p.getPlayer().getUniqueId(), new SidebarBoard(p.getPlayer(), getPlugin().getScoreboardTicker()));
     }
 
+    /**
+     * Evaluates the placeholders of this scoreboard's lines which are the same for every player in the
+     * arena. Blank lines are returned as empty strings.
+     *
+     * @param arena Arena to evaluate for
+     * @return The lines, with only player placeholders left to replace
+     */
+    public List<String> renderArenaLines(GameArena arena) {
+        List<String> lines = new ArrayList<>(text.size());
+        for (String line : text.values())
+            lines.add(line.trim().isEmpty() ? "" : PlaceholderUtil.arena(line, arena));
+        return lines;
+    }
+
     public static String replacePlaceholders(@Nullable ArenaPlayer player, String message, GameArena arena, Map<String, Supplier<String>> placeholders) {
+        return replacePlaceholders(player, message, arena, placeholders, true);
+    }
+
+    /**
+     * Replaces the placeholders which depend on the player, in a line which was already rendered
+     * by {@link #renderArenaLines(GameArena)}. Unlike {@link #replacePlaceholders(ArenaPlayer, String, GameArena, Map)},
+     * the arena placeholders have been replaced before the engine and player ones, so placeholders inside arena
+     * values (such as a display name containing {@code {player}}) are replaced as well.
+     *
+     * @param player       Player to replace for
+     * @param message      The arena-rendered line
+     * @param arena        Arena of the player
+     * @param placeholders The player placeholders of the arena engine
+     * @return The final line
+     */
+    public static String replacePlayerPlaceholders(ArenaPlayer player, String message, GameArena arena, Map<String, Supplier<String>> placeholders) {
+        return replacePlaceholders(player, message, arena, placeholders, false);
+    }
+
+    private static String replacePlaceholders(@Nullable ArenaPlayer player, String message, GameArena arena, Map<String, Supplier<String>> placeholders, boolean includeArena) {
         BaseArenaEngine<? extends GameArena> engine = (BaseArenaEngine<? extends GameArena>) arena.getEngine();
 
         @Nullable Location location = null;
@@ -63,7 +99,8 @@ public class ScoreboardHolder {
         List<Object> formats = new ArrayList<>();
         if (player != null)
             formats.add(player.getPlayer());
-        formats.add(arena);
+        if (includeArena)
+            formats.add(arena);
         if (location != null)
             formats.add(location);
 
@@ -17,16 +17,31 @@ package io.github.spleefx.scoreboard;
 
 import io.github.spleefx.arena.ArenaPlayer;
 import io.github.spleefx.arena.api.BaseArenaEngine;
+import io.github.spleefx.arena.api.GameArena;
 import io.github.spleefx.util.game.Chat;
 import me.lucko.helper.Schedulers;
 import me.lucko.helper.promise.Promise;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class ScoreboardProvider {
 
+    /**
+     * The last evaluated lines of each arena
+     */
+    private final Map<GameArena, ArenaLines> arenaLines = new ConcurrentHashMap<>();
+
+    /**
+     * The current refresh. Only incremented by the scoreboard thread.
+     */
+    private volatile int refresh;
+
     public Promise<String> getTitle(Player player) {
         return Schedulers.async().supply(() -> {
             try {
@@ -40,20 +55,67 @@ public class ScoreboardProvider {
     public Promise<List<String>> getLines(Player player) {
         return Schedulers.async().supply(() -> {
             ArenaPlayer p = ArenaPlayer.adapt(player);
-            BaseArenaEngine<?> engine = (BaseArenaEngine<?>) p.getCurrentArena().getEngine();
+            GameArena arena = p.getCurrentArena();
+            BaseArenaEngine<?> engine = (BaseArenaEngine<?>) arena.getEngine();
             ScoreboardHolder holder = getScoreboardHolder(p);
             if (holder == null)
-                throw new RuntimeException("Cannot find a scoreboard section for extension " + p.getCurrentArena().getExtension().getKey() + ". Please add a section to remove this error.");
-            return holder.getText()
-                    .values()
-                    .stream()
-                    .map(s -> s.trim().isEmpty() ? "" : ScoreboardHolder.replacePlaceholders(p, s, p.getCurrentArena(), engine.getScoreboardMap(player)))
-                    .collect(Collectors.toList());
+                throw new RuntimeException("Cannot find a scoreboard section for extension " + arena.getExtension().getKey() + ". Please add a section to remove this error.");
+            List<String> arenaLines = getArenaLines(arena, holder);
+            Map<String, Supplier<String>> placeholders = engine.getScoreboardMap(player);
+            List<String> lines = new ArrayList<>(arenaLines.size());
+            for (String line : arenaLines)
+                lines.add(line.isEmpty() ? "" : ScoreboardHolder.replacePlayerPlaceholders(p, line, arena, placeholders));
+            return lines;
         });
     }
 
+    /**
+     * Starts a new refresh, after which the arena lines are evaluated again. Lines of earlier refreshes are never
+     * used again, so they are dropped, which also drops the lines of arenas that were removed or are no longer
+     * viewed.
+     */
+    public void nextRefresh() {
+        int refresh = ++this.refresh;
+        arenaLines.values().removeIf(lines -> lines.refresh != refresh);
+    }
+
+    /**
+     * Returns the lines of the specified arena with the arena placeholders evaluated. The lines are evaluated
+     * once per refresh and shared by all players in the arena.
+     * <p>
+     * Arena placeholders are therefore replaced before the player ones, whereas
+     * {@link ScoreboardHolder#replacePlaceholders(ArenaPlayer, String, GameArena, Map)} replaces them after the
+     * engine and player placeholders. This only makes a difference when the value of one placeholder contains
+     * another placeholder, such as an arena display name containing {@code {player}}.
+     *
+     * @param arena  Arena to get for
+     * @param holder The current scoreboard of the arena
+     * @return The arena lines
+     */
+    private List<String> getArenaLines(GameArena arena, ScoreboardHolder holder) {
+        int refresh = this.refresh;
+        return arenaLines.compute(arena, (k, cached) -> cached != null && cached.refresh == refresh && cached.holder == holder ? cached
+                : new ArenaLines(refresh, holder, holder.renderArenaLines(arena))).lines;
+    }
+
     private static ScoreboardHolder getScoreboardHolder(ArenaPlayer p) {
         return p.getCurrentArena().getExtension().getScoreboard().get(p.getCurrentArena().getEngine().getCurrentScoreboard());
     }
 
-}
\ No newline at end of file
+    /**
+     * An immutable snapshot of the arena lines, evaluated in a single refresh
+     */
+    private static final class ArenaLines {
+
+        private final int refresh;
+        private final ScoreboardHolder holder;
+        private final List<String> lines;
+
+        private ArenaLines(int refresh, ScoreboardHolder holder, List<String> lines) {
+            this.refresh = refresh;
+            this.holder = holder;
+            this.lines = Collections.unmodifiableList(lines);
+        }
+    }
+
+}
@@ -1,6 +1,6 @@
 package io.github.spleefx.scoreboard.sidebar;
 
-import lombok.Setter;
+import io.github.spleefx.compatibility.PacketSidebar;
 import org.bukkit.ChatColor;
 import org.bukkit.scoreboard.Score;
 import org.bukkit.scoreboard.Scoreboard;
@@ -10,10 +10,24 @@ public class ScoreboardEntry {
 
     private final SidebarBoard board;
 
-    @Setter
     private String text, identifier;
     private Team team;
 
+    /**
+     * The text split into the team prefix and suffix, and the values which were last sent
+     */
+    private String prefix, suffix, sentPrefix, sentSuffix;
+
+    /**
+     * The position which was last sent, or -1 if the score was not sent yet
+     */
+    private int sentPosition = -1;
+
+    /**
+     * Whether was the team of this entry created
+     */
+    private boolean created;
+
     public ScoreboardEntry(SidebarBoard board, String text) {
         this.board = board;
         this.text = text;
@@ -23,6 +37,19 @@ public class ScoreboardEntry {
     }
 
     public void setup() {
+        if (created) return;
+        final PacketSidebar packets = board.getPackets();
+
+        if (packets != null) {
+            if (prefix == null) setText(text);
+            packets.createLine(identifier, prefix, suffix);
+            sentPrefix = prefix;
+            sentSuffix = suffix;
+            board.getEntries().add(this);
+            created = true;
+            return;
+        }
+
         final Scoreboard scoreboard = board.getScoreboard();
 
         if (scoreboard == null) {
@@ -51,9 +78,17 @@ public class ScoreboardEntry {
         }
 
         this.team = team;
+        created = true;
     }
 
-    public void send(int position) {
+    /**
+     * Sets the text of this entry. The text is split into the team prefix and suffix only when it changes.
+     *
+     * @param text New text
+     */
+    public void setText(String text) {
+        if (text.equals(this.text) && prefix != null) return;
+        this.text = text;
         if (text.length() > 16) {
             String prefix = text.substring(0, 16);
             String suffix;
@@ -76,20 +111,59 @@ public class ScoreboardEntry {
                 suffix = suffix.substring(0, 16);
             }
 
-            team.setPrefix(prefix);
-            team.setSuffix(suffix);
+            this.prefix = prefix;
+            this.suffix = suffix;
         } else {
-            team.setPrefix(text);
-            team.setSuffix("");
+            this.prefix = text;
+            this.suffix = "";
         }
+    }
 
-        Score score = board.getObjective().getScore(identifier);
-        score.setScore(position);
+    /**
+     * Sends the text and the position of this entry. Only the parts which changed since they were last sent are
+     * updated, so an unchanged entry sends nothing.
+     *
+     * @param position Position of the entry
+     */
+    public void send(int position) {
+        if (prefix == null) setText(text);
+        final PacketSidebar packets = board.getPackets();
+
+        if (packets != null) {
+            if (!prefix.equals(sentPrefix) || !suffix.equals(sentSuffix)) {
+                packets.updateLine(identifier, prefix, suffix);
+                sentPrefix = prefix;
+                sentSuffix = suffix;
+            }
+            if (position != sentPosition) {
+                packets.setScore(identifier, position);
+                sentPosition = position;
+            }
+            return;
+        }
+
+        if (!prefix.equals(sentPrefix)) {
+            team.setPrefix(prefix);
+            sentPrefix = prefix;
+        }
+        if (!suffix.equals(sentSuffix)) {
+            team.setSuffix(suffix);
+            sentSuffix = suffix;
+        }
+        if (position != sentPosition) {
+            Score score = board.getObjective().getScore(identifier);
+            score.setScore(position);
+            sentPosition = position;
+        }
     }
 
     public void remove() {
+        board.getEntries().remove(this);
         board.getIdentifiers().remove(identifier);
-        board.getScoreboard().resetScores(identifier);
+        if (board.getPackets() != null)
+            board.getPackets().removeLine(identifier);
+        else
+            board.getScoreboard().resetScores(identifier);
     }
 
 }
@@ -3,8 +3,8 @@ package io.github.spleefx.scoreboard.sidebar;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
-import org.bukkit.scoreboard.Objective;
 
+import java.util.ArrayList;
 import java.util.Collections;
 
 public class ScoreboardThread extends Thread {
@@ -33,40 +33,32 @@ public class ScoreboardThread extends Thread {
     }
 
     private void tick() {
+        ticker.getProvider().nextRefresh();
         for (Player player : Bukkit.getOnlinePlayers()) {
             SidebarBoard board = ticker.getBoards().get(player.getUniqueId());
 
             if (board == null) continue;
 
-            Objective objective = board.getObjective();
             ticker.getProvider().getTitle(player).thenAcceptSync((c) -> {
                 if (c == null) {
-                    ticker.getBoards().remove(player.getUniqueId());
+                    ticker.getBoards().remove(player.getUniqueId(), board);
+                    board.destroy();
                     player.setScoreboard(Bukkit.getScoreboardManager().getMainScoreboard());
                     return;
                 }
-                String title = ChatColor.translateAlternateColorCodes('&', c);
-                if (!objective.getDisplayName().equals(title)) {
-                    objective.setDisplayName(title);
-                }
+                board.setTitle(ChatColor.translateAlternateColorCodes('&', c));
             }).thenAcceptSync((v) -> ticker.getProvider().getLines(player).thenAcceptSync(newLines -> {
+                if (board.isDestroyed()) return;
                 if (newLines == null || newLines.isEmpty()) {
-                    board.getEntries().forEach(ScoreboardEntry::remove);
-                    board.getEntries().clear();
+                    new ArrayList<>(board.getEntries()).forEach(ScoreboardEntry::remove);
                 } else {
                     Collections.reverse(newLines);
 
-                    if (board.getEntries().size() > newLines.size()) {
-                        for (int i = newLines.size(); i < board.getEntries().size(); i++) {
-                            ScoreboardEntry entry = board.getEntryAtPosition(i);
-
-                            if (entry != null) {
-                                entry.remove();
-                            }
-                        }
+                    // Remove the surplus entries. Entries are removed from the end so that the remaining ones keep their positions
+                    while (board.getEntries().size() > newLines.size()) {
+                        board.getEntries().get(board.getEntries().size() - 1).remove();
                     }
 
-                    int cache = 1;
                     for (int i = 0; i < newLines.size(); i++) {
                         ScoreboardEntry entry = board.getEntryAtPosition(i);
 
@@ -76,7 +68,7 @@ public class ScoreboardThread extends Thread {
                         }
                         entry.setText(line);
                         entry.setup();
-                        entry.send(cache++);
+                        entry.send(i + 1); // only sends what changed since the last tick
                     }
                 }
             }));
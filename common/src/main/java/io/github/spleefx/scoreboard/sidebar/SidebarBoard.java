@@ -1,5 +1,8 @@
 package io.github.spleefx.scoreboard.sidebar;
 
+import io.github.spleefx.compatibility.CompatibilityHandler;
+import io.github.spleefx.compatibility.PacketSidebar;
+import io.github.spleefx.util.plugin.PluginSettings;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -11,7 +14,6 @@ import org.bukkit.scoreboard.Scoreboard;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ThreadLocalRandom;
 
 @Getter
 public class SidebarBoard {
@@ -22,6 +24,21 @@ public class SidebarBoard {
     private Objective objective;
     private UUID uuid;
 
+    /**
+     * The packet sidebar, or null if this board uses a Bukkit scoreboard
+     */
+    private PacketSidebar packets;
+
+    /**
+     * The title which was last set
+     */
+    private String title = "";
+
+    /**
+     * Whether was this board removed from the player
+     */
+    private boolean destroyed;
+
     private ScoreboardTicker scoreboardTicker;
 
     public SidebarBoard(Player player, ScoreboardTicker scoreboardTicker) {
@@ -31,6 +48,16 @@ public class SidebarBoard {
     }
 
     private void setup(Player player) {
+        if ((boolean) PluginSettings.SCOREBOARD_USE_PACKETS.get())
+            packets = CompatibilityHandler.getProtocol().newPacketSidebar(player);
+        if (packets != null) {
+            // no server-side scoreboard is needed. The title is sent when it is resolved
+            packets.create(title);
+            getScoreboardTicker().getProvider().getTitle(player).thenAcceptSync(name -> {
+                if (name != null) setTitle(ChatColor.translateAlternateColorCodes('&', name));
+            });
+            return;
+        }
         // Register new scoreboard if needed
         if (player.getScoreboard() == Bukkit.getScoreboardManager().getMainScoreboard()) {
             scoreboard = Bukkit.getScoreboardManager().getNewScoreboard();
@@ -57,24 +84,63 @@ public class SidebarBoard {
         }
     }
 
-    public String getUniqueIdentifier() {
-        String identifier = getRandomChatColor() + ChatColor.WHITE;
+    /**
+     * Sets the title of this board, if it is different from the current one
+     *
+     * @param title New title
+     */
+    public void setTitle(String title) {
+        if (destroyed || title.equals(this.title)) return;
+        this.title = title;
+        if (packets != null)
+            packets.setTitle(title);
+        else
+            objective.setDisplayName(title);
+    }
 
-        while (identifiers.contains(identifier)) {
-            identifier = identifier + getRandomChatColor() + ChatColor.WHITE;
+    /**
+     * Removes the lines and the objective of this board from the player. Boards which use a Bukkit
+     * scoreboard are removed by setting the scoreboard of the player instead.
+     */
+    public void destroy() {
+        if (destroyed) return;
+        if (packets != null) {
+            new ArrayList<>(entries).forEach(ScoreboardEntry::remove);
+            packets.destroy();
         }
+        destroyed = true;
+    }
 
-        if (identifier.length() > 16) {
-            return getUniqueIdentifier();
-        }
+    /**
+     * Returns the identifier of the next line. Identifiers are derived from the first free index, so
+     * the same line always has the same identifier.
+     *
+     * @return The identifier
+     */
+    public String getUniqueIdentifier() {
+        String identifier;
+        int index = 0;
+        do {
+            identifier = getIdentifier(index++);
+        } while (identifiers.contains(identifier));
 
         identifiers.add(identifier);
 
         return identifier;
     }
 
-    private static String getRandomChatColor() {
-        return ChatColor.values()[ThreadLocalRandom.current().nextInt(ChatColor.values().length)].toString();
+    /**
+     * Returns the identifier of the specified line index. The identifier is made of a colour code for each
+     * hexadecimal digit of the index, followed by a reset, so it is invisible and unique for each index.
+     *
+     * @param index Index of the line
+     * @return The identifier
+     */
+    private static String getIdentifier(int index) {
+        StringBuilder identifier = new StringBuilder(6);
+        for (char digit : Integer.toHexString(index).toCharArray())
+            identifier.append(ChatColor.COLOR_CHAR).append(digit);
+        return identifier.append(ChatColor.RESET).toString();
     }
 
 }
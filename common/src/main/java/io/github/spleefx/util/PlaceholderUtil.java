@@ -204,6 +204,20 @@ public class PlaceholderUtil {
         return Chat.colorize(builder.toString());
     }
 
+    /**
+     * Replaces the placeholders of the specified arena and its extension, without colorizing or
+     * applying PlaceholderAPI placeholders. Used to evaluate arena placeholders once for many players.
+     *
+     * @param original Text to replace in
+     * @param arena    Arena to replace for
+     * @return The text with the arena placeholders replaced
+     */
+    public static String arena(String original, GameArena arena) {
+        StrBuilder builder = new StrBuilder(original);
+        ARENA.apply(arena, builder);
+        return builder.toString();
+    }
+
     public static String formatTime(int seconds) {
         int secondsLeft = seconds % 3600 % 60;
         int minutes = (int) Math.floor((float) seconds % 3600 / 60);
@@ -0,0 +1,100 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.util.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct byte buffers of the same capacity, so that direct buffers (which are expensive to allocate)
+ * are reused instead of allocated for every I/O operation.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BufferPool {
+
+    /**
+     * The capacity of pooled buffers
+     */
+    private final int capacity;
+
+    /**
+     * The maximum amount of buffers kept in the pool
+     */
+    private final int maximum;
+
+    /**
+     * The available buffers
+     */
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The amount of available buffers. Tracked separately since {@link ConcurrentLinkedQueue#size()} is O(n).
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a new buffer pool
+     *
+     * @param capacity Capacity of each buffer
+     * @param maximum  Maximum amount of buffers kept in the pool
+     */
+    public BufferPool(int capacity, int maximum) {
+        this.capacity = capacity;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Returns a cleared buffer with at least the specified capacity. Buffers larger than the pool capacity are
+     * allocated on demand, and are not pooled.
+     *
+     * @param minimum The minimum capacity
+     * @return The buffer
+     */
+    public ByteBuffer acquire(int minimum) {
+        if (minimum > capacity) return ByteBuffer.allocateDirect(minimum);
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(capacity);
+        size.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns the specified buffer to the pool. The buffer must not be used afterwards.
+     *
+     * @param buffer Buffer to release
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != capacity || !buffer.isDirect()) return;
+        if (size.incrementAndGet() > maximum) {
+            size.decrementAndGet();
+            return;
+        }
+        buffers.add(buffer);
+    }
+
+    /**
+     * Returns the capacity of pooled buffers
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -3,6 +3,7 @@ package io.github.spleefx.util.plugin;
 import io.github.spleefx.SpleefX;
 import io.github.spleefx.data.DataProvider.PlayerStoringStrategy;
 import io.github.spleefx.data.DataProvider.StorageType;
+import io.github.spleefx.data.StatisticsFormat;
 import org.bukkit.Sound;
 import org.bukkit.configuration.MemorySection;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -18,7 +19,7 @@ import java.util.Map;
 @SuppressWarnings("unchecked") // Lots of casts for generics
 public enum PluginSettings {
 
-    ARENA_UPDATE_INTERVAL("Arena.LoopUpdateInterval", 20),
+    ARENA_TICK_BUDGET("Arena.TickBudget", 5),
     ARENA_CANCEL_TEAM_DAMAGE("Arena.CancelTeamDamage", true),
     ARENA_REQUIRE_EMPTY_INV("Arena.RequireEmptyInventoryBeforeJoining", false),
     ARENA_MELTING_RADIUS("Arena.Melting.Radius", 5),
@@ -28,8 +29,18 @@ public enum PluginSettings {
     ARENA_MELTING_IGNORE_Z("Arena.Melting.IgnoreZ", false),
     ARENA_MELTING_BLOCKS("Arena.Melting.MeltableBlocks", Collections.singletonList("SNOW_BLOCK")),
     ARENA_REGENERATE_BEFORE_COUNTDOWN("Arena.RegenerateBeforeGameStarts", true),
+    ARENA_JOURNAL_CAPACITY("Arena.Regeneration.JournalCapacity", 100000),
+    ARENA_FULL_PASTE_INTERVAL("Arena.Regeneration.FullPasteInterval", 20),
+    ARENA_REGENERATION_BUDGET("Arena.Regeneration.TickBudget", 10),
+    ARENA_MAX_CONCURRENT_REGENERATIONS("Arena.Regeneration.MaxConcurrent", 2),
+    ARENA_REGENERATION_TIMEOUT("Arena.Regeneration.Timeout", 300),
+    ARENA_SNAPSHOTS("Arena.Regeneration.Snapshots", true),
+    ARENA_CLIPBOARD_CACHE_SIZE("Arena.Regeneration.ClipboardCacheSize", 256),
+    ARENA_SNAPSHOT_CACHE_SIZE("Arena.Regeneration.SnapshotCacheSize", 128),
+    ARENA_PRELOAD_SCHEMATICS("Arena.Regeneration.PreloadSchematics", true),
     SIGN_UPDATE_INTERVAL("Arena.SignUpdateInterval", 40),
     SCOREBOARD_UPDATE_INTERVAL("Arena.ScoreboardUpdateInterval", 10),
+    SCOREBOARD_USE_PACKETS("Arena.ScoreboardPackets", false),
 
     DISPLAY_COUNTDOWN_ON_EXP_BAR("Countdown.DisplayOnExpBar", true),
     COUNTDOWN_ON_ENOUGH_PLAYERS("Countdown.OnEnoughPlayers", 20),
@@ -50,14 +61,24 @@ public enum PluginSettings {
     ALL_MODES_NAME("PlayerGameStatistics.AllModesName", "All Modes"),
     STATISTICS_STORAGE_TYPE("PlayerGameStatistics.StorageType", StorageType.FLAT_FILE),
     STATISTICS_DIRECTORY("PlayerGameStatistics.Directory", "player-data"),
+    STATISTICS_FILE_FORMAT("PlayerGameStatistics.FileFormat", StatisticsFormat.JSON),
     STATISTICS_STORE_PLAYERS_BY("PlayerGameStatistics.StorePlayersBy", PlayerStoringStrategy.UUID),
+    STATISTICS_SAVE_INTERVAL("PlayerGameStatistics.SaveInterval", 60),
+    STATISTICS_SHUTDOWN_TIMEOUT("PlayerGameStatistics.ShutdownTimeout", 10),
+    STATISTICS_CACHE_SIZE("PlayerGameStatistics.Cache.MaximumSize", 5000),
+    STATISTICS_CACHE_EVICT_AFTER("PlayerGameStatistics.Cache.EvictAfter", 10),
     UNITED_FILE_NAME("PlayerGameStatistics.UnitedFile.FileName", "player-data.json"),
     SQLITE_FILE_NAME("PlayerGameStatistics.SQLite.FileName", "player-data.db"),
+    SQLITE_LEADERBOARD_SIZE("PlayerGameStatistics.SQLite.LeaderboardSize", 100),
+    SQLITE_RANK_REFRESH_INTERVAL("PlayerGameStatistics.SQLite.RankRefreshInterval", 60),
+    STATISTICS_LOG_SEGMENT_SIZE("PlayerGameStatistics.Log.SegmentSize", 16),
+    STATISTICS_LOG_COMPACTION_INTERVAL("PlayerGameStatistics.Log.CompactionInterval", 30),
     ECO_HOOK_INTO_VAULT("Economy.HookIntoVault", true),
     ECO_USE_VAULT("Economy.GetFromVault", false),
 
     LEADERBOARDS("Leaderboards.Enabled", false),
     LEADERBOARDS_FORMAT("Leaderboards.Format", "&d#{pos} &e{player} &7- &b{score}"),
+    LEADERBOARDS_NAME_CACHE_EXPIRE_AFTER("Leaderboards.NameCache.ExpireAfter", 7),
     EXPER_INVENTORY_DELAY("Experimental.DelayInventoryByOneTick", false),
     EXPER_SPECTATING_ENABLED("Experimental.SpectatingEnabled", true);
 
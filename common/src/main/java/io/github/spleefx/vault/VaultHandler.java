@@ -43,7 +43,7 @@ public class VaultHandler {
         Plugin vaultPlugin = Bukkit.getPluginManager().getPlugin("Vault");
         if (vaultPlugin != null) {
             SpleefX.logger().info("Vault found. Handling hooks...");
-            Economy spleefxEconomy = new Economy_SpleefX(plugin.getDataProvider());
+            Economy spleefxEconomy = new Economy_SpleefX(plugin.getCoinLedger());
 
             RegisteredServiceProvider<Economy> provider = getServer().getServicesManager().getRegistration(Economy.class);
             if (provider == null) {
@@ -70,8 +70,8 @@ public class VaultHandler {
         economy.depositPlayer(player, amount);
     }
 
-    public void withdraw(OfflinePlayer player, int amount) {
-        economy.withdrawPlayer(player, amount);
+    public boolean withdraw(OfflinePlayer player, int amount) {
+        return economy.has(player, amount) && economy.withdrawPlayer(player, amount).transactionSuccess();
     }
 
 }
\ No newline at end of file
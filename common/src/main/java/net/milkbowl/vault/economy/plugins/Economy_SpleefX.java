@@ -15,8 +15,8 @@
  */
 package net.milkbowl.vault.economy.plugins;
 
-import io.github.spleefx.data.DataProvider;
 import io.github.spleefx.data.GameStats;
+import io.github.spleefx.economy.CoinLedger;
 import io.github.spleefx.util.plugin.PluginSettings;
 import net.milkbowl.vault.economy.Economy;
 import net.milkbowl.vault.economy.EconomyResponse;
@@ -29,10 +29,10 @@ import java.util.List;
 
 public class Economy_SpleefX implements Economy {
 
-    private DataProvider dataProvider;
+    private final CoinLedger ledger;
 
-    public Economy_SpleefX(DataProvider dataProvider) {
-        this.dataProvider = dataProvider;
+    public Economy_SpleefX(CoinLedger ledger) {
+        this.ledger = ledger;
     }
 
     /**
@@ -154,8 +154,7 @@ public class Economy_SpleefX implements Economy {
      * @deprecated As of VaultAPI 1.4 use {@link #getBalance(OfflinePlayer)} instead.
      */
     @Override public double getBalance(String playerName) {
-        OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
-        return dataProvider.getStatistics(player).coins;
+        return getBalance(Bukkit.getOfflinePlayer(playerName));
     }
 
     /**
@@ -165,7 +164,7 @@ public class Economy_SpleefX implements Economy {
      * @return Amount currently held in players account
      */
     @Override public double getBalance(OfflinePlayer player) {
-        return dataProvider.getStatistics(player).coins;
+        return ledger.getBalance(player);
     }
 
     /**
@@ -249,9 +248,11 @@ public class Economy_SpleefX implements Economy {
      * @return Detailed response of transaction
      */
     @Override public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
-        GameStats stats = dataProvider.getStatistics(player);
-        stats.onCoins(v -> v - (int) amount);
-        return new EconomyResponse(amount, stats.coins, ResponseType.SUCCESS, null);
+        if (amount < 0)
+            return new EconomyResponse(0, getBalance(player), ResponseType.FAILURE, "Cannot withdraw negative funds");
+        if (!ledger.withdraw(player, (int) amount))
+            return new EconomyResponse(0, getBalance(player), ResponseType.FAILURE, "Insufficient funds");
+        return new EconomyResponse(amount, getBalance(player), ResponseType.SUCCESS, null);
     }
 
     /**
@@ -274,9 +275,7 @@ public class Economy_SpleefX implements Economy {
      * @return Detailed response of transaction
      */
     @Override public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
-        GameStats stats = dataProvider.getStatistics(player);
-        stats.onCoins(v -> v - (int) amount);
-        return new EconomyResponse(amount, stats.coins, ResponseType.SUCCESS, null);
+        return withdrawPlayer(player, amount);
     }
 
     /**
@@ -296,9 +295,9 @@ public class Economy_SpleefX implements Economy {
      * @return Detailed response of transaction
      */
     @Override public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
-        GameStats stats = dataProvider.getStatistics(player);
-        stats.onCoins(v -> v - (int) amount);
-        return new EconomyResponse(amount, stats.coins, ResponseType.SUCCESS, null);
+        if (amount < 0)
+            return new EconomyResponse(0, getBalance(player), ResponseType.FAILURE, "Cannot deposit negative funds");
+        return new EconomyResponse(amount, ledger.deposit(player, (int) amount), ResponseType.SUCCESS, null);
     }
 
     /**
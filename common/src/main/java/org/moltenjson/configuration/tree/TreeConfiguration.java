@@ -26,10 +26,12 @@ import org.moltenjson.configuration.tree.strategy.TreeNamingStrategy;
 import org.moltenjson.exceptions.InvalidFileException;
 import org.moltenjson.json.JsonFile;
 import org.moltenjson.json.JsonWriter;
+import org.moltenjson.json.WriteJournal;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -163,6 +165,11 @@ public class TreeConfiguration<N, E> {
         this.ignoreInvalidFiles = ignoreInvalidFiles;
         this.lazy = lazy;
         fileFilter = new TreeFileFilter<>(this);
+        try {
+            WriteJournal.replay(new File(directory, WriteJournal.FILE_NAME)); // finish a save which was interrupted
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         files = getIncludedFiles();
     }
 
@@ -482,18 +489,15 @@ public class TreeConfiguration<N, E> {
      * @see #saveNewMap(Map)
      */
     public Map<N, E> lazySave() throws IOException {
-        for (N entry : data.keySet())
-            try {
-                File file = files.getOrDefault(namingStrategy.toName(entry), null);
-                setFile(file, false);
-                N name = namingStrategy.fromName(getBaseName(file));
-                E e = data.get(name);
-                if (e != null)
-                    writer.writeAndOverride(e, gson);
-            } catch (InvalidFileException e) {
-                if (ignoreInvalidFiles) continue;
-                throw e;
-            }
+        WriteJournal journal = new WriteJournal(new File(directory, WriteJournal.FILE_NAME));
+        for (N entry : data.keySet()) {
+            File file = files.get(namingStrategy.toName(entry));
+            E e = data.get(entry);
+            if (file != null && e != null)
+                journal.add(file, gson.toJson(e).getBytes(StandardCharsets.UTF_8));
+        }
+        journal.commit();
+        journal.checkpoint();
         return data;
     }
 
@@ -516,16 +520,14 @@ public class TreeConfiguration<N, E> {
      */
     public Map<N, E> saveNewMap(Map<N, E> data) throws IOException {
         this.data = data;
+        WriteJournal journal = new WriteJournal(new File(directory, WriteJournal.FILE_NAME));
         for (File file : files.values()) {
-            try {
-                setFile(file, false);
-                N name = namingStrategy.fromName(getBaseName(file));
-                writer.writeAndOverride(data.get(name), gson);
-            } catch (InvalidFileException e) {
-                if (ignoreInvalidFiles) continue;
-                throw e;
-            }
+            E e = data.get(namingStrategy.fromName(getBaseName(file)));
+            if (e != null) // files which failed to load are left untouched
+                journal.add(file, gson.toJson(e).getBytes(StandardCharsets.UTF_8));
         }
+        journal.commit();
+        journal.checkpoint();
         return data;
     }
 
@@ -19,9 +19,10 @@ import org.moltenjson.configuration.select.SelectableConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.*;
 
 /**
  * Represents a JSON file. This is used by JSON writers and readers.
@@ -171,12 +172,49 @@ public class JsonFile {
      */
     private void writeCurlyBrackets() {
         try {
-            Files.write(Paths.get(file.getPath()), EMPTY_JSON); // Write the curly brackets so JSON can be parsed
+            write(EMPTY_JSON); // Write the curly brackets so JSON can be parsed
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Replaces the content of this file atomically. See {@link #writeAtomically(File, byte[], boolean)}
+     *
+     * @param content The new content
+     * @throws IOException I/O exceptions while writing
+     */
+    public void write(byte[] content) throws IOException {
+        writeAtomically(file, content, true);
+    }
+
+    /**
+     * Replaces the content of the given file atomically. The content is written to a temporary file
+     * next to it, which is then renamed over the file, so that the file always has either its old or
+     * its new content, even if the process crashes while writing.
+     *
+     * @param file    File to write
+     * @param content The new content
+     * @param sync    Whether to force the content to the storage device before renaming. Without it, the
+     *                new content may be lost on a power failure (but the file is never truncated)
+     * @throws IOException I/O exceptions while writing
+     */
+    public static void writeAtomically(File file, byte[] content, boolean sync) throws IOException {
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            if (sync) channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     /**
      * Returns whether this file exists or not
      *
@@ -26,8 +26,6 @@ import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 /**
  * Writes data and content to the JSON file.
@@ -296,7 +294,7 @@ public class JsonWriter implements Closeable, Lockable<JsonWriter>, Refreshable<
      */
     private void write(String text) throws IOException {
         if (bufferedWriter != null) bufferedWriter.write(text);
-        else Files.write(Paths.get(file.getPath()), text.getBytes(StandardCharsets.UTF_8));
+        else file.write(text.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
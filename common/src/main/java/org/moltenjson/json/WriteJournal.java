@@ -0,0 +1,243 @@
+/*
+ * * Copyright 2020 github.com/moltenjson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.moltenjson.json;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal for saving multiple files together.
+ * <p>
+ * Every commit appends the content of its files to the journal as a single record, and syncs the journal. The
+ * files are then replaced atomically (see {@link JsonFile#writeAtomically(File, byte[], boolean)}) without being
+ * synced, as the synced journal is enough to recover them. A commit therefore costs one sync, regardless of the
+ * amount of files in it.
+ * <p>
+ * The written files are synced together by {@link #checkpoint()}, after which the journal is deleted. A file
+ * written by several commits since the last checkpoint is only synced once. Checkpoints happen once the journal
+ * grows past {@link #CHECKPOINT_SIZE}, and should be requested explicitly before the journal is discarded (for
+ * example when the application stops). If the process crashes before a checkpoint, {@link #replay(File)} writes
+ * the files again from the journal.
+ * <p>
+ * Records are checksummed, so a record which was cut off by a crash is ignored. Such a record was never
+ * synced, so none of its files were written either.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class WriteJournal {
+
+    /**
+     * The name of journal files
+     */
+    public static final String FILE_NAME = ".journal";
+
+    /**
+     * The size (in bytes) of the journal after which a commit checkpoints it
+     */
+    public static final long CHECKPOINT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Whether is the server running on Windows
+     */
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    /**
+     * The journal file
+     */
+    private final File journal;
+
+    /**
+     * The content of each file to write in the next commit, in order
+     */
+    private final Map<File, byte[]> entries = new LinkedHashMap<>();
+
+    /**
+     * The files written since the last checkpoint, which are not synced yet
+     */
+    private final Set<File> unsynced = new LinkedHashSet<>();
+
+    /**
+     * Creates a new journal
+     *
+     * @param journal The journal file
+     */
+    public WriteJournal(File journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Adds the specified file to be written when this journal is committed
+     *
+     * @param file    File to write
+     * @param content The new content of the file
+     * @return This journal instance
+     */
+    public WriteJournal add(File file, byte[] content) {
+        entries.put(file.getAbsoluteFile(), content);
+        return this;
+    }
+
+    /**
+     * Writes all added files. Once this returns, the files survive a crash, either as written or through
+     * {@link #replay(File)}.
+     *
+     * @throws IOException I/O exceptions while writing
+     */
+    public void commit() throws IOException {
+        if (entries.isEmpty()) return;
+        if (unsynced.isEmpty() && journal.exists())
+            replay(journal); // left by another instance or a crash, whose files this instance does not know of
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (Entry<File, byte[]> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey().getPath());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        boolean created = !journal.exists();
+        long size;
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8 + record.length);
+            buffer.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+            size = channel.size();
+        }
+        try {
+            if (created) syncDirectory(journal.getAbsoluteFile().getParentFile()); // from here on, the files can always be recovered
+            for (Entry<File, byte[]> entry : entries.entrySet()) {
+                JsonFile.writeAtomically(entry.getKey(), entry.getValue(), false);
+                unsynced.add(entry.getKey());
+            }
+        } finally {
+            entries.clear(); // files which were not written are left for the caller to retry, and recoverable from the journal until then
+        }
+        if (size >= CHECKPOINT_SIZE) checkpoint();
+    }
+
+    /**
+     * Syncs all files written since the last checkpoint, along with their directories, and deletes the journal
+     *
+     * @throws IOException I/O exceptions while syncing
+     */
+    public void checkpoint() throws IOException {
+        if (unsynced.isEmpty()) return;
+        sync(unsynced);
+        Files.deleteIfExists(journal.toPath());
+        unsynced.clear();
+    }
+
+    /**
+     * Finishes writing the files of the specified journal, if it exists. Should be invoked before the files
+     * are read.
+     *
+     * @param journal The journal file
+     * @return The amount of recovered files
+     * @throws IOException I/O exceptions while reading the journal or writing the files
+     */
+    public static int replay(File journal) throws IOException {
+        if (!journal.exists()) return 0;
+        Set<File> files = new LinkedHashSet<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            byte[] record;
+            while ((record = readRecord(in, journal.length())) != null) {
+                try (DataInputStream entries = new DataInputStream(new ByteArrayInputStream(record))) {
+                    int count = entries.readInt();
+                    for (int i = 0; i < count; i++) {
+                        File file = new File(entries.readUTF());
+                        byte[] content = new byte[entries.readInt()];
+                        entries.readFully(content);
+                        JsonFile.writeAtomically(file, content, false); // later records overwrite earlier ones
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        sync(files);
+        Files.delete(journal.toPath());
+        return files.size();
+    }
+
+    /**
+     * Reads the next record of a journal
+     *
+     * @param in  Stream to read from
+     * @param max The size of the journal, which no record can exceed
+     * @return The record, or {@code null} if there are no more complete records.
+     * @throws IOException I/O exceptions while reading
+     */
+    private static byte[] readRecord(DataInputStream in, long max) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > max) return null; // cut off while writing the length
+            byte[] record = new byte[length];
+            in.readFully(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            return (int) crc.getValue() == checksum ? record : null; // cut off by a crash
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Syncs the specified files, followed by their distinct parent directories
+     *
+     * @param files Files to sync
+     * @throws IOException I/O exceptions while syncing
+     */
+    private static void sync(Set<File> files) throws IOException {
+        Set<File> directories = new LinkedHashSet<>();
+        for (File file : files) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            directories.add(file.getParentFile());
+        }
+        for (File directory : directories)
+            syncDirectory(directory); // the renames must be durable before the journal is gone
+    }
+
+    /**
+     * Syncs the specified directory, so that files renamed into it survive a crash. Does nothing on Windows,
+     * which does not allow opening directories, and persists renames with the file metadata.
+     *
+     * @param directory Directory to sync
+     * @throws IOException I/O exceptions while syncing
+     */
+    private static void syncDirectory(File directory) throws IOException {
+        if (WINDOWS || directory == null) return;
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
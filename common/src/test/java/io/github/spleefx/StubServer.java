@@ -0,0 +1,66 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.Field;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Installs a mocked server and plugin instance, for testing classes which statically reach them (such as
+ * {@link SpleefX#getPlugin()} and {@link SpleefX#logger()}).
+ * <p>
+ * The plugin's data folder is null, so nothing is read from or written to it.
+ */
+public final class StubServer {
+
+    private static boolean installed;
+
+    private StubServer() {
+    }
+
+    /**
+     * Installs the mocked server and plugin, unless they are already installed
+     */
+    public static synchronized void install() {
+        if (installed) return;
+        Logger logger = Logger.getLogger("SpleefX");
+        Server server = mock(Server.class);
+        when(server.getLogger()).thenReturn(logger);
+        when(server.getPluginManager()).thenReturn(mock(PluginManager.class));
+        Bukkit.setServer(server);
+        SpleefX plugin = mock(SpleefX.class);
+        try {
+            set(plugin, "pluginLogger", logger);
+            set(null, "plugin", plugin);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to install the plugin instance", e);
+        }
+        installed = true;
+    }
+
+    private static void set(SpleefX instance, String name, Object value) throws ReflectiveOperationException {
+        Field field = SpleefX.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(instance, value);
+    }
+}
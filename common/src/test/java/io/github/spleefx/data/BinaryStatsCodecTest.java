@@ -0,0 +1,195 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data;
+
+import io.github.spleefx.StubServer;
+import io.github.spleefx.economy.booster.BoosterFactory;
+import io.github.spleefx.economy.booster.BoosterInstance;
+import io.github.spleefx.economy.booster.BoosterState;
+import io.github.spleefx.extension.ExtensionsManager;
+import io.github.spleefx.perk.GamePerk;
+import io.github.spleefx.util.plugin.Duration;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BinaryStatsCodecTest {
+
+    private static final int STATISTICS = PlayerStatistic.values.length;
+
+    @BeforeClass
+    public static void installServer() {
+        StubServer.install();
+    }
+
+    @Test
+    public void roundTripsCoinsAndStatistics() throws IOException {
+        int spleef = ExtensionsManager.getId("spleef");
+        int splegg = ExtensionsManager.getId("splegg");
+        GameStats stats = new GameStats();
+        stats.coins = 1500;
+        stats.add(PlayerStatistic.WINS, spleef, 12);
+        stats.add(PlayerStatistic.BLOCKS_MINED, splegg, 300000);
+        stats.add(PlayerStatistic.LOSSES, -1, -3); // negative values must survive the zigzag encoding
+
+        GameStats decoded = roundTrip(stats);
+        assertEquals(1500, decoded.coins);
+        assertArrayEquals(stats.getGlobalStatistics(), decoded.getGlobalStatistics());
+        assertArrayEquals(stats.getModeStatistics()[spleef], decoded.getModeStatistics()[spleef]);
+        assertArrayEquals(stats.getModeStatistics()[splegg], decoded.getModeStatistics()[splegg]);
+        assertFalse("Decoded statistics must not need saving", decoded.isDirty());
+    }
+
+    @Test
+    public void roundTripsPerks() throws IOException, ReflectiveOperationException {
+        GamePerk doubleJump = perk("double_jump", true);
+        GamePerk removed = perk("removed_perk", false);
+        GameStats stats = new GameStats();
+        stats.getPerks().put(doubleJump, 3);
+        stats.getPerks().put(removed, 1);
+
+        GameStats decoded = roundTrip(stats);
+        assertEquals("Perks which are not loaded must be dropped", 1, decoded.getPerks().size());
+        assertEquals(Integer.valueOf(3), decoded.getPerks().get(doubleJump));
+    }
+
+    @Test
+    public void roundTripsBoosters() throws IOException {
+        BoosterFactory factory = new BoosterFactory("double_coins", "&eDouble coins", 2, Duration.of(TimeUnit.HOURS, 1), new HashMap<>());
+        BoosterFactory.BOOSTERS.get().put(factory.getKey(), factory);
+        GameStats stats = new GameStats();
+        stats.getBoosters().put(1, new BoosterInstance(factory, BoosterState.ACTIVE, 2, 3599));
+        stats.getBoosters().put(7, new BoosterInstance(null, BoosterState.PAUSED, 1.5, 60));
+
+        GameStats decoded = roundTrip(stats);
+        assertEquals(stats.getBoosters().keySet(), decoded.getBoosters().keySet());
+        BoosterInstance active = decoded.getBoosters().get(1);
+        assertSame(factory, active.getType());
+        assertEquals(BoosterState.ACTIVE, active.getState());
+        assertEquals(2, active.getMultiplier(), 0);
+        assertEquals(3599, active.getDuration());
+        BoosterInstance paused = decoded.getBoosters().get(7);
+        assertNull(paused.getType());
+        assertEquals(BoosterState.PAUSED, paused.getState());
+        assertEquals(1.5, paused.getMultiplier(), 0);
+        assertEquals(60, paused.getDuration());
+    }
+
+    @Test
+    public void roundTripsCustomData() throws IOException {
+        GameStats stats = new GameStats();
+        stats.getCustomDataMap().put("title", "Spleef champion");
+        stats.getCustomDataMap().put("hidden", true);
+        stats.getCustomDataMap().put("unlocked", Arrays.asList("red", "blue"));
+
+        GameStats decoded = roundTrip(stats);
+        assertEquals(stats.getCustomDataMap(), decoded.getCustomDataMap());
+    }
+
+    @Test
+    public void skipsUnknownStatistics() throws IOException {
+        int spleef = ExtensionsManager.getId("spleef");
+        int written = STATISTICS + 2; // as written by a newer version with more statistics
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.putInt(0x53584753);
+        buffer.put((byte) 1);
+        putVarInt(buffer, 10); // coins
+        buffer.put((byte) written);
+        for (int ordinal = 0; ordinal < written; ordinal++)
+            putVarInt(buffer, ordinal + 1);
+        putVarInt(buffer, 1); // modes
+        putString(buffer, "spleef");
+        for (int ordinal = 0; ordinal < written; ordinal++)
+            putVarInt(buffer, 100 + ordinal);
+        putVarInt(buffer, 0); // perks
+        putVarInt(buffer, 0); // boosters
+        putString(buffer, "{\"key\":\"value\"}");
+        buffer.flip();
+
+        GameStats decoded = BinaryStatsCodec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(10, decoded.coins);
+        for (int ordinal = 0; ordinal < STATISTICS; ordinal++) {
+            assertEquals(ordinal + 1, decoded.getGlobalStatistics()[ordinal]);
+            assertEquals(100 + ordinal, decoded.getModeStatistics()[spleef][ordinal]);
+        }
+        assertEquals("value", decoded.getCustomDataMap().get("key"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedData() throws IOException {
+        GameStats stats = new GameStats();
+        stats.getCustomDataMap().put("title", "Spleef champion");
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        BinaryStatsCodec.encode(stats, buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 4);
+        BinaryStatsCodec.decode(buffer);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        BinaryStatsCodec.decode(ByteBuffer.wrap("{\"coins\":0}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEmptyJsonFiles() throws IOException {
+        StatisticsFormat.JSON.decode(ByteBuffer.wrap(new byte[0]));
+    }
+
+    private static GameStats roundTrip(GameStats stats) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        BinaryStatsCodec.encode(stats, buffer);
+        buffer.flip();
+        GameStats decoded = BinaryStatsCodec.decode(buffer);
+        assertFalse("The whole encoding must be consumed", buffer.hasRemaining());
+        return decoded;
+    }
+
+    private static GamePerk perk(String key, boolean loaded) throws ReflectiveOperationException {
+        GamePerk perk = new GamePerk();
+        Field field = GamePerk.class.getDeclaredField("key");
+        field.setAccessible(true);
+        field.set(perk, key);
+        if (loaded) GamePerk.PERKS.put(key, perk);
+        return perk;
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7F) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data;
+
+import io.github.spleefx.StubServer;
+import io.github.spleefx.extension.ExtensionsManager;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StatisticsLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void installServer() {
+        StubServer.install();
+    }
+
+    @Test
+    public void replaysDeltasAndSnapshots() throws IOException {
+        File directory = folder.newFolder("log");
+        int spleef = ExtensionsManager.getId("spleef");
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        StatisticsLog log = new StatisticsLog(directory, 1 << 20);
+        assertTrue(log.open().isEmpty());
+        GameStats snapshot = new GameStats();
+        snapshot.coins = 40;
+        snapshot.add(PlayerStatistic.WINS, -1, 5);
+        log.appendDelta(first, -1, PlayerStatistic.WINS, 100); // replaced by the snapshot
+        log.appendSnapshot(first, snapshot);
+        log.appendDelta(first, -1, PlayerStatistic.WINS, 2);
+        log.appendDelta(second, spleef, PlayerStatistic.LOSSES, 3);
+        log.appendDelta(second, spleef, PlayerStatistic.LOSSES, 4);
+        assertTrue(log.close(10, TimeUnit.SECONDS));
+
+        Map<UUID, GameStats> statistics = reopen(directory, 1 << 20);
+        assertEquals(2, statistics.size());
+        GameStats replayed = statistics.get(first);
+        assertEquals(40, replayed.coins);
+        assertEquals(7, replayed.getGlobalStatistics()[PlayerStatistic.WINS.ordinal()]);
+        assertEquals(7, statistics.get(second).getGlobalStatistics()[PlayerStatistic.LOSSES.ordinal()]);
+        assertEquals(7, statistics.get(second).getModeStatistics()[spleef][PlayerStatistic.LOSSES.ordinal()]);
+        assertFalse("Replayed statistics must not need saving", replayed.isDirty());
+    }
+
+    @Test
+    public void definesExtensionsInEverySegment() throws IOException {
+        File directory = folder.newFolder("log");
+        int spleef = ExtensionsManager.getId("spleef");
+        UUID player = UUID.randomUUID();
+        for (int session = 0; session < 2; session++) { // every session writes to new segments
+            StatisticsLog log = new StatisticsLog(directory, 1); // and every group rolls the segment
+            log.open();
+            for (int i = 0; i < 10; i++)
+                log.appendDelta(player, spleef, PlayerStatistic.WINS, 1);
+            assertTrue(log.close(10, TimeUnit.SECONDS));
+        }
+
+        Map<UUID, GameStats> statistics = reopen(directory, 1);
+        assertEquals(20, statistics.get(player).getModeStatistics()[spleef][PlayerStatistic.WINS.ordinal()]);
+    }
+
+    @Test
+    public void discardsTornTail() throws IOException {
+        File directory = folder.newFolder("log");
+        UUID player = UUID.randomUUID();
+        StatisticsLog log = new StatisticsLog(directory, 1 << 20);
+        log.open();
+        log.appendDelta(player, -1, PlayerStatistic.WINS, 3);
+        assertTrue(log.close(10, TimeUnit.SECONDS));
+        File segment = new File(directory, "segment-00000001.log");
+        long length = segment.length();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment, true))) {
+            out.writeInt(24); // the frame of a delta, cut off after a few bytes
+            out.writeInt(0);
+            out.writeByte(1);
+            out.writeLong(player.getMostSignificantBits());
+        }
+
+        Map<UUID, GameStats> statistics = reopen(directory, 1 << 20);
+        assertEquals(3, statistics.get(player).getGlobalStatistics()[PlayerStatistic.WINS.ordinal()]);
+        assertEquals("The torn entry must be cut off", length, segment.length());
+    }
+
+    @Test
+    public void discardsEntriesWithBadChecksums() throws IOException {
+        File directory = folder.newFolder("log");
+        UUID player = UUID.randomUUID();
+        StatisticsLog log = new StatisticsLog(directory, 1 << 20);
+        log.open();
+        log.appendDelta(player, -1, PlayerStatistic.WINS, 3);
+        assertTrue(log.close(10, TimeUnit.SECONDS));
+        File segment = new File(directory, "segment-00000001.log");
+        long length = segment.length();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment, true))) {
+            out.writeInt(24); // a complete delta, whose checksum does not match
+            out.writeInt(12345);
+            out.writeByte(1);
+            out.writeLong(player.getMostSignificantBits());
+            out.writeLong(player.getLeastSignificantBits());
+            out.writeShort(-1);
+            out.writeByte(PlayerStatistic.WINS.ordinal());
+            out.writeInt(1000);
+        }
+
+        Map<UUID, GameStats> statistics = reopen(directory, 1 << 20);
+        assertEquals(3, statistics.get(player).getGlobalStatistics()[PlayerStatistic.WINS.ordinal()]);
+        assertEquals(length, segment.length());
+    }
+
+    /**
+     * Opens the log in the specified directory again, and returns the replayed statistics
+     */
+    private static Map<UUID, GameStats> reopen(File directory, long segmentSize) throws IOException {
+        StatisticsLog log = new StatisticsLog(directory, segmentSize);
+        try {
+            return log.open();
+        } finally {
+            log.close(10, TimeUnit.SECONDS);
+        }
+    }
+}
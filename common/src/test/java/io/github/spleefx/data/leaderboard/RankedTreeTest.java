@@ -0,0 +1,125 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.leaderboard;
+
+import io.github.spleefx.data.LeaderboardTopper;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class RankedTreeTest {
+
+    /**
+     * The order of a leaderboard: highest score first, then by UUID
+     */
+    private static final Comparator<Score> ORDER = Comparator.<Score>comparingInt(s -> -s.score).thenComparing(s -> s.player);
+
+    @Test
+    public void ordersByScoreThenByPlayer() {
+        UUID first = new UUID(0, 1);
+        UUID second = new UUID(0, 2);
+        UUID third = new UUID(0, 3);
+        RankedTree tree = new RankedTree();
+        tree.insert(third, 5);
+        tree.insert(second, 5);
+        tree.insert(first, 2);
+
+        assertEquals(3, tree.size());
+        assertEquals(second, tree.get(0).getUniqueId());
+        assertEquals(third, tree.get(1).getUniqueId());
+        assertEquals(first, tree.get(2).getUniqueId());
+        assertEquals(5, tree.get(0).getCount());
+        assertEquals(0, tree.rank(second, 5));
+        assertEquals(1, tree.rank(third, 5));
+        assertEquals(2, tree.rank(first, 2));
+    }
+
+    @Test
+    public void ignoresRemovingAbsentPlayers() {
+        UUID player = UUID.randomUUID();
+        RankedTree tree = new RankedTree();
+        tree.insert(player, 10);
+        tree.remove(player, 9);
+        tree.remove(UUID.randomUUID(), 10);
+        assertEquals(1, tree.size());
+        tree.remove(player, 10);
+        assertEquals(0, tree.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsPositionsOutOfBounds() {
+        RankedTree tree = new RankedTree();
+        tree.insert(UUID.randomUUID(), 1);
+        tree.get(1);
+    }
+
+    @Test
+    public void matchesSortedScores() {
+        Random random = new Random(42);
+        RankedTree tree = new RankedTree();
+        Map<UUID, Integer> scores = new HashMap<>();
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            players.add(new UUID(random.nextLong(), random.nextLong()));
+        for (int step = 0; step < 5000; step++) {
+            UUID player = players.get(random.nextInt(players.size()));
+            Integer old = scores.remove(player);
+            if (old != null) tree.remove(player, old);
+            if (random.nextInt(4) != 0) { // otherwise leave the player removed
+                int score = random.nextInt(50); // small range, so there are many ties
+                scores.put(player, score);
+                tree.insert(player, score);
+            }
+        }
+
+        List<Score> expected = new ArrayList<>();
+        scores.forEach((player, score) -> expected.add(new Score(player, score)));
+        expected.sort(ORDER);
+        assertEquals(expected.size(), tree.size());
+        for (int index = 0; index < expected.size(); index++) {
+            Score score = expected.get(index);
+            assertEquals(score.player, tree.get(index).getUniqueId());
+            assertEquals(score.score, tree.get(index).getCount());
+            assertEquals(index, tree.rank(score.player, score.score));
+        }
+    }
+
+    @Test
+    public void copiesTheTopPlayers() {
+        RankedTree tree = new RankedTree();
+        for (int i = 0; i < 10; i++)
+            tree.insert(new UUID(0, i), i);
+        List<LeaderboardTopper> top = tree.top(3);
+        assertEquals(3, top.size());
+        for (int i = 0; i < 3; i++)
+            assertEquals(tree.get(i), top.get(i));
+        assertEquals(10, tree.top(20).size());
+        assertEquals(0, tree.top(0).size());
+    }
+
+    private static final class Score {
+
+        private final UUID player;
+        private final int score;
+
+        Score(UUID player, int score) {
+            this.player = player;
+            this.score = score;
+        }
+    }
+}
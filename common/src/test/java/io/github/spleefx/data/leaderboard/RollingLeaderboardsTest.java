@@ -0,0 +1,160 @@
+/*
+ * * Copyright 2020 github.com/ReflxctionDev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.spleefx.data.leaderboard;
+
+import io.github.spleefx.data.PlayerStatistic;
+import io.github.spleefx.data.leaderboard.RollingLeaderboards.Window;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RollingLeaderboardsTest {
+
+    /**
+     * The amount of days retained by the leaderboards
+     */
+    private static final int RETENTION = 30;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ranksStatisticsGainedToday() throws IOException {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        RollingLeaderboards leaderboards = new RollingLeaderboards(folder.newFile("leaderboards.dat"));
+        leaderboards.add(first, PlayerStatistic.WINS, null, 2);
+        leaderboards.add(second, PlayerStatistic.WINS, null, 3);
+        leaderboards.add(first, PlayerStatistic.WINS, null, 4);
+
+        for (Window window : Window.values()) {
+            assertEquals(6, leaderboards.get(window, PlayerStatistic.WINS, null, first));
+            assertEquals(1, leaderboards.getRank(window, PlayerStatistic.WINS, null, first));
+            assertEquals(2, leaderboards.getRank(window, PlayerStatistic.WINS, null, second));
+            assertEquals(first, leaderboards.getTop(window, PlayerStatistic.WINS, null, 10).get(0).getUniqueId());
+        }
+        assertEquals(-1, leaderboards.getRank(Window.DAILY, PlayerStatistic.LOSSES, null, first));
+    }
+
+    @Test
+    public void rollsOverDays() throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        UUID player = UUID.randomUUID();
+        UUID rival = UUID.randomUUID();
+        UUID expired = UUID.randomUUID();
+        File file = folder.newFile("leaderboards.dat");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(1); // version
+            out.writeInt(3);
+            writeWins(out, player, today - 1, new long[]{today - 1, today - 10}, new int[]{5, 3});
+            writeWins(out, rival, today - 1, new long[]{today - 1}, new int[]{9});
+            writeWins(out, expired, today - RETENTION, new long[]{today - RETENTION}, new int[]{50});
+        }
+        RollingLeaderboards leaderboards = new RollingLeaderboards(file);
+        leaderboards.load();
+
+        // yesterday left the daily window, and 10 days ago is only in the monthly window
+        assertEquals(0, leaderboards.get(Window.DAILY, PlayerStatistic.WINS, null, player));
+        assertEquals(5, leaderboards.get(Window.WEEKLY, PlayerStatistic.WINS, null, player));
+        assertEquals(8, leaderboards.get(Window.MONTHLY, PlayerStatistic.WINS, null, player));
+        assertEquals(-1, leaderboards.getRank(Window.DAILY, PlayerStatistic.WINS, null, player));
+        assertEquals(2, leaderboards.getRank(Window.WEEKLY, PlayerStatistic.WINS, null, player));
+        assertEquals(0, leaderboards.getTop(Window.DAILY, PlayerStatistic.WINS, null, 10).size());
+
+        // days older than the retention are dropped
+        assertEquals(0, leaderboards.get(Window.MONTHLY, PlayerStatistic.WINS, null, expired));
+        assertEquals(2, leaderboards.getTop(Window.MONTHLY, PlayerStatistic.WINS, null, 10).size());
+
+        // gains of today are added to every window, without reviving the previous days
+        leaderboards.add(player, PlayerStatistic.WINS, null, 2);
+        assertEquals(2, leaderboards.get(Window.DAILY, PlayerStatistic.WINS, null, player));
+        assertEquals(7, leaderboards.get(Window.WEEKLY, PlayerStatistic.WINS, null, player));
+        assertEquals(10, leaderboards.get(Window.MONTHLY, PlayerStatistic.WINS, null, player));
+        assertEquals(1, leaderboards.getRank(Window.DAILY, PlayerStatistic.WINS, null, player));
+        assertEquals(1, leaderboards.getRank(Window.MONTHLY, PlayerStatistic.WINS, null, player));
+    }
+
+    @Test
+    public void keepsCountersWhenSaved() throws IOException {
+        UUID player = UUID.randomUUID();
+        File file = folder.newFile("leaderboards.dat");
+        RollingLeaderboards leaderboards = new RollingLeaderboards(file);
+        leaderboards.add(player, PlayerStatistic.BLOCKS_MINED, null, 120);
+        leaderboards.save();
+
+        RollingLeaderboards loaded = new RollingLeaderboards(file);
+        loaded.load();
+        for (Window window : Window.values())
+            assertEquals(120, loaded.get(window, PlayerStatistic.BLOCKS_MINED, null, player));
+    }
+
+    @Test
+    public void rejectsCorruptFiles() throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        UUID valid = UUID.randomUUID();
+        UUID corrupt = UUID.randomUUID();
+        File file = folder.newFile("leaderboards.dat");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(1); // version
+            out.writeInt(2);
+            writeWins(out, valid, today, new long[]{today}, new int[]{4});
+            out.writeLong(corrupt.getMostSignificantBits());
+            out.writeLong(corrupt.getLeastSignificantBits());
+            out.writeLong(today);
+            out.writeShort(1); // columns
+            out.writeByte(PlayerStatistic.WINS.ordinal());
+            out.writeUTF(""); // global
+            out.writeByte(1);
+            out.writeByte(RETENTION); // outside the retained days
+            out.writeInt(7);
+        }
+        RollingLeaderboards leaderboards = new RollingLeaderboards(file);
+        try {
+            leaderboards.load();
+            fail("Loaded a corrupt day slot");
+        } catch (IOException expected) {
+        }
+        // nothing is loaded from a corrupt file
+        assertEquals(0, leaderboards.get(Window.DAILY, PlayerStatistic.WINS, null, valid));
+    }
+
+    /**
+     * Writes the global wins counter of a player, as stored by {@link RollingLeaderboards#save()}
+     */
+    private static void writeWins(DataOutputStream out, UUID player, long day, long[] days, int[] values) throws IOException {
+        out.writeLong(player.getMostSignificantBits());
+        out.writeLong(player.getLeastSignificantBits());
+        out.writeLong(day);
+        out.writeShort(1); // columns
+        out.writeByte(PlayerStatistic.WINS.ordinal());
+        out.writeUTF(""); // global
+        out.writeByte(days.length);
+        for (int i = 0; i < days.length; i++) {
+            out.writeByte((int) (days[i] % RETENTION));
+            out.writeInt(values[i]);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import io.github.spleefx.util.code.MapBuilder;
 import org.bukkit.DyeColor;
 import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.block.Block;
 import org.bukkit.entity.Projectile;
 import org.bukkit.entity.Snowball;
 import org.bukkit.inventory.ItemStack;
@@ -136,4 +137,39 @@ public class MaterialCompatibilityImpl implements MaterialCompatibility {
                 .replace("_SHOVEL", "_SPADE");
     }
 
-}
\ No newline at end of file
+    /**
+     * Captures the type and data of the specified block
+     *
+     * @param block Block to capture
+     * @return The captured state
+     */
+    @Override
+    public Object captureBlock(Block block) {
+        return block.getTypeId() << 4 | (block.getData() & 0xF);
+    }
+
+    /**
+     * Restores the type and data of the specified block without applying physics
+     *
+     * @param block Block to restore
+     * @param state The captured state
+     */
+    @Override
+    public void restoreBlock(Block block, Object state) {
+        int packed = (Integer) state;
+        block.setTypeIdAndData(packed >>> 4, (byte) (packed & 0xF), false);
+    }
+
+    /**
+     * Parses a block state in the form of {@code id:data}
+     *
+     * @param state String to parse
+     * @return The packed state
+     */
+    @Override
+    public Object parseBlock(String state) {
+        int separator = state.indexOf(':');
+        return Integer.parseInt(state.substring(0, separator)) << 4 | Integer.parseInt(state.substring(separator + 1)) & 0xF;
+    }
+
+}
@@ -19,30 +19,42 @@ import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
 import com.sk89q.worldedit.bukkit.BukkitUtil;
 import com.sk89q.worldedit.bukkit.BukkitWorld;
 import com.sk89q.worldedit.bukkit.WorldEditPlugin;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
 import com.sk89q.worldedit.function.mask.ExistingBlockMask;
 import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
-import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
 import com.sk89q.worldedit.math.transform.AffineTransform;
 import com.sk89q.worldedit.session.ClipboardHolder;
 import com.sk89q.worldedit.util.io.Closer;
 import com.sk89q.worldedit.world.World;
-import com.sk89q.worldedit.world.registry.WorldData;
+import com.sk89q.worldedit.world.registry.LegacyWorldData;
+import io.github.spleefx.compatibility.SnapshotFile.BlockSource;
 import io.github.spleefx.compatibility.worldedit.NoSchematicException;
+import io.github.spleefx.compatibility.worldedit.PasteJob;
 import io.github.spleefx.compatibility.worldedit.SchematicManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 
 import java.io.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
 public class WESchematicManager extends SchematicManager {
 
+    /**
+     * The estimated amount of memory (in bytes) each block takes in a clipboard
+     */
+    private static final int BYTES_PER_BLOCK = 40;
+
     public WESchematicManager() {
     }
 
@@ -66,15 +78,30 @@ public class WESchematicManager extends SchematicManager {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        getClipboardCache().invalidate(getBaseName(schematic));
     }
 
+    /**
+     * Pastes the schematic incrementally through the regeneration pipeline, so large arenas do not
+     * block the main thread
+     *
+     * @param loc Location to paste in
+     */
     @Override
     public CompletableFuture<Void> paste(Location loc) throws NoSchematicException {
-        CompletableFuture<Void> future = new CompletableFuture<>();
+        return getRegenerationPipeline().submit(getBaseName(schematic), new ClipboardPasteJob(getClipboard(), loc));
+    }
+
+    /**
+     * Pastes the whole schematic immediately on the current thread
+     *
+     * @param loc       Location to paste in
+     * @param cancelled Whether the paste has been cancelled. Checked between the steps of the paste.
+     */
+    protected void pasteNow(Location loc, BooleanSupplier cancelled) throws NoSchematicException {
         try {
             World weWorld = new BukkitWorld(loc.getWorld());
-            WorldData worldData = weWorld.getWorldData();
-            Clipboard clipboard = ClipboardFormat.SCHEMATIC.getReader(new FileInputStream(schematic)).read(worldData);
+            Clipboard clipboard = getClipboard();
             EditSession extent = WorldEdit.getInstance().getEditSessionFactory().getEditSession(weWorld, -1);
             AffineTransform transform = new AffineTransform();
             ForwardExtentCopy copy = new ForwardExtentCopy(clipboard, clipboard.getRegion(), clipboard.getOrigin(),
@@ -83,15 +110,48 @@ public class WESchematicManager extends SchematicManager {
             if (!transform.isIdentity()) copy.setTransform(transform);
 
             copy.setSourceMask(new ExistingBlockMask(clipboard));
-            Operations.completeLegacy(copy);
+            Operation operation = copy;
+            while (operation != null && !cancelled.getAsBoolean())
+                operation = operation.resume(new RunContext());
             extent.flushQueue();
-            future.complete(null);
-        } catch (IOException e) {
-            throw new NoSchematicException(schematic.getName());
-        } catch (MaxChangedBlocksException e) {
+        } catch (WorldEditException e) {
             e.printStackTrace();
         }
-        return future;
+    }
+
+    @Override
+    protected Clipboard read() throws IOException {
+        if (schematic.length() == 0) return null;
+        try (Closer closer = Closer.create()) {
+            FileInputStream fis = closer.register(new FileInputStream(schematic));
+            BufferedInputStream bis = closer.register(new BufferedInputStream(fis));
+            ClipboardReader reader = ClipboardFormat.SCHEMATIC.getReader(bis);
+            return reader.read(LegacyWorldData.getInstance());
+        }
+    }
+
+    @Override
+    protected long estimateSize(Clipboard clipboard) {
+        Vector dimensions = clipboard.getDimensions();
+        return (long) dimensions.getBlockX() * dimensions.getBlockY() * dimensions.getBlockZ() * BYTES_PER_BLOCK;
+    }
+
+    @Override
+    protected int[] getPasteRegion(Clipboard clipboard, Location location) {
+        Vector offset = new Vector(location.getBlockX(), location.getBlockY(), location.getBlockZ()).subtract(clipboard.getOrigin());
+        Vector min = clipboard.getRegion().getMinimumPoint().add(offset);
+        Vector max = clipboard.getRegion().getMaximumPoint().add(offset);
+        return new int[]{min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ()};
+    }
+
+    @Override
+    protected BlockSource getBlockSource(Clipboard clipboard, Location location) {
+        Vector offset = new Vector(location.getBlockX(), location.getBlockY(), location.getBlockZ()).subtract(clipboard.getOrigin());
+        return (x, y, z) -> {
+            BaseBlock block = clipboard.getBlock(new Vector(x, y, z).subtract(offset));
+            if (block.hasNbtData()) return null; // tile entity
+            return block.getId() + ":" + block.getData();
+        };
     }
 
     @Override
@@ -106,4 +166,42 @@ public class WESchematicManager extends SchematicManager {
             world = clipboardHolder.getClipboard().getRegion().getWorld().getName();
         return new Location(Bukkit.getWorld(world), v.getBlockX(), v.getBlockY(), v.getBlockZ());
     }
+
+    /**
+     * Pastes a clipboard one chunk column at a time. Air blocks in the clipboard are skipped.
+     */
+    private static class ClipboardPasteJob extends PasteJob {
+
+        private final Clipboard clipboard;
+        private final EditSession session;
+        private final Vector offset;
+
+        ClipboardPasteJob(Clipboard clipboard, Location location) {
+            this(clipboard, clipboard.getRegion().getMinimumPoint(), clipboard.getRegion().getMaximumPoint(), location);
+        }
+
+        private ClipboardPasteJob(Clipboard clipboard, Vector min, Vector max, Location location) {
+            super(min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ());
+            this.clipboard = clipboard;
+            session = WorldEdit.getInstance().getEditSessionFactory().getEditSession(new BukkitWorld(location.getWorld()), -1);
+            offset = new Vector(location.getBlockX(), location.getBlockY(), location.getBlockZ()).subtract(clipboard.getOrigin());
+        }
+
+        @Override
+        protected void place(int x, int y, int z) {
+            Vector position = new Vector(x, y, z);
+            BaseBlock block = clipboard.getBlock(position);
+            if (block.isAir()) return;
+            try {
+                session.setBlock(position.add(offset), block);
+            } catch (MaxChangedBlocksException e) {
+                throw new IllegalStateException(e); // the session is unlimited
+            }
+        }
+
+        @Override
+        protected void flush() {
+            session.flushQueue();
+        }
+    }
 }
@@ -17,7 +17,6 @@ package io.github.spleefx.modern;
 
 import com.sk89q.worldedit.bukkit.WorldEditPlugin;
 import com.sk89q.worldedit.session.ClipboardHolder;
-import io.github.spleefx.compatibility.worldedit.NoSchematicException;
 import io.github.spleefx.compatibility.worldedit.SchematicManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -25,8 +24,6 @@ import org.bukkit.Location;
 import java.io.File;
 import java.util.concurrent.CompletableFuture;
 
-import static io.github.spleefx.SpleefX.sneakyThrow;
-
 
 /**
  * Schematic processor for FastAsyncWorldEdit
@@ -54,11 +51,12 @@ public class FAWESchematicManager extends WESchematicManager {
     public CompletableFuture<Void> paste(Location location) {
         CompletableFuture<Void> future = new CompletableFuture<>();
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            if (future.isDone()) return; // cancelled before it started
             try {
-                super.paste(location);
+                pasteNow(location, future::isDone);
                 future.complete(null);
-            } catch (NoSchematicException e) {
-                throw sneakyThrow(e);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
             }
         });
         return future;
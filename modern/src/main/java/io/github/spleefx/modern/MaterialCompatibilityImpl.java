@@ -18,9 +18,12 @@ package io.github.spleefx.modern;
 import io.github.spleefx.compatibility.CompatibilityHandler;
 import io.github.spleefx.compatibility.material.MaterialCompatibility;
 import io.github.spleefx.util.code.MapBuilder;
+import org.bukkit.Bukkit;
 import org.bukkit.DyeColor;
 import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Projectile;
 import org.bukkit.entity.Trident;
 import org.bukkit.inventory.ItemStack;
@@ -129,4 +132,37 @@ public class MaterialCompatibilityImpl implements MaterialCompatibility {
                 .replace("GOLD_PICKAXE", "GOLDEN_PICKAXE");
     }
 
+    /**
+     * Captures the type and data of the specified block
+     *
+     * @param block Block to capture
+     * @return The captured state
+     */
+    @Override
+    public Object captureBlock(Block block) {
+        return block.getBlockData();
+    }
+
+    /**
+     * Restores the type and data of the specified block without applying physics
+     *
+     * @param block Block to restore
+     * @param state The captured state
+     */
+    @Override
+    public void restoreBlock(Block block, Object state) {
+        block.setBlockData((BlockData) state, false);
+    }
+
+    /**
+     * Parses a block data string
+     *
+     * @param state String to parse
+     * @return The block data
+     */
+    @Override
+    public Object parseBlock(String state) {
+        return Bukkit.createBlockData(state);
+    }
+
 }
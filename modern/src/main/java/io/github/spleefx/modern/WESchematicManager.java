@@ -16,6 +16,7 @@
 package io.github.spleefx.modern;
 
 import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.bukkit.BukkitWorld;
@@ -23,22 +24,34 @@ import com.sk89q.worldedit.bukkit.WorldEditPlugin;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.*;
 import com.sk89q.worldedit.function.operation.Operation;
-import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.function.operation.RunContext;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.session.ClipboardHolder;
+import com.sk89q.worldedit.world.block.BlockState;
+import io.github.spleefx.compatibility.SnapshotFile.BlockSource;
 import io.github.spleefx.compatibility.worldedit.NoSchematicException;
+import io.github.spleefx.compatibility.worldedit.PasteJob;
 import io.github.spleefx.compatibility.worldedit.SchematicManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
 public class WESchematicManager extends SchematicManager {
 
+    /**
+     * The estimated amount of memory (in bytes) each block takes in a clipboard
+     */
+    private static final int BYTES_PER_BLOCK = 8;
+
     public WESchematicManager() {
     }
 
@@ -53,43 +66,75 @@ public class WESchematicManager extends SchematicManager {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        getClipboardCache().invalidate(getBaseName(schematic));
     }
 
+    /**
+     * Pastes the schematic incrementally through the regeneration pipeline, so large arenas do not
+     * block the main thread
+     *
+     * @param location Location to paste in
+     */
     @Override
     public CompletableFuture<Void> paste(Location location) throws NoSchematicException {
-        CompletableFuture<Void> future = new CompletableFuture<>();
+        return getRegenerationPipeline().submit(getBaseName(schematic), new ClipboardPasteJob(getClipboard(), location));
+    }
+
+    /**
+     * Pastes the whole schematic immediately on the current thread
+     *
+     * @param location  Location to paste in
+     * @param cancelled Whether the paste has been cancelled. Checked between the steps of the paste.
+     */
+    protected void pasteNow(Location location, BooleanSupplier cancelled) throws NoSchematicException {
         try (EditSession session = WorldEdit.getInstance().getEditSessionFactory().getEditSession(new BukkitWorld(location.getWorld()), -1)) {
-            Operation operation = new ClipboardHolder(load())
+            Operation operation = new ClipboardHolder(getClipboard())
                     .createPaste(session)
                     .to(BlockVector3.at(location.getBlockX(), location.getBlockY(), location.getBlockZ()))
                     .ignoreAirBlocks(false)
                     .build();
-            Operations.complete(operation);
+            while (operation != null && !cancelled.getAsBoolean())
+                operation = operation.resume(new RunContext());
             session.flushSession();
-            future.complete(null);
         } catch (WorldEditException e) {
             e.printStackTrace();
-        } catch (NullPointerException e) {
-            throw new NoSchematicException(SchematicManager.getBaseName(schematic));
         }
-        return future;
     }
 
-    /**
-     * Loads the schematic as a clipboard
-     *
-     * @return The clipboard of the schematic
-     */
-    Clipboard load() {
+    @Override
+    protected Clipboard read() throws IOException {
         ClipboardFormat format = ClipboardFormats.findByFile(schematic);
-        try (ClipboardReader reader = format.getReader(new FileInputStream(schematic))) {
+        if (format == null) return null;
+        try (ClipboardReader reader = format.getReader(new BufferedInputStream(new FileInputStream(schematic)))) {
             return reader.read();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
         }
     }
 
+    @Override
+    protected long estimateSize(Clipboard clipboard) {
+        BlockVector3 dimensions = clipboard.getDimensions();
+        return (long) dimensions.getX() * dimensions.getY() * dimensions.getZ() * BYTES_PER_BLOCK;
+    }
+
+    @Override
+    protected int[] getPasteRegion(Clipboard clipboard, Location location) {
+        BlockVector3 offset = BlockVector3.at(location.getBlockX(), location.getBlockY(), location.getBlockZ()).subtract(clipboard.getOrigin());
+        BlockVector3 min = clipboard.getRegion().getMinimumPoint().add(offset);
+        BlockVector3 max = clipboard.getRegion().getMaximumPoint().add(offset);
+        return new int[]{min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ()};
+    }
+
+    @Override
+    protected BlockSource getBlockSource(Clipboard clipboard, Location location) {
+        BlockVector3 offset = BlockVector3.at(location.getBlockX(), location.getBlockY(), location.getBlockZ()).subtract(clipboard.getOrigin());
+        Map<BlockState, String> names = new IdentityHashMap<>();
+        return (x, y, z) -> {
+            BlockVector3 position = BlockVector3.at(x, y, z).subtract(offset);
+            if (clipboard.getFullBlock(position).hasNbtData()) return null; // tile entity
+            return names.computeIfAbsent(clipboard.getBlock(position), BlockState::getAsString);
+        };
+    }
+
     @Override
     protected SchematicManager newInstance(WorldEditPlugin plugin, String name, File directory) {
         return new WESchematicManager(plugin, name, directory);
@@ -102,4 +147,45 @@ public class WESchematicManager extends SchematicManager {
             world = clipboardHolder.getClipboard().getRegion().getWorld().getName();
         return new Location(Bukkit.getWorld(world), v.getBlockX(), v.getBlockY(), v.getBlockZ());
     }
+
+    /**
+     * Pastes a clipboard one chunk column at a time
+     */
+    private static class ClipboardPasteJob extends PasteJob {
+
+        private final Clipboard clipboard;
+        private final EditSession session;
+        private final BlockVector3 offset;
+
+        ClipboardPasteJob(Clipboard clipboard, Location location) {
+            this(clipboard, clipboard.getRegion().getMinimumPoint(), clipboard.getRegion().getMaximumPoint(), location);
+        }
+
+        private ClipboardPasteJob(Clipboard clipboard, BlockVector3 min, BlockVector3 max, Location location) {
+            super(min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ());
+            this.clipboard = clipboard;
+            session = WorldEdit.getInstance().getEditSessionFactory().getEditSession(new BukkitWorld(location.getWorld()), -1);
+            offset = BlockVector3.at(location.getBlockX(), location.getBlockY(), location.getBlockZ()).subtract(clipboard.getOrigin());
+        }
+
+        @Override
+        protected void place(int x, int y, int z) {
+            BlockVector3 position = BlockVector3.at(x, y, z);
+            try {
+                session.setBlock(position.add(offset), clipboard.getFullBlock(position));
+            } catch (MaxChangedBlocksException e) {
+                throw new IllegalStateException(e); // the session is unlimited
+            }
+        }
+
+        @Override
+        protected void flush() {
+            session.flushSession();
+        }
+
+        @Override
+        protected void close() {
+            session.close();
+        }
+    }
 }